@@ -0,0 +1,215 @@
+package io.jenkins.plugins.alfred;
+
+import hudson.FilePath;
+import hudson.Util;
+import hudson.model.AbstractBuild;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.remoting.VirtualChannel;
+import hudson.tasks.junit.JUnitResultArchiver;
+import hudson.tasks.junit.TestResult;
+import hudson.tasks.test.AbstractTestResultAction;
+import jenkins.MasterToSlaveFileCallable;
+import jenkins.util.SystemProperties;
+import org.apache.tools.ant.DirectoryScanner;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs failure categorization on the agent that produced the JUnit reports.
+ * The agent parses the reports and runs the {@link FailureAnalyzer} rules itself, then
+ * ships back only a compact {@link Summary}: the category of each failed test and the
+ * failed API endpoints. The controller builds the result from its own recorded test
+ * results with those categories, so everything that needs the build's history, like
+ * the age of a failure, is computed where that history is.
+ *
+ * Enabled with -Dio.jenkins.plugins.alfred.AgentAnalysisCallable.enabled=true. Builds
+ * whose reports cannot be reached fall back to controller analysis.
+ */
+final class AgentAnalysisCallable extends MasterToSlaveFileCallable<byte[]> {
+    private static final long serialVersionUID = 1L;
+    private static final Logger LOGGER = Logger.getLogger(AgentAnalysisCallable.class.getName());
+
+    static final boolean ENABLED = SystemProperties.getBoolean(AgentAnalysisCallable.class.getName() + ".enabled");
+
+    private final String includes;
+    private final long buildTime;
+    private final FailureAnalyzer.Baseline baseline;
+
+    AgentAnalysisCallable(String includes, long buildTime, FailureAnalyzer.Baseline baseline) {
+        this.includes = includes;
+        this.buildTime = buildTime;
+        this.baseline = baseline;
+    }
+
+    @Override
+    public byte[] invoke(File workspace, VirtualChannel channel) throws IOException {
+        DirectoryScanner scanner = Util.createFileSet(workspace, includes).getDirectoryScanner();
+        if (scanner.getIncludedFilesCount() == 0) {
+            return null;
+        }
+
+        TestResult testResult = new TestResult(buildTime, scanner, false);
+        testResult.tally();
+        return Summary.of(new FailureAnalyzer().analyze(testResult, baseline)).encode();
+    }
+
+    /**
+     * Analyze a completed build on its agent.
+     * Returns null when agent analysis is disabled or not possible, in which case the
+     * caller analyzes on the controller.
+     */
+    static FailureAnalysisResult analyze(Run<?, ?> run, TaskListener listener) {
+        if (!ENABLED || !(run instanceof AbstractBuild)) {
+            // Pipeline junit steps do not record their report pattern on the run
+            return null;
+        }
+        AbstractBuild<?, ?> build = (AbstractBuild<?, ?>) run;
+
+        JUnitResultArchiver archiver = build.getProject().getPublishersList().get(JUnitResultArchiver.class);
+        FilePath workspace = build.getWorkspace();
+        if (archiver == null || workspace == null || workspace.getChannel() == null) {
+            return null;
+        }
+
+        try {
+            String includes = build.getEnvironment(listener).expand(archiver.getTestResults());
+            FailureAnalysisResult previous = FailureAnalyzer.previousResult(build);
+            FailureAnalyzer.Baseline baseline = previous != null ? FailureAnalyzer.Baseline.of(previous) : null;
+            byte[] encoded = workspace.act(new AgentAnalysisCallable(includes, build.getTimeInMillis(), baseline));
+            if (encoded == null) {
+                return null;
+            }
+
+            Summary summary = Summary.decode(encoded);
+
+            // Reports rewritten or removed since they were published: trust the recorded results
+            AbstractTestResultAction<?> action = build.getAction(AbstractTestResultAction.class);
+            if (action == null || !(action.getResult() instanceof TestResult)
+                    || action.getTotalCount() != summary.totalTests
+                    || action.getFailCount() != summary.failedTests) {
+                return null;
+            }
+
+            FailureAnalysisResult result = new FailureAnalyzer()
+                .analyze((TestResult) action.getResult(), baseline, summary.categories);
+            for (Map.Entry<String, Integer> endpoint : summary.apiEndpoints.entrySet()) {
+                result.getFailedApiEndpoints().merge(endpoint.getKey(), endpoint.getValue(), Integer::sum);
+            }
+            result.setReusedCategorizations(summary.reusedCategorizations);
+            return result;
+        } catch (IOException | RuntimeException e) {
+            // Whatever went wrong on the agent or in its answer, the controller can still analyze
+            LOGGER.log(Level.FINE, "Agent analysis failed for " + build + ", falling back to the controller", e);
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    /**
+     * What the agent sends back: the test counts, per failed test id its category, plus the
+     * failed API endpoints found in them. Test ids may repeat, so the failure count is sent
+     * on its own rather than taken from the categories. Encoded with the {@link FailureAnalysisCodec} primitives; decoding treats
+     * the bytes as untrusted.
+     */
+    static final class Summary {
+        private static final FailureCategory[] CATEGORIES = FailureCategory.values();
+
+        final int totalTests;
+        final int failedTests;
+        // Keyed by test id
+        final Map<String, FailureCategory> categories;
+        final Map<String, Integer> apiEndpoints;
+        final int reusedCategorizations;
+
+        Summary(int totalTests, int failedTests, Map<String, FailureCategory> categories,
+                Map<String, Integer> apiEndpoints, int reusedCategorizations) {
+            this.totalTests = totalTests;
+            this.failedTests = failedTests;
+            this.categories = categories;
+            this.apiEndpoints = apiEndpoints;
+            this.reusedCategorizations = reusedCategorizations;
+        }
+
+        static Summary of(FailureAnalysisResult result) {
+            Map<String, FailureCategory> categories = new HashMap<>();
+            for (Map.Entry<FailureCategory, List<FailureAnalysisResult.TestFailureInfo>> entry :
+                 result.getFailuresByCategory().entrySet()) {
+                for (FailureAnalysisResult.TestFailureInfo failure : entry.getValue()) {
+                    categories.put(failure.getTestId(), entry.getKey());
+                }
+            }
+            return new Summary(result.getTotalTests(), result.getFailedTests(), categories,
+                new LinkedHashMap<>(result.getFailedApiEndpoints()), result.getReusedCategorizations());
+        }
+
+        byte[] encode() throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            FailureAnalysisCodec.writeVarInt(out, totalTests);
+            FailureAnalysisCodec.writeVarInt(out, failedTests);
+            FailureAnalysisCodec.writeVarInt(out, reusedCategorizations);
+            // Grouped by category so each category is written once
+            Map<FailureCategory, List<String>> byCategory = new EnumMap<>(FailureCategory.class);
+            for (Map.Entry<String, FailureCategory> entry : categories.entrySet()) {
+                byCategory.computeIfAbsent(entry.getValue(), c -> new ArrayList<>()).add(entry.getKey());
+            }
+            FailureAnalysisCodec.writeVarInt(out, byCategory.size());
+            for (Map.Entry<FailureCategory, List<String>> entry : byCategory.entrySet()) {
+                // Agent and controller run the same plugin version, so ordinals agree
+                FailureAnalysisCodec.writeVarInt(out, entry.getKey().ordinal());
+                FailureAnalysisCodec.writeVarInt(out, entry.getValue().size());
+                for (String testId : entry.getValue()) {
+                    FailureAnalysisCodec.writeString(out, testId);
+                }
+            }
+            FailureAnalysisCodec.writeVarInt(out, apiEndpoints.size());
+            for (Map.Entry<String, Integer> entry : apiEndpoints.entrySet()) {
+                FailureAnalysisCodec.writeString(out, entry.getKey());
+                FailureAnalysisCodec.writeVarInt(out, entry.getValue());
+            }
+            out.flush();
+            return bytes.toByteArray();
+        }
+
+        static Summary decode(byte[] encoded) throws IOException {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(encoded));
+            int totalTests = FailureAnalysisCodec.readVarInt(in);
+            int failedTests = FailureAnalysisCodec.readVarInt(in);
+            int reused = FailureAnalysisCodec.readVarInt(in);
+            Map<String, FailureCategory> categories = new HashMap<>();
+            int categoryCount = FailureAnalysisCodec.readCount(in);
+            for (int c = 0; c < categoryCount; c++) {
+                int ordinal = FailureAnalysisCodec.readVarInt(in);
+                if (ordinal < 0 || ordinal >= CATEGORIES.length) {
+                    throw new IOException("Unknown category: " + ordinal);
+                }
+                int failures = FailureAnalysisCodec.readCount(in);
+                for (int f = 0; f < failures; f++) {
+                    categories.put(FailureAnalysisCodec.readBoundedString(in), CATEGORIES[ordinal]);
+                }
+            }
+            Map<String, Integer> apiEndpoints = new LinkedHashMap<>();
+            int apis = FailureAnalysisCodec.readCount(in);
+            for (int a = 0; a < apis; a++) {
+                apiEndpoints.put(FailureAnalysisCodec.readBoundedString(in), FailureAnalysisCodec.readVarInt(in));
+            }
+            return new Summary(totalTests, failedTests, categories, apiEndpoints, reused);
+        }
+    }
+}
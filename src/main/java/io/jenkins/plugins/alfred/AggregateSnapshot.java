@@ -0,0 +1,284 @@
+package io.jenkins.plugins.alfred;
+
+import hudson.Extension;
+import hudson.ExtensionList;
+import hudson.init.InitMilestone;
+import hudson.init.Initializer;
+import hudson.init.Terminator;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.Job;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.security.ACL;
+import hudson.security.ACLContext;
+import jenkins.model.Jenkins;
+import jenkins.util.SystemProperties;
+import jenkins.util.Timer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Checkpoints {@link JobAnalysisCache} to JENKINS_HOME/alfred/aggregate-snapshot.bin so
+ * dashboards are populated right after a restart instead of after a scan of every job's
+ * last build.
+ *
+ * <pre>
+ * magic "ALFS" | version int | cache generation long | written-at long | entry count int
+ * entries: job full name, build number, next build number, analysis (compacted, FailureAnalysisCodec)
+ * CRC32 of everything above
+ * </pre>
+ *
+ * An entry is only restored if the job's next build number still matches, i.e. no build
+ * started since the checkpoint. Jobs without a restored entry are filled in by a
+ * throttled background task.
+ */
+@Extension
+public class AggregateSnapshot {
+    private static final Logger LOGGER = Logger.getLogger(AggregateSnapshot.class.getName());
+
+    private static final String PREFIX = AggregateSnapshot.class.getName();
+    private static final long CHECKPOINT_MINUTES = SystemProperties.getLong(PREFIX + ".checkpointMinutes", 10L);
+    private static final long TOP_UP_PAUSE_MILLIS = SystemProperties.getLong(PREFIX + ".topUpPauseMillis", 20L);
+
+    private static final int MAGIC = 0x414C4653; // "ALFS"
+    private static final int VERSION = 1;
+
+    // Cache generation captured by the last checkpoint, -1 before the first one
+    private volatile long writtenGeneration = -1;
+
+    public static AggregateSnapshot get() {
+        return ExtensionList.lookupSingleton(AggregateSnapshot.class);
+    }
+
+    File getFile() {
+        return new File(Jenkins.get().getRootDir(), "alfred/aggregate-snapshot.bin");
+    }
+
+    /**
+     * Write the cache if it changed since the last checkpoint
+     */
+    synchronized void checkpoint() {
+        JobAnalysisCache cache = JobAnalysisCache.get();
+        long generation = cache.getGeneration();
+        if (generation == writtenGeneration) {
+            return;
+        }
+
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            List<IOException> failures = new ArrayList<>(1);
+            int[] count = {0};
+
+            ByteArrayOutputStream entryBytes = new ByteArrayOutputStream();
+            DataOutputStream entries = new DataOutputStream(entryBytes);
+            cache.forEachVerifiable((name, buildNumber, nextBuildNumber, result) -> {
+                try {
+                    // Stack traces are never shown from the cache, so they are not worth the disk
+                    byte[] encoded = FailureAnalysisCodec.encode(
+                        result.isCompacted() ? result : AnalysisCompactor.compact(result));
+                    entries.writeUTF(name);
+                    entries.writeInt(buildNumber);
+                    entries.writeInt(nextBuildNumber);
+                    entries.writeInt(encoded.length);
+                    entries.write(encoded);
+                    count[0]++;
+                } catch (IOException e) {
+                    failures.add(e);
+                }
+            });
+            if (!failures.isEmpty()) {
+                throw failures.get(0);
+            }
+            entries.flush();
+
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(generation);
+            out.writeLong(System.currentTimeMillis());
+            out.writeInt(count[0]);
+            entryBytes.writeTo(out);
+            out.flush();
+
+            CRC32 crc = new CRC32();
+            crc.update(bytes.toByteArray());
+            out.writeInt((int) crc.getValue());
+            out.flush();
+
+            File file = getFile();
+            File tmp = new File(file.getPath() + ".tmp");
+            Files.createDirectories(file.getParentFile().toPath());
+            Files.write(tmp.toPath(), bytes.toByteArray());
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            writtenGeneration = generation;
+            LOGGER.fine(() -> "Wrote Alfred aggregate snapshot with " + count[0] + " jobs");
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to write Alfred aggregate snapshot", e);
+        }
+    }
+
+    /**
+     * Load the snapshot into the cache
+     *
+     * @return number of entries restored
+     */
+    int restore() {
+        File file = getFile();
+        if (!file.isFile()) {
+            return 0;
+        }
+
+        byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(file.toPath());
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to read Alfred aggregate snapshot", e);
+            return 0;
+        }
+        if (bytes.length < 4) {
+            return 0;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length - 4);
+        int stored = ((bytes[bytes.length - 4] & 0xFF) << 24) | ((bytes[bytes.length - 3] & 0xFF) << 16)
+            | ((bytes[bytes.length - 2] & 0xFF) << 8) | (bytes[bytes.length - 1] & 0xFF);
+        if ((int) crc.getValue() != stored) {
+            LOGGER.warning("Ignoring corrupt Alfred aggregate snapshot " + file);
+            return 0;
+        }
+
+        JobAnalysisCache cache = JobAnalysisCache.get();
+        Jenkins jenkins = Jenkins.get();
+        int restored = 0;
+        int stale = 0;
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes, 0, bytes.length - 4))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                LOGGER.warning("Ignoring Alfred aggregate snapshot in an unknown format " + file);
+                return 0;
+            }
+            in.readLong(); // generation of the writer, informational
+            in.readLong(); // written at
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String name = in.readUTF();
+                int buildNumber = in.readInt();
+                int nextBuildNumber = in.readInt();
+                byte[] encoded = new byte[in.readInt()];
+                in.readFully(encoded);
+
+                Job<?, ?> job = jenkins.getItemByFullName(name, Job.class);
+                if (job == null || job.getNextBuildNumber() != nextBuildNumber) {
+                    stale++;
+                    continue;
+                }
+                FailureAnalysisResult result = FailureAnalysisCodec.decode(encoded);
+                cache.restore(name, buildNumber, nextBuildNumber, result);
+                restored++;
+                if (result.isEstimated()) {
+                    // The exact analysis was cut short by the restart; loading the build requeues it
+                    Run<?, ?> build = job.getBuildByNumber(buildNumber);
+                    AlfredBuildAction action = build != null ? build.getAction(AlfredBuildAction.class) : null;
+                    if (action != null) {
+                        action.resumeIfEstimated();
+                    }
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to load Alfred aggregate snapshot", e);
+        }
+
+        // What was just loaded is what is on disk
+        writtenGeneration = cache.getGeneration();
+        LOGGER.info(String.format("Restored %d Alfred job analyses from snapshot, %d stale", restored, stale));
+        return restored;
+    }
+
+    /**
+     * Analyze jobs that have no cache entry yet, slowly, so request threads find them warm
+     */
+    void topUp() {
+        JobAnalysisCache cache = JobAnalysisCache.get();
+        List<String> missing = new ArrayList<>();
+        for (Job<?, ?> job : Jenkins.get().getAllItems(Job.class)) {
+            if (!cache.contains(job.getFullName())) {
+                missing.add(job.getFullName());
+            }
+        }
+
+        for (String name : missing) {
+            Job<?, ?> job = Jenkins.get().getItemByFullName(name, Job.class);
+            if (job == null || cache.contains(name)) {
+                continue;
+            }
+            try {
+                cache.getAnalysis(job);
+                Thread.sleep(TOP_UP_PAUSE_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.FINE, "Could not analyze " + name + " while warming the Alfred cache", e);
+            }
+        }
+    }
+
+    /**
+     * Restore the snapshot once jobs are loaded, then top up in the background
+     */
+    @Initializer(after = InitMilestone.JOB_CONFIG_ADAPTED)
+    public static void restoreOnStartup() {
+        AggregateSnapshot snapshot = get();
+        try (ACLContext ignored = ACL.as2(ACL.SYSTEM2)) {
+            snapshot.restore();
+        }
+        Timer.get().submit(() -> {
+            try (ACLContext ignored = ACL.as2(ACL.SYSTEM2)) {
+                snapshot.topUp();
+            }
+        });
+    }
+
+    /**
+     * Checkpoint on a clean shutdown so the next start restores everything
+     */
+    @Terminator
+    public static void checkpointOnShutdown() {
+        AggregateSnapshot snapshot = ExtensionList.lookup(AggregateSnapshot.class).get(AggregateSnapshot.class);
+        if (snapshot != null) {
+            snapshot.checkpoint();
+        }
+    }
+
+    /**
+     * Periodic checkpoint, so a crash only loses recent changes
+     */
+    @Extension
+    public static class Checkpointer extends AsyncPeriodicWork {
+        public Checkpointer() {
+            super("Alfred aggregate snapshot");
+        }
+
+        @Override
+        public long getRecurrencePeriod() {
+            return TimeUnit.MINUTES.toMillis(CHECKPOINT_MINUTES);
+        }
+
+        @Override
+        protected void execute(TaskListener listener) {
+            get().checkpoint();
+        }
+    }
+}
@@ -1,5 +1,9 @@
 package io.jenkins.plugins.alfred;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
 import java.util.*;
 import java.util.stream.Collectors;
@@ -10,15 +14,27 @@ import java.util.stream.Collectors;
 public class AggregatedAnalysis implements Serializable {
     private static final long serialVersionUID = 1L;
 
+    // Serialized form keeps the original Map-typed categoryCount so older streams still load
+    private static final ObjectStreamField[] serialPersistentFields = {
+        new ObjectStreamField("totalFailures", int.class),
+        new ObjectStreamField("categoryCount", Map.class),
+        new ObjectStreamField("categoryExamples", Map.class),
+        new ObjectStreamField("allFailedApis", Map.class),
+        new ObjectStreamField("commonErrors", Map.class),
+        new ObjectStreamField("commonCulprits", Map.class)
+    };
+
     private int totalFailures = 0;
-    private Map<FailureCategory, Integer> categoryCount = new HashMap<>();
-    private Map<FailureCategory, List<FailureAnalysisResult.TestFailureInfo>> categoryExamples = new HashMap<>();
+    // Indexed by FailureCategory ordinal
+    private int[] categoryCount = new int[FailureCategory.count()];
+    private Map<FailureCategory, List<FailureAnalysisResult.TestFailureInfo>> categoryExamples = new EnumMap<>(FailureCategory.class);
     private Map<String, Integer> allFailedApis = new HashMap<>();
     private Map<String, Integer> commonErrors = new HashMap<>();
+    // Failures per culprit frame, e.g. com.example.Client.connect(Client.java:42)
+    private Map<String, Integer> commonCulprits = new HashMap<>();
 
     public AggregatedAnalysis() {
         for (FailureCategory category : FailureCategory.values()) {
-            categoryCount.put(category, 0);
             categoryExamples.put(category, new ArrayList<>());
         }
     }
@@ -32,8 +48,11 @@ public class AggregatedAnalysis implements Serializable {
 
             FailureCategory category = entry.getKey();
             List<FailureAnalysisResult.TestFailureInfo> failures = entry.getValue();
+            if (failures.isEmpty()) {
+                continue;
+            }
 
-            categoryCount.merge(category, failures.size(), Integer::sum);
+            categoryCount[category.ordinal()] += result.getFailureCountForCategory(category);
 
             // Keep up to 5 examples per category
             List<FailureAnalysisResult.TestFailureInfo> examples = categoryExamples.get(category);
@@ -45,6 +64,11 @@ public class AggregatedAnalysis implements Serializable {
                 // Track common error messages
                 String shortError = failure.getShortError();
                 commonErrors.merge(shortError, 1, Integer::sum);
+
+                StackFrame culprit = failure.getCulprit();
+                if (culprit != null) {
+                    commonCulprits.merge(culprit.toString(), 1, Integer::sum);
+                }
             }
         }
 
@@ -59,7 +83,15 @@ public class AggregatedAnalysis implements Serializable {
     }
 
     public Map<FailureCategory, Integer> getCategoryCount() {
-        return categoryCount;
+        Map<FailureCategory, Integer> counts = new EnumMap<>(FailureCategory.class);
+        for (int i = 0; i < categoryCount.length; i++) {
+            counts.put(FailureCategory.byOrdinal(i), categoryCount[i]);
+        }
+        return counts;
+    }
+
+    public int getCountForCategory(FailureCategory category) {
+        return categoryCount[category.ordinal()];
     }
 
     public Map<FailureCategory, List<FailureAnalysisResult.TestFailureInfo>> getCategoryExamples() {
@@ -80,15 +112,77 @@ public class AggregatedAnalysis implements Serializable {
             .collect(Collectors.toList());
     }
 
+    /**
+     * Frames most failures point at, a better grouping than messages when one broken helper fails many tests
+     */
+    public List<Map.Entry<String, Integer>> getTopCulprits(int limit) {
+        return commonCulprits.entrySet().stream()
+            .sorted(Map.Entry.<String, Integer>comparingByValue().reversed())
+            .limit(limit)
+            .collect(Collectors.toList());
+    }
+
     public FailureCategory getTopCategory() {
-        return categoryCount.entrySet().stream()
-            .filter(e -> e.getValue() > 0)
-            .max(Map.Entry.comparingByValue())
-            .map(Map.Entry::getKey)
-            .orElse(FailureCategory.UNKNOWN);
+        int top = -1;
+        for (int i = 0; i < categoryCount.length; i++) {
+            if (categoryCount[i] > 0 && (top < 0 || categoryCount[i] > categoryCount[top])) {
+                top = i;
+            }
+        }
+        return top < 0 ? FailureCategory.UNKNOWN : FailureCategory.byOrdinal(top);
     }
 
     public int getCategoriesWithFailures() {
-        return (int) categoryCount.values().stream().filter(count -> count > 0).count();
+        int categories = 0;
+        for (int count : categoryCount) {
+            if (count > 0) {
+                categories++;
+            }
+        }
+        return categories;
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("totalFailures", totalFailures);
+        fields.put("categoryCount", new HashMap<>(getCategoryCount()));
+        fields.put("categoryExamples", categoryExamples);
+        fields.put("allFailedApis", allFailedApis);
+        fields.put("commonErrors", commonErrors);
+        fields.put("commonCulprits", commonCulprits);
+        out.writeFields();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        totalFailures = fields.get("totalFailures", 0);
+
+        categoryCount = new int[FailureCategory.count()];
+        Map<FailureCategory, Integer> storedCounts = (Map<FailureCategory, Integer>) fields.get("categoryCount", null);
+        if (storedCounts != null) {
+            for (Map.Entry<FailureCategory, Integer> entry : storedCounts.entrySet()) {
+                if (entry.getKey() != null && entry.getValue() != null) {
+                    categoryCount[entry.getKey().ordinal()] = entry.getValue();
+                }
+            }
+        }
+
+        categoryExamples = new EnumMap<>(FailureCategory.class);
+        Map<FailureCategory, List<FailureAnalysisResult.TestFailureInfo>> storedExamples =
+            (Map<FailureCategory, List<FailureAnalysisResult.TestFailureInfo>>) fields.get("categoryExamples", null);
+        if (storedExamples != null) {
+            categoryExamples.putAll(storedExamples);
+        }
+        for (FailureCategory category : FailureCategory.values()) {
+            categoryExamples.putIfAbsent(category, new ArrayList<>());
+        }
+
+        Map<String, Integer> storedApis = (Map<String, Integer>) fields.get("allFailedApis", null);
+        allFailedApis = storedApis != null ? storedApis : new HashMap<>();
+        Map<String, Integer> storedErrors = (Map<String, Integer>) fields.get("commonErrors", null);
+        commonErrors = storedErrors != null ? storedErrors : new HashMap<>();
+        Map<String, Integer> storedCulprits = (Map<String, Integer>) fields.get("commonCulprits", null);
+        commonCulprits = storedCulprits != null ? storedCulprits : new HashMap<>();
     }
 }
@@ -1,6 +1,7 @@
 package io.jenkins.plugins.alfred;
 
 import hudson.Extension;
+import hudson.model.ItemGroup;
 import hudson.model.Job;
 import hudson.model.Run;
 import hudson.model.RootAction;
@@ -14,9 +15,20 @@ import org.kohsuke.stapler.interceptor.RequirePOST;
 
 import javax.servlet.ServletException;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
 
 /**
  * REST API endpoint for Alfred analysis
@@ -24,6 +36,9 @@ import java.util.Map;
 @Extension
 public class AlfredApiEndpoint implements RootAction {
 
+    private static final int MAX_SEARCH_LIMIT = 200;
+    private static final int MAX_CHANGES_LIMIT = 500;
+
     @Override
     public String getIconFileName() {
         return null; // Don't show in UI
@@ -48,64 +63,518 @@ public class AlfredApiEndpoint implements RootAction {
         Jenkins jenkins = Jenkins.get();
         jenkins.checkPermission(Jenkins.READ);
 
-        JSONObject response = new JSONObject();
+        serve(req, rsp, () -> {
+            Job<?, ?> job = name == null ? null : jenkins.getItemByFullName(name, Job.class);
+            if (job == null) {
+                return error(404, "Job not found");
+            }
+            // The stored analysis, with its estimate bounds and changes, rather than a fresh one
+            FailureAnalysisResult result = JobAnalysisCache.get().getAnalysis(job);
+            if (result == null) {
+                return error(404, "No completed builds");
+            }
+            return RequestCoalescer.Response.ok(convertToJson(result));
+        });
+    }
 
-        Job<?, ?> job = jenkins.getItemByFullName(name, Job.class);
-        if (job == null) {
-            response.put("error", "Job not found");
-            rsp.setStatus(404);
-        } else {
-            Run<?, ?> lastBuild = job.getLastCompletedBuild();
-            if (lastBuild == null) {
-                response.put("error", "No completed builds");
-                rsp.setStatus(404);
-            } else {
-                FailureAnalyzer analyzer = new FailureAnalyzer();
-                FailureAnalysisResult result = analyzer.analyze(lastBuild);
-                response = convertToJson(result);
+    /**
+     * Get aggregated analysis for all jobs in a view, including nested views and folders,
+     * honouring If-None-Match
+     * URL: /alfred-api/view?name=viewName[&folder=folderFullName]
+     */
+    public void doView(StaplerRequest req, StaplerResponse rsp,
+            @QueryParameter String name,
+            @QueryParameter String folder) throws IOException {
+        Jenkins jenkins = Jenkins.get();
+        jenkins.checkPermission(Jenkins.READ);
+
+        hudson.model.View view = ItemAggregator.resolveView(name, folder);
+        if (view == null) {
+            writeResponse(rsp, error(404, "View not found"));
+            return;
+        }
+        view.checkPermission(hudson.model.View.READ);
+        Set<Job<?, ?>> jobs = ItemAggregator.collectJobs(view);
+
+        // Private: the analysis reflects what this user may see. no-cache: always revalidate.
+        String etag = viewEtag(jobs);
+        rsp.setHeader("Cache-Control", "private, no-cache");
+        if (etag.equals(req.getHeader("If-None-Match"))) {
+            rsp.setStatus(304);
+            return;
+        }
+
+        RequestCoalescer.Response response;
+        try {
+            response = viewAnalysis(name, folder, jobs);
+        } catch (RequestCoalescer.Saturated e) {
+            rsp.setHeader("Retry-After", String.valueOf(RequestCoalescer.RETRY_AFTER_SECONDS));
+            response = error(429, e.getMessage());
+        }
+        if (response.getStatus() == 200) {
+            rsp.setHeader("ETag", etag);
+        }
+        writeResponse(rsp, response);
+    }
+
+    /**
+     * Version of the analysis of a view's jobs, as the current user sees them: it changes
+     * whenever a job's cached analysis does or the jobs the user can see change, so a client
+     * holding this tag has nothing to fetch
+     */
+    static String viewEtag(Collection<? extends Job<?, ?>> jobs) {
+        return "\"" + Long.toHexString(JobAnalysisCache.get().getGeneration()) + "-" + digestOf(jobs) + "\"";
+    }
+
+    /**
+     * The /alfred-api/view response for the jobs of a view the current user can see, shared
+     * through the request coalescer with the analysis embedded in
+     * {@link AlfredFailureAnalysisAction}'s page. Callers collect the jobs anyway for
+     * {@link #viewEtag}, so they are passed in rather than collected again.
+     */
+    static RequestCoalescer.Response viewAnalysis(String name, String folder, Set<Job<?, ?>> jobs)
+            throws IOException, RequestCoalescer.Saturated {
+        String user = Jenkins.getAuthentication2().getName();
+        // Keyed by cache generation too, so a response is never reused once an analysis changed
+        String request = "/alfred-api/view?name=" + name + "&folder=" + (folder != null ? folder : "")
+            + "#" + JobAnalysisCache.get().getGeneration();
+        return RequestCoalescer.get().execute(user, user, request, () -> {
+            ItemAggregator aggregator = new ItemAggregator(JobAnalysisCache.get());
+            JSONObject response = convertAggregatedToJson(aggregator.aggregate(jobs));
+            response.put("jobCount", jobs.size());
+            return RequestCoalescer.Response.ok(response);
+        });
+    }
+
+    /**
+     * Get aggregated analysis for every job below a folder or multibranch project
+     * URL: /alfred-api/folder?name=folderFullName
+     */
+    public void doFolder(StaplerRequest req, StaplerResponse rsp,
+            @QueryParameter String name) throws IOException {
+        Jenkins jenkins = Jenkins.get();
+        jenkins.checkPermission(Jenkins.READ);
+
+        serve(req, rsp, () -> {
+            ItemGroup<?> group = ItemAggregator.resolveFolder(name);
+            if (group == null) {
+                return error(404, "Folder not found");
+            }
+            Set<Job<?, ?>> jobs = ItemAggregator.collectJobs(group);
+            ItemAggregator aggregator = new ItemAggregator(JobAnalysisCache.get());
+            JSONObject response = convertAggregatedToJson(aggregator.aggregate(jobs));
+            response.put("jobCount", jobs.size());
+            return RequestCoalescer.Response.ok(response);
+        });
+    }
+
+    /**
+     * Get aggregated analysis for several views and folders at once, plus their union.
+     * Jobs shared between targets are analyzed once.
+     * URL: /alfred-api/aggregate?view=a&view=b&folder=team/x
+     */
+    public void doAggregate(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        Jenkins jenkins = Jenkins.get();
+        jenkins.checkPermission(Jenkins.READ);
+
+        String[] viewNames = req.getParameterValues("view");
+        String[] folderNames = req.getParameterValues("folder");
+
+        serve(req, rsp, () -> {
+            // Jobs of each target as this user sees them, in request order; null if not found
+            List<String> kinds = new ArrayList<>();
+            List<String> names = new ArrayList<>();
+            List<Set<Job<?, ?>>> targetJobs = new ArrayList<>();
+            if (viewNames != null) {
+                for (String viewName : viewNames) {
+                    hudson.model.View view = ItemAggregator.resolveView(viewName, null);
+                    kinds.add("view");
+                    names.add(viewName);
+                    targetJobs.add(view != null ? ItemAggregator.collectJobs(view) : null);
+                }
+            }
+            if (folderNames != null) {
+                for (String folderName : folderNames) {
+                    ItemGroup<?> group = ItemAggregator.resolveFolder(folderName);
+                    kinds.add("folder");
+                    names.add(folderName);
+                    targetJobs.add(group != null ? ItemAggregator.collectJobs(group) : null);
+                }
             }
+
+            JSONObject response = new JSONObject();
+            JSONArray targets = new JSONArray();
+            Set<Job<?, ?>> allJobs = new LinkedHashSet<>();
+            ItemAggregator aggregator = new ItemAggregator(JobAnalysisCache.get());
+
+            for (int i = 0; i < targetJobs.size(); i++) {
+                Set<Job<?, ?>> jobs = targetJobs.get(i);
+                targets.add(convertTargetToJson(kinds.get(i), names.get(i), jobs, aggregator));
+                if (jobs != null) {
+                    allJobs.addAll(jobs);
+                }
+            }
+
+            JSONObject combined = convertAggregatedToJson(aggregator.aggregate(allJobs));
+            combined.put("jobCount", allJobs.size());
+            response.put("targets", targets);
+            response.put("combined", combined);
+            return RequestCoalescer.Response.ok(response);
+        });
+    }
+
+    /**
+     * Get the server-rendered dashboard fragment for a view, honouring If-None-Match
+     * URL: /alfred-api/dashboard?name=viewName[&folder=folderFullName]
+     */
+    public void doDashboard(StaplerRequest req, StaplerResponse rsp,
+            @QueryParameter String name,
+            @QueryParameter String folder) throws IOException {
+        Jenkins jenkins = Jenkins.get();
+        jenkins.checkPermission(Jenkins.READ);
+
+        hudson.model.View view = ItemAggregator.resolveView(name, folder);
+        if (view == null) {
+            rsp.sendError(404, "View not found");
+            return;
+        }
+        view.checkPermission(hudson.model.View.READ);
+
+        DashboardFragmentCache.Snapshot snapshot = DashboardFragmentCache.get().getSnapshot(view);
+
+        // Private: the fragment reflects what this user may see. no-cache: always revalidate.
+        rsp.setHeader("Cache-Control", "private, no-cache");
+        rsp.setHeader("ETag", snapshot.getEtag());
+        if (snapshot.getEtag().equals(req.getHeader("If-None-Match"))) {
+            rsp.setStatus(304);
+            return;
         }
 
+        rsp.setContentType("text/html;charset=UTF-8");
+        rsp.getWriter().write(snapshot.getHtml());
+    }
+
+    /**
+     * Get failure incidents shared by several jobs within the correlation window
+     * URL: /alfred-api/incidents?minJobs=2
+     */
+    public void doIncidents(StaplerRequest req, StaplerResponse rsp,
+            @QueryParameter String minJobs) throws IOException {
+        Jenkins jenkins = Jenkins.get();
+        jenkins.checkPermission(Jenkins.READ);
+
+        int threshold = 2;
+        if (minJobs != null && !minJobs.isEmpty()) {
+            try {
+                threshold = Math.max(1, Integer.parseInt(minJobs));
+            } catch (NumberFormatException e) {
+                // Keep the default
+            }
+        }
+
+        JSONArray incidents = new JSONArray();
+        // Jobs the caller cannot see are left out, including from the counts and the sample error
+        Map<String, Boolean> visibility = new HashMap<>();
+        List<FailureCorrelator.Incident> visible = FailureCorrelator.get().getIncidents(threshold,
+            jobName -> visibility.computeIfAbsent(jobName, n -> jenkins.getItemByFullName(n, Job.class) != null));
+        for (FailureCorrelator.Incident incident : visible) {
+            JSONObject json = new JSONObject();
+            json.put("fingerprint", incident.getFingerprint());
+            json.put("category", incident.getCategory().name());
+            json.put("sampleError", incident.getSampleError());
+            json.put("firstSeen", incident.getFirstSeen());
+            json.put("lastSeen", incident.getLastSeen());
+            json.put("affectedJobCount", incident.getAffectedJobCount());
+            json.put("totalFailures", incident.getTotalFailures());
+
+            JSONArray jobs = new JSONArray();
+            for (FailureCorrelator.JobHit hit : incident.getAffectedJobs()) {
+                JSONObject job = new JSONObject();
+                job.put("name", hit.getJobName());
+                job.put("build", hit.getBuildNumber());
+                job.put("failures", hit.getFailures());
+                job.put("firstSeen", hit.getFirstSeen());
+                jobs.add(job);
+            }
+            json.put("jobs", jobs);
+            incidents.add(json);
+        }
+
+        JSONObject response = new JSONObject();
+        response.put("incidents", incidents);
+
         rsp.setContentType("application/json");
         rsp.getWriter().write(response.toString());
     }
 
     /**
-     * Get aggregated analysis for multiple jobs in a view
-     * URL: /alfred-api/view?name=viewName
+     * Get the tests that got slower as of a build, from its stored analysis; defaults to the last completed build
+     * URL: /alfred-api/durations?job=jobName&build=42
      */
-    public void doView(StaplerRequest req, StaplerResponse rsp,
-            @QueryParameter String name) throws IOException {
+    public void doDurations(StaplerRequest req, StaplerResponse rsp,
+            @QueryParameter String job,
+            @QueryParameter String build) throws IOException {
         Jenkins jenkins = Jenkins.get();
         jenkins.checkPermission(Jenkins.READ);
 
+        serve(req, rsp, () -> {
+            Job<?, ?> target = job == null ? null : jenkins.getItemByFullName(job, Job.class);
+            if (target == null) {
+                return error(404, "Job not found");
+            }
+            int number = parseInt(build, -1);
+            Run<?, ?> run = number > 0 ? target.getBuildByNumber(number) : target.getLastCompletedBuild();
+            AlfredBuildAction action = run == null ? null : run.getAction(AlfredBuildAction.class);
+            if (action == null) {
+                return error(404, "No analyzed build");
+            }
+
+            JSONArray regressions = new JSONArray();
+            for (DurationRegression regression : action.getAnalysisResult().getDurationRegressions()) {
+                JSONObject json = new JSONObject();
+                json.put("test", regression.getTestId());
+                json.put("baselineP50Millis", regression.getBaselineP50());
+                json.put("recentP50Millis", regression.getRecentP50());
+                json.put("baselineP95Millis", regression.getBaselineP95());
+                json.put("recentP95Millis", regression.getRecentP95());
+                regressions.add(json);
+            }
+
+            JSONObject response = new JSONObject();
+            response.put("job", target.getFullName());
+            response.put("build", run.getNumber());
+            response.put("regressions", regressions);
+            return RequestCoalescer.Response.ok(response);
+        });
+    }
+
+    /**
+     * Get job analysis summaries that changed after a cursor, for federation peers.
+     * Start without a cursor; when "reset" is true drop everything held for this controller.
+     * URL: /alfred-api/changes?since=cursor&limit=500
+     */
+    public void doChanges(StaplerRequest req, StaplerResponse rsp,
+            @QueryParameter String since,
+            @QueryParameter String limit) throws IOException {
+        Jenkins jenkins = Jenkins.get();
+        jenkins.checkPermission(Jenkins.READ);
+
+        int max = Math.max(1, Math.min(MAX_CHANGES_LIMIT, parseInt(limit, MAX_CHANGES_LIMIT)));
+        AnalysisChangeLog.Page page = AnalysisChangeLog.get().since(since, max);
+
+        JSONArray changes = new JSONArray();
+        for (AnalysisChangeLog.Change change : page.getChanges()) {
+            // Jobs this user cannot see are skipped; the cursor still moves past them
+            if (change.isDeleted() || jenkins.getItemByFullName(change.getJob(), Job.class) != null) {
+                changes.add(change.toJson());
+            }
+        }
+
         JSONObject response = new JSONObject();
+        response.put("cursor", page.getCursor());
+        response.put("reset", page.isReset());
+        response.put("more", page.hasMore());
+        response.put("changes", changes);
+        writeResponse(rsp, RequestCoalescer.Response.ok(response));
+    }
 
-        hudson.model.View view = jenkins.getView(name);
-        if (view == null) {
-            response.put("error", "View not found");
-            rsp.setStatus(404);
-        } else {
-            List<FailureAnalysisResult> results = new ArrayList<>();
-            FailureAnalyzer analyzer = new FailureAnalyzer();
-
-            for (hudson.model.TopLevelItem item : view.getItems()) {
-                if (item instanceof Job) {
-                    Job<?, ?> job = (Job<?, ?>) item;
-                    Run<?, ?> lastBuild = job.getLastCompletedBuild();
-                    if (lastBuild != null) {
-                        FailureAnalysisResult result = analyzer.analyze(lastBuild);
-                        results.add(result);
-                    }
+    /**
+     * Get failure totals across this controller and its federation peers
+     * URL: /alfred-api/federated
+     */
+    public void doFederated(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        Jenkins.get().checkPermission(Jenkins.READ);
+        writeResponse(rsp, RequestCoalescer.Response.ok(FederatedAggregate.get().toJson()));
+    }
+
+    /**
+     * Search historical failures; all given criteria must match, newest first
+     * URL: /alfred-api/search?q=text&testClass=com.example.FooTest&category=NETWORK&job=jobName&days=7&start=0&limit=50
+     */
+    public void doSearch(StaplerRequest req, StaplerResponse rsp,
+            @QueryParameter String q,
+            @QueryParameter String testClass,
+            @QueryParameter String category,
+            @QueryParameter String job,
+            @QueryParameter String days,
+            @QueryParameter String start,
+            @QueryParameter String limit) throws IOException {
+        Jenkins jenkins = Jenkins.get();
+        jenkins.checkPermission(Jenkins.READ);
+
+        List<String> terms = FailureSearchIndex.queryTerms(q, testClass, category, job);
+        if (terms.isEmpty()) {
+            writeResponse(rsp, error(400, "Provide at least one of q, testClass, category or job"));
+            return;
+        }
+
+        int offset = Math.max(0, parseInt(start, 0));
+        int pageSize = Math.min(MAX_SEARCH_LIMIT, Math.max(1, parseInt(limit, 50)));
+        int dayCount = parseInt(days, 0);
+        long since = dayCount > 0 ? System.currentTimeMillis() - TimeUnit.DAYS.toMillis(dayCount) : 0;
+
+        serve(req, rsp, () -> {
+            // Jobs the caller cannot see, or that no longer exist, count for nothing
+            FailureSearchIndex.SearchPage page = FailureSearchIndex.get().search(terms, since, offset, pageSize,
+                jobName -> jenkins.getItemByFullName(jobName, Job.class) != null);
+
+            JSONArray hits = new JSONArray();
+            for (SearchDocument doc : page.getHits()) {
+                Job<?, ?> hitJob = jenkins.getItemByFullName(doc.getJobName(), Job.class);
+                if (hitJob == null) {
+                    // Deleted since it was checked above
+                    continue;
                 }
+                JSONObject hit = new JSONObject();
+                hit.put("job", doc.getJobName());
+                hit.put("build", doc.getBuildNumber());
+                hit.put("buildUrl", hitJob.getUrl() + doc.getBuildNumber() + "/");
+                hit.put("timestamp", doc.getTimestamp());
+                hit.put("className", doc.getClassName());
+                hit.put("testName", doc.getTestName());
+                hit.put("category", doc.getCategory());
+                hit.put("error", doc.getShortError());
+                hits.add(hit);
             }
 
-            AggregatedAnalysis aggregated = analyzer.aggregateResults(results);
-            response = convertAggregatedToJson(aggregated);
+            JSONObject response = new JSONObject();
+            response.put("total", page.getTotal());
+            response.put("start", page.getStart());
+            response.put("nextStart", page.getNextStart());
+            response.put("hits", hits);
+            return RequestCoalescer.Response.ok(response);
+        });
+    }
+
+    /**
+     * Metrics of the retention compaction task
+     * URL: /alfred-api/compaction
+     */
+    public void doCompaction(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        Jenkins.get().checkPermission(Jenkins.ADMINISTER);
+
+        AnalysisCompactor compactor = AnalysisCompactor.get();
+        JSONObject response = new JSONObject();
+        response.put("keepFullBuilds", AnalysisCompactor.KEEP_FULL_BUILDS);
+        response.put("buildsCompacted", compactor.getBuildsCompacted());
+        response.put("bytesReclaimed", compactor.getBytesReclaimed());
+        response.put("passes", compactor.getPasses());
+        response.put("lastPassBuilds", compactor.getLastPassBuilds());
+        response.put("lastPassBytes", compactor.getLastPassBytes());
+        response.put("lastPassMillis", compactor.getLastPassMillis());
+        writeResponse(rsp, RequestCoalescer.Response.ok(response));
+    }
+
+    /**
+     * Stream stored analyses as NDJSON, one record per build or per failure
+     * URL: /alfred-api/export?job=jobName|folder=folderFullName&records=build|failure&since=millis&until=millis&cursor=c&limit=n&stacks=true
+     */
+    public void doExport(StaplerRequest req, StaplerResponse rsp,
+            @QueryParameter String job,
+            @QueryParameter String folder,
+            @QueryParameter String records,
+            @QueryParameter String since,
+            @QueryParameter String until,
+            @QueryParameter String cursor,
+            @QueryParameter String limit,
+            @QueryParameter boolean stacks) throws IOException {
+        Jenkins jenkins = Jenkins.get();
+        jenkins.checkPermission(Jenkins.READ);
+
+        try {
+            AnalysisExporter.Cursor.decode(cursor);
+        } catch (IllegalArgumentException e) {
+            writeResponse(rsp, error(400, "Invalid cursor"));
+            return;
         }
 
+        TreeSet<String> jobs = AnalysisExporter.selectJobs(job, folder);
+        if (jobs == null) {
+            writeResponse(rsp, error(404, "Job or folder not found"));
+            return;
+        }
+
+        AnalysisExporter exporter = new AnalysisExporter("failure".equals(records), stacks,
+            parseLong(since, 0), parseLong(until, 0), Math.max(0, parseInt(limit, 0)));
+
+        // No content length: the container streams the records with chunked transfer encoding
+        rsp.setContentType("application/x-ndjson;charset=UTF-8");
+        exporter.export(jobs, cursor, rsp.getWriter());
+    }
+
+    /**
+     * Write a read-only response through the request coalescer, answering 429 when saturated.
+     * The computation filters by what the caller may see, so it is shared per user.
+     */
+    private static void serve(StaplerRequest req, StaplerResponse rsp,
+            RequestCoalescer.Computation computation) throws IOException {
+        String user = Jenkins.getAuthentication2().getName();
+        String query = req.getQueryString();
+        String request = req.getRequestURI() + (query != null ? "?" + query : "");
+
+        RequestCoalescer.Response response;
+        try {
+            response = RequestCoalescer.get().execute(user, user, request, computation);
+        } catch (RequestCoalescer.Saturated e) {
+            rsp.setHeader("Retry-After", String.valueOf(RequestCoalescer.RETRY_AFTER_SECONDS));
+            response = error(429, e.getMessage());
+        }
+        writeResponse(rsp, response);
+    }
+
+    /**
+     * Digest of the full names of a set of jobs, independent of their order
+     */
+    private static String digestOf(Collection<? extends Job<?, ?>> jobs) {
+        List<String> names = new ArrayList<>(jobs.size());
+        for (Job<?, ?> job : jobs) {
+            names.add(job.getFullName());
+        }
+        Collections.sort(names);
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (String name : names) {
+                digest.update(name.getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) '\n');
+            }
+            return Base64.getEncoder().encodeToString(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static void writeResponse(StaplerResponse rsp, RequestCoalescer.Response response) throws IOException {
+        rsp.setStatus(response.getStatus());
         rsp.setContentType("application/json");
-        rsp.getWriter().write(response.toString());
+        rsp.getWriter().write(response.getBody());
+    }
+
+    private static RequestCoalescer.Response error(int status, String message) {
+        JSONObject json = new JSONObject();
+        json.put("error", message);
+        return RequestCoalescer.Response.status(status, json);
+    }
+
+    private static long parseLong(String value, long defaultValue) {
+        if (value == null || value.isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    private static int parseInt(String value, int defaultValue) {
+        if (value == null || value.isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
     }
 
     /**
@@ -132,12 +601,16 @@ public class AlfredApiEndpoint implements RootAction {
                 rsp.setStatus(404);
             } else {
                 FailureAnalyzer analyzer = new FailureAnalyzer();
-                FailureAnalysisResult result = analyzer.analyze(run);
+                FailureAnalysisResult result = analyzer.analyzeIncremental(run);
+                if (FailureClassifier.ENABLED) {
+                    FailureClassifier.get().classifyUnknown(result);
+                }
 
                 // Attach to build if not already present
                 if (run.getAction(AlfredBuildAction.class) == null) {
                     run.addAction(new AlfredBuildAction(run, result));
                 }
+                JobAnalysisCache.get().put(run, result);
 
                 response.put("success", true);
                 response.put("analysis", convertToJson(result));
@@ -148,6 +621,77 @@ public class AlfredApiEndpoint implements RootAction {
         rsp.getWriter().write(response.toString());
     }
 
+    /**
+     * Correct the category of a failure in a stored analysis; the classifier learns from it
+     * URL: /alfred-api/correct?job=jobName&build=buildNumber&test=className.testName&category=NAME
+     */
+    @RequirePOST
+    public void doCorrect(StaplerRequest req, StaplerResponse rsp,
+            @QueryParameter String job,
+            @QueryParameter int build,
+            @QueryParameter String test,
+            @QueryParameter String category) throws IOException {
+        Jenkins jenkins = Jenkins.get();
+        jenkins.checkPermission(Jenkins.READ);
+
+        FailureCategory target;
+        try {
+            target = FailureCategory.valueOf(category);
+        } catch (IllegalArgumentException | NullPointerException e) {
+            writeResponse(rsp, error(400, "Unknown category"));
+            return;
+        }
+
+        Job<?, ?> jobObj = jenkins.getItemByFullName(job, Job.class);
+        Run<?, ?> run = jobObj != null ? jobObj.getBuildByNumber(build) : null;
+        if (run == null) {
+            writeResponse(rsp, error(404, "Build not found"));
+            return;
+        }
+        run.checkPermission(Run.UPDATE);
+
+        AlfredBuildAction action = run.getAction(AlfredBuildAction.class);
+        if (action == null) {
+            writeResponse(rsp, error(404, "Failure not found"));
+            return;
+        }
+
+        FailureAnalysisResult result;
+        FailureAnalysisResult.TestFailureInfo failure;
+        // The result as it was before this correction, if it moved the failure
+        FailureAnalysisResult before = null;
+        // Serializes corrections of one build so none is lost; readers keep the result they hold
+        synchronized (action) {
+            result = action.getAnalysisResult();
+            failure = result.findFailure(test);
+            if (failure == null) {
+                writeResponse(rsp, error(404, "Failure not found"));
+                return;
+            }
+
+            FailureCategory current = result.categoryOf(failure);
+            if (current != target) {
+                before = result;
+                result = result.copy();
+                result.moveFailure(failure, current, target);
+                result.getPredictedTests().remove(test);
+                if (!result.getCorrectedTests().contains(test)) {
+                    result.addCorrected(test);
+                }
+                action.setAnalysisResult(result);
+                JobAnalysisCache.get().put(run, result);
+            }
+        }
+        if (before != null && FailureClassifier.ENABLED) {
+            FailureClassifier.get().correct(before, failure, target);
+        }
+
+        JSONObject response = new JSONObject();
+        response.put("success", true);
+        response.put("analysis", convertToJson(result));
+        writeResponse(rsp, RequestCoalescer.Response.ok(response));
+    }
+
     private JSONObject convertToJson(FailureAnalysisResult result) {
         JSONObject json = new JSONObject();
         json.put("totalTests", result.getTotalTests());
@@ -164,6 +708,21 @@ public class AlfredApiEndpoint implements RootAction {
         }
         json.put("categories", categories);
 
+        if (result.isEstimated()) {
+            JSONObject bounds = new JSONObject();
+            for (FailureCategory category : FailureCategory.values()) {
+                FailureAnalysisResult.Estimate estimate = result.getEstimate(category);
+                if (estimate != null) {
+                    JSONObject interval = new JSONObject();
+                    interval.put("lower", estimate.getLower());
+                    interval.put("upper", estimate.getUpper());
+                    bounds.put(category.name(), interval);
+                }
+            }
+            json.put("sampledFailures", result.getSampledFailures());
+            json.put("categoryBounds", bounds);
+        }
+
         JSONArray failedApis = new JSONArray();
         for (Map.Entry<String, Integer> entry : result.getFailedApiEndpoints().entrySet()) {
             JSONObject api = new JSONObject();
@@ -173,10 +732,34 @@ public class AlfredApiEndpoint implements RootAction {
         }
         json.put("failedApis", failedApis);
 
+        if (result.isDifferential()) {
+            JSONObject changes = new JSONObject();
+            changes.put("newFailures", result.getNewFailures());
+            changes.put("stillFailing", result.getStillFailing());
+            changes.put("fixed", result.getFixedTests());
+            changes.put("reusedCategorizations", result.getReusedCategorizations());
+            json.put("changes", changes);
+        }
+
+        return json;
+    }
+
+    private JSONObject convertTargetToJson(String type, String name, Set<Job<?, ?>> jobs,
+            ItemAggregator aggregator) {
+        JSONObject json;
+        if (jobs == null) {
+            json = new JSONObject();
+            json.put("error", "Not found");
+        } else {
+            json = convertAggregatedToJson(aggregator.aggregate(jobs));
+            json.put("jobCount", jobs.size());
+        }
+        json.put("type", type);
+        json.put("name", name);
         return json;
     }
 
-    private JSONObject convertAggregatedToJson(AggregatedAnalysis aggregated) {
+    private static JSONObject convertAggregatedToJson(AggregatedAnalysis aggregated) {
         JSONObject json = new JSONObject();
         json.put("totalFailures", aggregated.getTotalFailures());
         json.put("categoriesWithFailures", aggregated.getCategoriesWithFailures());
@@ -199,6 +782,15 @@ public class AlfredApiEndpoint implements RootAction {
         }
         json.put("topFailedApis", topApis);
 
+        JSONArray topCulprits = new JSONArray();
+        for (Map.Entry<String, Integer> entry : aggregated.getTopCulprits(10)) {
+            JSONObject culprit = new JSONObject();
+            culprit.put("frame", entry.getKey());
+            culprit.put("count", entry.getValue());
+            topCulprits.add(culprit);
+        }
+        json.put("topCulprits", topCulprits);
+
         return json;
     }
 }
@@ -1,18 +1,35 @@
 package io.jenkins.plugins.alfred;
 
-import hudson.model.Action;
 import hudson.model.Run;
+import jenkins.model.RunAction2;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
- * Action that attaches Alfred analysis to a build
+ * Action that attaches Alfred analysis to a build.
+ * The analysis is stored next to build.xml in {@link FailureAnalysisCodec} format and
+ * loaded on demand; the in-memory copy is softly held so idle builds can release it.
  */
-public class AlfredBuildAction implements Action {
-    private final Run<?, ?> build;
-    private final FailureAnalysisResult analysisResult;
+public class AlfredBuildAction implements RunAction2 {
+    private static final Logger LOGGER = Logger.getLogger(AlfredBuildAction.class.getName());
+
+    static final String FILE_NAME = "alfred-analysis.bin";
+
+    private transient Run<?, ?> build;
+    // Only kept in build.xml for builds analyzed before the binary format, or if writing the file failed
+    private volatile FailureAnalysisResult analysisResult;
+    private transient volatile SoftReference<FailureAnalysisResult> cachedResult;
 
     public AlfredBuildAction(Run<?, ?> build, FailureAnalysisResult analysisResult) {
         this.build = build;
         this.analysisResult = analysisResult;
+        this.cachedResult = new SoftReference<>(analysisResult);
     }
 
     @Override
@@ -30,17 +47,146 @@ public class AlfredBuildAction implements Action {
         return "alfred-analysis";
     }
 
+    @Override
+    public void onAttached(Run<?, ?> r) {
+        this.build = r;
+        FailureAnalysisResult result = analysisResult;
+        if (result != null && store(r, result)) {
+            analysisResult = null;
+        }
+    }
+
+    @Override
+    public void onLoad(Run<?, ?> r) {
+        this.build = r;
+        resumeIfEstimated();
+    }
+
+    /**
+     * Queue the exact analysis if only an estimate was stored, e.g. because the controller
+     * restarted before the background analysis finished. Reads just the file header.
+     */
+    void resumeIfEstimated() {
+        Run<?, ?> r = build;
+        if (r == null) {
+            return;
+        }
+        FailureAnalysisResult legacy = analysisResult;
+        boolean estimated;
+        if (legacy != null) {
+            estimated = legacy.isEstimated();
+        } else {
+            int flags = FailureAnalysisCodec.peekFlags(new File(r.getRootDir(), FILE_NAME));
+            estimated = flags >= 0 && (flags & FailureAnalysisCodec.FLAG_ESTIMATED) != 0;
+        }
+        if (estimated && !r.isBuilding()) {
+            AlfredRunListener.finishExact(r, this, null);
+        }
+    }
+
     public Run<?, ?> getBuild() {
         return build;
     }
 
     public FailureAnalysisResult getAnalysisResult() {
-        return analysisResult;
+        FailureAnalysisResult legacy = analysisResult;
+        if (legacy != null) {
+            return legacy;
+        }
+
+        SoftReference<FailureAnalysisResult> ref = cachedResult;
+        FailureAnalysisResult result = ref != null ? ref.get() : null;
+        if (result == null) {
+            result = load();
+            if (result == null) {
+                // Unreadable: not kept, so the file is tried again rather than shown as empty for good
+                return new FailureAnalysisResult();
+            }
+            cachedResult = new SoftReference<>(result);
+        }
+        return result;
+    }
+
+    /**
+     * Like {@link #getAnalysisResult()} but does not keep a freshly decoded result,
+     * for bulk readers that visit each build once
+     *
+     * @return the analysis, or null if the stored analysis could not be read
+     */
+    FailureAnalysisResult readAnalysisResult() {
+        FailureAnalysisResult legacy = analysisResult;
+        if (legacy != null) {
+            return legacy;
+        }
+        SoftReference<FailureAnalysisResult> ref = cachedResult;
+        FailureAnalysisResult result = ref != null ? ref.get() : null;
+        return result != null ? result : load();
     }
 
     public AggregatedAnalysis getAggregatedAnalysis() {
         AggregatedAnalysis aggregated = new AggregatedAnalysis();
-        aggregated.addResult(analysisResult);
+        aggregated.addResult(getAnalysisResult());
         return aggregated;
     }
+
+    /**
+     * Replace the stored analysis, e.g. after re-analysis or compaction
+     */
+    public void setAnalysisResult(FailureAnalysisResult result) {
+        cachedResult = new SoftReference<>(result);
+        boolean legacy = analysisResult != null;
+        if (build != null && store(build, result)) {
+            analysisResult = null;
+            if (legacy) {
+                // Drop the old copy from build.xml now that the file holds the analysis
+                saveBuild();
+            }
+        } else {
+            analysisResult = result;
+            saveBuild();
+        }
+    }
+
+    private void saveBuild() {
+        if (build == null) {
+            return;
+        }
+        try {
+            build.save();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to save " + build, e);
+        }
+    }
+
+    /**
+     * Decode the stored analysis; an empty result if none was stored, null if it is unreadable
+     */
+    private FailureAnalysisResult load() {
+        if (build != null) {
+            File file = new File(build.getRootDir(), FILE_NAME);
+            if (file.isFile()) {
+                try {
+                    return FailureAnalysisCodec.decode(Files.readAllBytes(file.toPath()));
+                } catch (IOException e) {
+                    LOGGER.log(Level.WARNING, "Failed to load Alfred analysis for " + build, e);
+                    return null;
+                }
+            }
+        }
+        return new FailureAnalysisResult();
+    }
+
+    private static boolean store(Run<?, ?> run, FailureAnalysisResult result) {
+        File file = new File(run.getRootDir(), FILE_NAME);
+        File tmp = new File(run.getRootDir(), FILE_NAME + ".tmp");
+        try {
+            Files.write(tmp.toPath(), FailureAnalysisCodec.encode(result));
+            Files.move(tmp.toPath(), file.toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to store Alfred analysis for " + run + ", keeping it in build.xml", e);
+            return false;
+        }
+    }
 }
@@ -1,8 +1,11 @@
 package io.jenkins.plugins.alfred;
 
 import hudson.Extension;
+import hudson.Util;
+import hudson.model.Item;
 import hudson.model.PageDecorator;
 import hudson.model.View;
+import hudson.model.ViewGroup;
 import org.kohsuke.stapler.Stapler;
 import org.kohsuke.stapler.StaplerRequest;
 
@@ -61,6 +64,31 @@ public class AlfredDashboardDecorator extends PageDecorator {
         return null;
     }
     
+    /**
+     * Query string that addresses the current view for the dashboard fragment endpoint,
+     * including its nesting path and owning folder
+     */
+    public String getFragmentQuery() {
+        View view = getCurrentView();
+        if (view == null) {
+            return "";
+        }
+
+        StringBuilder path = new StringBuilder(view.getViewName());
+        ViewGroup owner = view.getOwner();
+        while (owner instanceof View) {
+            View parent = (View) owner;
+            path.insert(0, parent.getViewName() + "/");
+            owner = parent.getOwner();
+        }
+
+        StringBuilder query = new StringBuilder("name=").append(Util.rawEncode(path.toString()));
+        if (owner instanceof Item) {
+            query.append("&folder=").append(Util.rawEncode(((Item) owner).getFullName()));
+        }
+        return query.toString();
+    }
+
     /**
      * Get dashboard stats for current view
      */
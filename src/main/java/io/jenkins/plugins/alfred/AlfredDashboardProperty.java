@@ -71,6 +71,8 @@ public class AlfredDashboardProperty extends hudson.model.ViewProperty {
                     if (action != null) {
                         stats.addAnalysis(action.getAnalysisResult());
                     }
+
+                    stats.addJob(new JobSummary(job, lastBuild));
                 }
             }
         }
@@ -96,24 +98,44 @@ public class AlfredDashboardProperty extends hudson.model.ViewProperty {
         public int unstableJobs = 0;
         public int abortedJobs = 0;
 
-        private Map<FailureCategory, Integer> categoryCount = new HashMap<>();
+        // Indexed by FailureCategory ordinal
+        private final int[] categoryCount = new int[FailureCategory.count()];
         private int totalFailures = 0;
+        private final List<JobSummary> jobs = new ArrayList<>();
+
+        public void addJob(JobSummary job) {
+            jobs.add(job);
+        }
+
+        /**
+         * Per-job rows for the dashboard's "Copy Results" table
+         */
+        public List<JobSummary> getJobs() {
+            return jobs;
+        }
 
         public void addAnalysis(FailureAnalysisResult result) {
             if (result.getFailedTests() > 0) {
                 totalFailures += result.getFailedTests();
 
+                // Estimated results only hold the sampled failures; the count is the extrapolation
                 for (FailureCategory category : FailureCategory.values()) {
-                    int count = result.getFailureCountForCategory(category);
-                    if (count > 0) {
-                        categoryCount.merge(category, count, Integer::sum);
-                    }
+                    categoryCount[category.ordinal()] += result.getFailureCountForCategory(category);
                 }
             }
         }
 
+        /**
+         * Categories that have at least one failure, in declaration order
+         */
         public Map<FailureCategory, Integer> getCategoryCount() {
-            return categoryCount;
+            Map<FailureCategory, Integer> counts = new EnumMap<>(FailureCategory.class);
+            for (int i = 0; i < categoryCount.length; i++) {
+                if (categoryCount[i] > 0) {
+                    counts.put(FailureCategory.byOrdinal(i), categoryCount[i]);
+                }
+            }
+            return counts;
         }
 
         public int getTotalFailures() {
@@ -121,18 +143,92 @@ public class AlfredDashboardProperty extends hudson.model.ViewProperty {
         }
 
         public FailureCategory getTopCategory() {
-            return categoryCount.entrySet().stream()
-                .max(Map.Entry.comparingByValue())
-                .map(Map.Entry::getKey)
-                .orElse(FailureCategory.UNKNOWN);
+            int top = -1;
+            for (int i = 0; i < categoryCount.length; i++) {
+                if (categoryCount[i] > 0 && (top < 0 || categoryCount[i] > categoryCount[top])) {
+                    top = i;
+                }
+            }
+            return top < 0 ? FailureCategory.UNKNOWN : FailureCategory.byOrdinal(top);
         }
 
         public int getTopCategoryCount() {
-            return categoryCount.getOrDefault(getTopCategory(), 0);
+            return categoryCount[getTopCategory().ordinal()];
         }
 
         public boolean hasFailures() {
             return totalFailures > 0;
         }
     }
+
+    /**
+     * Last build summary of a single job in the dashboard
+     */
+    public static class JobSummary {
+        private final String name;
+        private final String url;
+        private final String status;
+        private final int buildNumber;
+        private final String buildUrl;
+        private final long timestamp;
+        private final int totalTests;
+        private final int failedTests;
+        private final int skippedTests;
+
+        public JobSummary(Job<?, ?> job, Run<?, ?> lastBuild) {
+            this.name = job.getDisplayName();
+            this.url = job.getUrl();
+            Result result = lastBuild.getResult();
+            this.status = result != null ? result.toString() : "RUNNING";
+            this.buildNumber = lastBuild.getNumber();
+            this.buildUrl = lastBuild.getUrl();
+            this.timestamp = lastBuild.getTimeInMillis();
+
+            // Counts are stored with the action, so this does not load the test report
+            hudson.tasks.test.AbstractTestResultAction<?> tests =
+                lastBuild.getAction(hudson.tasks.test.AbstractTestResultAction.class);
+            this.totalTests = tests != null ? tests.getTotalCount() : -1;
+            this.failedTests = tests != null ? tests.getFailCount() : -1;
+            this.skippedTests = tests != null ? tests.getSkipCount() : -1;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        public String getStatus() {
+            return status;
+        }
+
+        public int getBuildNumber() {
+            return buildNumber;
+        }
+
+        public String getBuildUrl() {
+            return buildUrl;
+        }
+
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        /**
+         * @return the test count, or -1 if the build has no test results
+         */
+        public int getTotalTests() {
+            return totalTests;
+        }
+
+        public int getFailedTests() {
+            return failedTests;
+        }
+
+        public int getSkippedTests() {
+            return skippedTests;
+        }
+    }
 }
@@ -0,0 +1,71 @@
+package io.jenkins.plugins.alfred;
+
+import hudson.Extension;
+import hudson.cli.CLICommand;
+import jenkins.model.Jenkins;
+import org.kohsuke.args4j.Option;
+
+import java.io.BufferedWriter;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.TreeSet;
+
+/**
+ * CLI counterpart of /alfred-api/export: writes stored analyses to stdout as NDJSON
+ */
+@Extension
+public class AlfredExportCommand extends CLICommand {
+
+    @Option(name = "--job", usage = "Full name of the job to export")
+    public String job;
+
+    @Option(name = "--folder", usage = "Export every job below this folder")
+    public String folder;
+
+    @Option(name = "--failures", usage = "One record per failure instead of one per build")
+    public boolean failures;
+
+    @Option(name = "--stacks", usage = "Include stack traces in failure records")
+    public boolean stacks;
+
+    @Option(name = "--since", usage = "Only builds started at or after this time, in epoch milliseconds")
+    public long since;
+
+    @Option(name = "--until", usage = "Only builds started before this time, in epoch milliseconds")
+    public long until;
+
+    @Option(name = "--cursor", usage = "Resume after the record carrying this cursor")
+    public String cursor;
+
+    @Option(name = "--limit", usage = "Maximum number of records")
+    public int limit;
+
+    @Override
+    public String getShortDescription() {
+        return "Export stored Alfred failure analyses as newline-delimited JSON";
+    }
+
+    @Override
+    protected int run() throws Exception {
+        Jenkins.get().checkPermission(Jenkins.READ);
+
+        try {
+            AnalysisExporter.Cursor.decode(cursor);
+        } catch (IllegalArgumentException e) {
+            stderr.println("Invalid cursor: " + cursor);
+            return 3;
+        }
+
+        TreeSet<String> jobs = AnalysisExporter.selectJobs(job, folder);
+        if (jobs == null) {
+            stderr.println("No such job or folder");
+            return 3;
+        }
+
+        Writer out = new BufferedWriter(new OutputStreamWriter(stdout, StandardCharsets.UTF_8));
+        new AnalysisExporter(failures, stacks, since, until, Math.max(0, limit)).export(jobs, cursor, out);
+        out.flush();
+        return 0;
+    }
+}
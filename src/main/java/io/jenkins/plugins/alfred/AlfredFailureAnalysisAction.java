@@ -1,25 +1,29 @@
 package io.jenkins.plugins.alfred;
 
 import hudson.Extension;
+import hudson.Util;
+import hudson.model.Job;
 import hudson.model.RootAction;
 import hudson.model.View;
 import jenkins.model.Jenkins;
-import org.kohsuke.stapler.QueryParameter;
-import org.kohsuke.stapler.WebMethod;
-import org.kohsuke.stapler.verb.GET;
+import org.kohsuke.stapler.StaplerRequest;
 
+import java.io.IOException;
+import java.util.Set;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
- * Root action that provides a standalone page for failure analysis
+ * Root action that provides a standalone page for failure analysis.
+ *
+ * The action is a singleton shared by all requests, so everything that depends on the
+ * requested view lives in a {@link Page} built per request by index.jelly.
  */
 @Extension
 public class AlfredFailureAnalysisAction implements RootAction {
 
     private static final Logger LOGGER = Logger.getLogger(AlfredFailureAnalysisAction.class.getName());
 
-    private String currentViewName;
-
     @Override
     public String getIconFileName() {
         // Return null to not show in side panel
@@ -55,24 +59,88 @@ public class AlfredFailureAnalysisAction implements RootAction {
     }
 
     /**
-     * Get the current view name for Jelly template
+     * State of one page load: the view from the "view" and "folder" query parameters,
+     * or the primary view, and its analysis
      */
-    public String getViewName() {
-        return currentViewName;
+    public Page createPage(StaplerRequest req) {
+        String viewName = Util.fixEmpty(req.getParameter("view"));
+        String folder = Util.fixEmpty(req.getParameter("folder"));
+        if (viewName == null) {
+            viewName = getViewByName(null).getViewName();
+            folder = null;
+        }
+        return new Page(viewName, folder);
     }
 
     /**
-     * Main page handler
+     * Analysis of one view as rendered into the page. The analysis is computed, or taken
+     * from the API's cache, while the page renders, so the browser needs no second round
+     * trip; afterwards it revalidates with {@link #getEtag()} and only downloads the view
+     * analysis again when some job's analysis, or the jobs the user can see, changed.
+     * A view that is missing or hidden from the user is left to the browser, which shows
+     * the API's error.
      */
-    @WebMethod(name = "")
-    @GET
-    public AlfredFailureAnalysisAction doIndex(@QueryParameter(value = "view", required = false) String viewName) {
-        View view = getViewByName(viewName);
-        this.currentViewName = viewName != null ? viewName : view.getViewName();
+    public static final class Page {
+        private final String viewName;
+        private final String folder;
+        private final String etag;
+        private final String initialData;
+
+        Page(String viewName, String folder) {
+            this.viewName = viewName;
+            this.folder = folder;
+            View view = ItemAggregator.resolveView(viewName, folder);
+            if (view == null || !view.hasPermission(View.READ)) {
+                this.etag = null;
+                this.initialData = null;
+                return;
+            }
+            Set<Job<?, ?>> jobs = ItemAggregator.collectJobs(view);
+            // Taken before the analysis so a change made meanwhile is fetched on the next refresh
+            this.etag = AlfredApiEndpoint.viewEtag(jobs);
+            this.initialData = analyze(viewName, folder, jobs);
+        }
+
+        // JSON safe to embed in a script element, or null to let the browser fetch it
+        private static String analyze(String viewName, String folder, Set<Job<?, ?>> jobs) {
+            try {
+                RequestCoalescer.Response response = AlfredApiEndpoint.viewAnalysis(viewName, folder, jobs);
+                if (response.getStatus() != 200) {
+                    return null;
+                }
+                return response.getBody().replace("</", "<\\/");
+            } catch (RequestCoalescer.Saturated e) {
+                return null;
+            } catch (IOException e) {
+                LOGGER.log(Level.FINE, "Failed to analyze view " + viewName, e);
+                return null;
+            }
+        }
 
-        LOGGER.info("Loading failure analysis page for view: " + this.currentViewName);
+        public String getViewName() {
+            return viewName;
+        }
+
+        /**
+         * Query of the matching /alfred-api/view request
+         */
+        public String getViewQuery() {
+            return "name=" + Util.rawEncode(viewName) + (folder != null ? "&folder=" + Util.rawEncode(folder) : "");
+        }
 
-        // Return this object, Stapler will automatically render index.jelly
-        return this;
+        /**
+         * Version of the embedded analysis, sent back as If-None-Match on refresh; null if
+         * nothing is embedded
+         */
+        public String getEtag() {
+            return etag;
+        }
+
+        /**
+         * Body of the /alfred-api/view response, or null if it could not be computed now
+         */
+        public String getInitialData() {
+            return initialData;
+        }
     }
 }
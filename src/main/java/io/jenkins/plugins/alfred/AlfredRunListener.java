@@ -4,8 +4,14 @@ import hudson.Extension;
 import hudson.model.Run;
 import hudson.model.TaskListener;
 import hudson.model.listeners.RunListener;
+import hudson.security.ACL;
+import hudson.security.ACLContext;
+import jenkins.util.Timer;
 
 import edu.umd.cs.findbugs.annotations.NonNull;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -16,18 +22,29 @@ import java.util.logging.Logger;
 public class AlfredRunListener extends RunListener<Run<?, ?>> {
     private static final Logger LOGGER = Logger.getLogger(AlfredRunListener.class.getName());
 
+    // Builds whose exact analysis is queued or running, so a reload does not queue it twice
+    private static final Set<String> finishing = ConcurrentHashMap.newKeySet();
+
     @Override
     public void onCompleted(Run<?, ?> run, @NonNull TaskListener listener) {
+        // Categorizations made while the build ran, see LiveAnalysis
+        FailureAnalysisResult live = LiveAnalysis.get().finish(run);
         try {
             // Only analyze if the build has test results
             if (run.getAction(hudson.tasks.test.AbstractTestResultAction.class) != null) {
                 listener.getLogger().println("[Alfred] Analyzing test failures...");
 
-                FailureAnalyzer analyzer = new FailureAnalyzer();
-                FailureAnalysisResult result = analyzer.analyze(run);
+                if (FailureAnalyzer.shouldSample(run)) {
+                    publishEstimate(run, listener, live);
+                    return;
+                }
+
+                FailureAnalysisResult result = analyzeExact(run, listener, live);
+                DurationTracker.get().update(run).forEach(result::addDurationRegression);
 
                 // Attach the analysis result to the build
                 run.addAction(new AlfredBuildAction(run, result));
+                record(run, result);
 
                 if (result.getFailedTests() > 0) {
                     listener.getLogger().println(
@@ -54,12 +71,95 @@ public class AlfredRunListener extends RunListener<Run<?, ?>> {
                                 topCategory.getDisplayName(), maxCount)
                         );
                     }
+
+                    if (result.isDifferential()) {
+                        listener.getLogger().println(
+                            String.format("[Alfred] %d new, %d still failing, %d fixed (%d categorizations reused)",
+                                result.getNewFailures().size(), result.getStillFailing().size(),
+                                result.getFixedTests().size(), result.getReusedCategorizations())
+                        );
+                    }
+                    if (result.getLiveCategorizations() > 0) {
+                        listener.getLogger().println(
+                            String.format("[Alfred] %d failures categorized while the build was running",
+                                result.getLiveCategorizations())
+                        );
+                    }
                 } else {
                     listener.getLogger().println("[Alfred] All tests passed!");
                 }
+
+                if (!result.getDurationRegressions().isEmpty()) {
+                    listener.getLogger().println(
+                        String.format("[Alfred] %d tests got slower", result.getDurationRegressions().size()));
+                }
             }
         } catch (Exception e) {
             LOGGER.log(Level.WARNING, "Failed to analyze build with Alfred", e);
+        } finally {
+            // Job status changed even without test results, so dashboards showing the job are stale
+            DashboardFragmentCache.get().invalidate(run.getParent());
         }
     }
+
+    private static FailureAnalysisResult analyzeExact(Run<?, ?> run, TaskListener listener, FailureAnalysisResult live) {
+        // Prefer the agent that holds the reports; the controller analyzes whatever it cannot
+        FailureAnalysisResult result = AgentAnalysisCallable.analyze(run, listener);
+        if (result == null) {
+            result = new FailureAnalyzer().analyzeIncremental(run, live);
+        }
+        if (FailureClassifier.ENABLED) {
+            FailureClassifier.get().apply(result);
+        }
+        return result;
+    }
+
+    private static void record(Run<?, ?> run, FailureAnalysisResult result) {
+        JobAnalysisCache.get().put(run, result);
+        FailureCorrelator.get().record(run, result);
+        FailureSearchIndex.get().record(run, result);
+    }
+
+    /**
+     * Attach an estimate from a sample right away and replace it with the exact analysis
+     * in the background. Incidents and the search index only see the exact analysis.
+     */
+    private static void publishEstimate(Run<?, ?> run, TaskListener listener, FailureAnalysisResult live) {
+        FailureAnalysisResult estimate = new FailureAnalyzer().estimate(run);
+        DurationTracker.get().update(run).forEach(estimate::addDurationRegression);
+
+        AlfredBuildAction action = new AlfredBuildAction(run, estimate);
+        run.addAction(action);
+        JobAnalysisCache.get().put(run, estimate);
+        listener.getLogger().println(
+            String.format("[Alfred] %d failed tests: published an estimate from %d samples, exact analysis continues in the background",
+                estimate.getFailedTests(), estimate.getSampledFailures()));
+
+        finishExact(run, action, live);
+    }
+
+    /**
+     * Replace an estimate with the exact analysis on the Timer pool. Also called for estimates
+     * loaded from disk, whose analysis was cut short by a restart.
+     */
+    static void finishExact(Run<?, ?> run, AlfredBuildAction action, FailureAnalysisResult live) {
+        String id = run.getExternalizableId();
+        if (!finishing.add(id)) {
+            return;
+        }
+        Timer.get().submit(() -> {
+            try (ACLContext ignored = ACL.as2(ACL.SYSTEM2)) {
+                List<DurationRegression> regressions = action.getAnalysisResult().getDurationRegressions();
+                FailureAnalysisResult result = analyzeExact(run, TaskListener.NULL, live);
+                regressions.forEach(result::addDurationRegression);
+                action.setAnalysisResult(result);
+                record(run, result);
+                DashboardFragmentCache.get().invalidate(run.getParent());
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Failed to finish Alfred analysis of " + run + ", keeping the estimate", e);
+            } finally {
+                finishing.remove(id);
+            }
+        });
+    }
 }
@@ -2,7 +2,6 @@ package io.jenkins.plugins.alfred;
 
 import hudson.Extension;
 import hudson.model.Job;
-import hudson.model.Run;
 import hudson.views.ListViewColumn;
 import hudson.views.ListViewColumnDescriptor;
 import org.kohsuke.stapler.DataBoundConstructor;
@@ -20,19 +19,9 @@ public class AlfredViewColumn extends ListViewColumn {
      * Get the failure analysis for the last completed build of a job
      */
     public FailureAnalysisResult getAnalysis(Job<?, ?> job) {
-        Run<?, ?> lastBuild = job.getLastCompletedBuild();
-        if (lastBuild == null) {
-            return new FailureAnalysisResult();
-        }
-
-        AlfredBuildAction action = lastBuild.getAction(AlfredBuildAction.class);
-        if (action != null) {
-            return action.getAnalysisResult();
-        }
-
-        // Generate analysis on-the-fly if not cached
-        FailureAnalyzer analyzer = new FailureAnalyzer();
-        return analyzer.analyze(lastBuild);
+        // Shared with the view and folder aggregations, so each job is analyzed once
+        FailureAnalysisResult result = JobAnalysisCache.get().getAnalysis(job);
+        return result != null ? result : new FailureAnalysisResult();
     }
 
     /**
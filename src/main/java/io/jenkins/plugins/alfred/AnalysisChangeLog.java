@@ -0,0 +1,298 @@
+package io.jenkins.plugins.alfred;
+
+import hudson.Extension;
+import hudson.ExtensionList;
+import jenkins.util.SystemProperties;
+import net.sf.json.JSONObject;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sequenced log of per-job analysis summaries, fed by {@link JobAnalysisCache}, so other
+ * controllers can follow this one with "changes since cursor" requests instead of
+ * re-fetching every view. See {@link FederatedAggregate}.
+ *
+ * The log is compacted by key: a job has only its latest change, so the log never holds
+ * more entries than there are jobs, plus tombstones for deleted jobs. Tombstones are
+ * dropped after {@link #TOMBSTONE_HOURS}; a cursor older than a dropped tombstone, or from
+ * before a restart, gets a full resync flagged with {@code reset}.
+ *
+ * Cursors are "epoch:sequence" where the epoch is this controller's start time.
+ */
+@Extension
+public class AnalysisChangeLog {
+
+    private static final long TOMBSTONE_HOURS = SystemProperties.getLong(
+        AnalysisChangeLog.class.getName() + ".tombstoneHours", 24L);
+
+    private final long epoch = System.currentTimeMillis();
+    private long lastSequence = 0;
+    private final Map<String, Change> latestByJob = new HashMap<>();
+    private final NavigableMap<Long, Change> bySequence = new TreeMap<>();
+    // Highest sequence of a dropped tombstone; cursors before it may have missed a deletion
+    private long prunedThrough = 0;
+
+    public static AnalysisChangeLog get() {
+        return ExtensionList.lookupSingleton(AnalysisChangeLog.class);
+    }
+
+    /**
+     * Record the analysis now current for a job; repeated identical summaries are ignored
+     */
+    synchronized void record(String job, int build, FailureAnalysisResult result) {
+        int[] categories = new int[FailureCategory.count()];
+        for (int i = 0; i < categories.length; i++) {
+            categories[i] = result.getFailureCountForCategory(FailureCategory.byOrdinal(i));
+        }
+        Change previous = latestByJob.get(job);
+        if (previous != null && !previous.deleted && previous.build == build
+                && previous.totalTests == result.getTotalTests() && previous.failedTests == result.getFailedTests()
+                && Arrays.equals(previous.categories, categories)) {
+            return;
+        }
+        append(new Change(++lastSequence, job, build, false, System.currentTimeMillis(),
+            result.getTotalTests(), result.getFailedTests(), categories));
+    }
+
+    /**
+     * Record that a job, or every job below a folder, is gone
+     */
+    synchronized void remove(String fullName) {
+        String prefix = fullName + "/";
+        List<String> removed = new ArrayList<>();
+        for (Change change : latestByJob.values()) {
+            if (!change.deleted && (change.job.equals(fullName) || change.job.startsWith(prefix))) {
+                removed.add(change.job);
+            }
+        }
+        long now = System.currentTimeMillis();
+        for (String job : removed) {
+            append(new Change(++lastSequence, job, 0, true, now, 0, 0, new int[FailureCategory.count()]));
+        }
+        pruneTombstones(now);
+    }
+
+    private void append(Change change) {
+        Change previous = latestByJob.put(change.job, change);
+        if (previous != null) {
+            bySequence.remove(previous.sequence);
+        }
+        bySequence.put(change.sequence, change);
+    }
+
+    private void pruneTombstones(long now) {
+        long cutoff = now - TimeUnit.HOURS.toMillis(TOMBSTONE_HOURS);
+        Iterator<Change> it = bySequence.values().iterator();
+        while (it.hasNext()) {
+            Change change = it.next();
+            if (change.deleted && change.timestamp < cutoff) {
+                it.remove();
+                latestByJob.remove(change.job);
+                prunedThrough = Math.max(prunedThrough, change.sequence);
+            }
+        }
+    }
+
+    /**
+     * Changes after a cursor, oldest first
+     *
+     * @param cursor cursor from a previous page, or null to start from scratch
+     */
+    synchronized Page since(String cursor, int limit) {
+        pruneTombstones(System.currentTimeMillis());
+        long after = sequenceOf(cursor);
+        boolean reset = after < 0 || after < prunedThrough;
+        if (reset) {
+            after = 0;
+        }
+
+        List<Change> changes = new ArrayList<>(Math.min(limit, bySequence.size()));
+        long last = after;
+        for (Change change : bySequence.tailMap(after, false).values()) {
+            if (changes.size() >= limit) {
+                break;
+            }
+            last = change.sequence;
+            // A resyncing client starts empty, so it needs no tombstones
+            if (!(reset && change.deleted)) {
+                changes.add(change);
+            }
+        }
+        boolean more = bySequence.higherKey(last) != null;
+        return new Page(epoch + ":" + last, reset, more, changes);
+    }
+
+    /**
+     * Latest summary of every job that still exists
+     */
+    synchronized List<Change> current() {
+        List<Change> current = new ArrayList<>(latestByJob.size());
+        for (Change change : latestByJob.values()) {
+            if (!change.deleted) {
+                current.add(change);
+            }
+        }
+        return current;
+    }
+
+    // Sequence in this epoch, or -1 if the cursor is missing, malformed or from another epoch
+    private long sequenceOf(String cursor) {
+        if (cursor == null || cursor.isEmpty()) {
+            return -1;
+        }
+        int colon = cursor.indexOf(':');
+        try {
+            if (colon < 0 || Long.parseLong(cursor.substring(0, colon)) != epoch) {
+                return -1;
+            }
+            long sequence = Long.parseLong(cursor.substring(colon + 1));
+            return sequence >= 0 && sequence <= lastSequence ? sequence : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * One page of changes
+     */
+    public static final class Page {
+        private final String cursor;
+        private final boolean reset;
+        private final boolean more;
+        private final List<Change> changes;
+
+        Page(String cursor, boolean reset, boolean more, List<Change> changes) {
+            this.cursor = cursor;
+            this.reset = reset;
+            this.more = more;
+            this.changes = changes;
+        }
+
+        /**
+         * Cursor to pass for the next page
+         */
+        public String getCursor() {
+            return cursor;
+        }
+
+        /**
+         * Whether the client must drop what it has: this page starts a full resync
+         */
+        public boolean isReset() {
+            return reset;
+        }
+
+        public boolean hasMore() {
+            return more;
+        }
+
+        public List<Change> getChanges() {
+            return changes;
+        }
+    }
+
+    /**
+     * Analysis summary of a job's latest completed build, or a tombstone for a deleted job
+     */
+    public static final class Change {
+        private final long sequence;
+        private final String job;
+        private final int build;
+        private final boolean deleted;
+        private final long timestamp;
+        private final int totalTests;
+        private final int failedTests;
+        // Indexed by FailureCategory ordinal
+        private final int[] categories;
+
+        Change(long sequence, String job, int build, boolean deleted, long timestamp,
+                int totalTests, int failedTests, int[] categories) {
+            this.sequence = sequence;
+            this.job = job;
+            this.build = build;
+            this.deleted = deleted;
+            this.timestamp = timestamp;
+            this.totalTests = totalTests;
+            this.failedTests = failedTests;
+            this.categories = categories;
+        }
+
+        public long getSequence() {
+            return sequence;
+        }
+
+        public String getJob() {
+            return job;
+        }
+
+        public int getBuild() {
+            return build;
+        }
+
+        public boolean isDeleted() {
+            return deleted;
+        }
+
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        public int getTotalTests() {
+            return totalTests;
+        }
+
+        public int getFailedTests() {
+            return failedTests;
+        }
+
+        public int getCount(FailureCategory category) {
+            return categories[category.ordinal()];
+        }
+
+        JSONObject toJson() {
+            JSONObject json = new JSONObject();
+            json.put("seq", sequence);
+            json.put("job", job);
+            if (deleted) {
+                json.put("deleted", true);
+                return json;
+            }
+            json.put("build", build);
+            json.put("timestamp", timestamp);
+            json.put("total", totalTests);
+            json.put("failed", failedTests);
+            JSONObject counts = new JSONObject();
+            for (int i = 0; i < categories.length; i++) {
+                if (categories[i] > 0) {
+                    counts.put(FailureCategory.byOrdinal(i).name(), categories[i]);
+                }
+            }
+            json.put("categories", counts);
+            return json;
+        }
+
+        /**
+         * Read a change sent by a peer; categories this controller does not know count as UNKNOWN
+         */
+        static Change fromJson(JSONObject json) {
+            int[] categories = new int[FailureCategory.count()];
+            JSONObject counts = json.optJSONObject("categories");
+            if (counts != null) {
+                for (Object key : counts.keySet()) {
+                    FailureCategory category = FailureCategory.UNKNOWN;
+                    for (FailureCategory candidate : FailureCategory.values()) {
+                        if (candidate.name().equals(key)) {
+                            category = candidate;
+                            break;
+                        }
+                    }
+                    categories[category.ordinal()] += counts.optInt((String) key);
+                }
+            }
+            return new Change(json.optLong("seq"), json.getString("job"), json.optInt("build"),
+                json.optBoolean("deleted"), json.optLong("timestamp"),
+                json.optInt("total"), json.optInt("failed"), categories);
+        }
+    }
+}
@@ -0,0 +1,325 @@
+package io.jenkins.plugins.alfred;
+
+import hudson.Extension;
+import hudson.ExtensionList;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.Job;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.security.ACL;
+import hudson.security.ACLContext;
+import jenkins.model.Jenkins;
+import jenkins.util.SystemProperties;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Rolls stored analyses of old builds down to what dashboards and trends still use.
+ *
+ * Beyond the newest {@code keepFullBuilds} builds of each job, every failure keeps its
+ * test id, category, age, fingerprint and the first line of its message; stack traces
+ * and the rest of the message are dropped. Counts stay exact because no failure entry
+ * is removed.
+ *
+ * Runs as a background task that loads at most {@code maxBuildsPerRun} builds per pass
+ * and pauses after each one, remembering per job how far it got across restarts. Builds
+ * without a stored analysis file, or whose file is already compacted, are skipped without
+ * loading them.
+ */
+@Extension
+public class AnalysisCompactor extends AsyncPeriodicWork {
+    private static final Logger LOGGER = Logger.getLogger(AnalysisCompactor.class.getName());
+
+    private static final String PREFIX = AnalysisCompactor.class.getName();
+    static final int KEEP_FULL_BUILDS = SystemProperties.getInteger(PREFIX + ".keepFullBuilds", 20);
+    private static final int MAX_BUILDS_PER_RUN = SystemProperties.getInteger(PREFIX + ".maxBuildsPerRun", 200);
+    private static final long PAUSE_MILLIS = SystemProperties.getLong(PREFIX + ".pauseMillis", 50L);
+    private static final long RECURRENCE_MINUTES = SystemProperties.getLong(PREFIX + ".recurrenceMinutes", 30L);
+    private static final int MAX_ERROR_CHARS = 200;
+    // compact() skipped the build without loading it
+    private static final long SKIPPED = -2;
+
+    // Highest build number per job below which every build has been compacted or skipped
+    private final Map<String, Integer> compactedThrough = new ConcurrentHashMap<>();
+    private boolean watermarksLoaded;
+
+    private final AtomicLong buildsCompacted = new AtomicLong();
+    private final AtomicLong bytesReclaimed = new AtomicLong();
+    private final AtomicLong passes = new AtomicLong();
+    private volatile long lastPassMillis;
+    private volatile long lastPassBytes;
+    private volatile int lastPassBuilds;
+
+    public AnalysisCompactor() {
+        super("Alfred analysis compaction");
+    }
+
+    public static AnalysisCompactor get() {
+        return ExtensionList.lookupSingleton(AnalysisCompactor.class);
+    }
+
+    @Override
+    public long getRecurrencePeriod() {
+        return TimeUnit.MINUTES.toMillis(RECURRENCE_MINUTES);
+    }
+
+    @Override
+    protected void execute(TaskListener listener) throws InterruptedException {
+        if (KEEP_FULL_BUILDS <= 0) {
+            return;
+        }
+        long started = System.currentTimeMillis();
+        int builds = 0;
+        int loads = 0;
+        long bytes = 0;
+        if (!watermarksLoaded) {
+            loadWatermarks();
+            watermarksLoaded = true;
+        }
+
+        try (ACLContext ignored = ACL.as2(ACL.SYSTEM2)) {
+            TreeSet<String> jobNames = new TreeSet<>();
+            for (Job<?, ?> job : Jenkins.get().getAllItems(Job.class)) {
+                jobNames.add(job.getFullName());
+            }
+            compactedThrough.keySet().retainAll(jobNames);
+
+            for (String name : jobNames) {
+                if (loads >= MAX_BUILDS_PER_RUN) {
+                    break;
+                }
+                Job<?, ?> job = Jenkins.get().getItemByFullName(name, Job.class);
+                if (job == null) {
+                    continue;
+                }
+
+                List<Integer> candidates = candidates(job);
+                for (int number : candidates) {
+                    if (loads >= MAX_BUILDS_PER_RUN) {
+                        break;
+                    }
+                    long saved = compact(job, number);
+                    if (saved != SKIPPED) {
+                        // Loading a build costs about as much as compacting it
+                        loads++;
+                        Thread.sleep(PAUSE_MILLIS);
+                    }
+                    if (saved >= 0) {
+                        builds++;
+                        bytes += saved;
+                    }
+                    compactedThrough.merge(name, number, Math::max);
+                }
+            }
+        } finally {
+            saveWatermarks();
+        }
+
+        buildsCompacted.addAndGet(builds);
+        bytesReclaimed.addAndGet(bytes);
+        passes.incrementAndGet();
+        lastPassBuilds = builds;
+        lastPassBytes = bytes;
+        lastPassMillis = System.currentTimeMillis() - started;
+        if (builds > 0) {
+            LOGGER.info(String.format("Compacted %d Alfred analyses, reclaimed %d bytes in %d ms",
+                builds, bytes, lastPassMillis));
+        }
+    }
+
+    /**
+     * Build numbers outside the retention window not yet visited, oldest first.
+     * Works on build directories so builds are only loaded when they need compaction.
+     */
+    private List<Integer> candidates(Job<?, ?> job) {
+        String[] dirs = job.getBuildDir().list();
+        List<Integer> numbers = new ArrayList<>();
+        if (dirs == null) {
+            return numbers;
+        }
+        TreeSet<Integer> all = new TreeSet<>();
+        for (String dir : dirs) {
+            try {
+                all.add(Integer.parseInt(dir));
+            } catch (NumberFormatException e) {
+                // Not a build directory, e.g. a legacy id symlink
+            }
+        }
+
+        int floor = compactedThrough.getOrDefault(job.getFullName(), 0);
+        int kept = 0;
+        for (int number : all.descendingSet()) {
+            if (kept < KEEP_FULL_BUILDS) {
+                kept++;
+                continue;
+            }
+            if (number <= floor) {
+                break;
+            }
+            numbers.add(0, number);
+        }
+        return numbers;
+    }
+
+    File getWatermarkFile() {
+        return new File(Jenkins.get().getRootDir(), "alfred/compaction.properties");
+    }
+
+    private void loadWatermarks() {
+        File file = getWatermarkFile();
+        if (!file.isFile()) {
+            return;
+        }
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to read " + file + ", compacting from the oldest builds", e);
+            return;
+        }
+        for (String name : properties.stringPropertyNames()) {
+            try {
+                compactedThrough.merge(name, Integer.parseInt(properties.getProperty(name).trim()), Math::max);
+            } catch (NumberFormatException e) {
+                LOGGER.fine("Ignoring compaction watermark of " + name + " in " + file);
+            }
+        }
+    }
+
+    private void saveWatermarks() {
+        Properties properties = new Properties();
+        compactedThrough.forEach((name, number) -> properties.setProperty(name, String.valueOf(number)));
+        File file = getWatermarkFile();
+        File tmp = new File(file.getPath() + ".tmp");
+        try {
+            Files.createDirectories(file.getParentFile().toPath());
+            try (Writer writer = Files.newBufferedWriter(tmp.toPath(), StandardCharsets.UTF_8)) {
+                properties.store(writer, "Alfred compaction: highest build number visited per job");
+            }
+            Files.move(tmp.toPath(), file.toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to write " + file, e);
+        }
+    }
+
+    /**
+     * Compact one build's stored analysis
+     *
+     * @return bytes reclaimed, -1 if the build was loaded but there was nothing to compact,
+     *         or {@link #SKIPPED} if it was not loaded
+     */
+    private long compact(Job<?, ?> job, int number) {
+        // Only builds with an uncompacted analysis file are worth loading; analyses still
+        // kept in build.xml by old versions are left as they are
+        File file = new File(new File(job.getBuildDir(), String.valueOf(number)), AlfredBuildAction.FILE_NAME);
+        int flags = FailureAnalysisCodec.peekFlags(file);
+        if (flags < 0 || (flags & FailureAnalysisCodec.FLAG_COMPACTED) != 0) {
+            return SKIPPED;
+        }
+
+        Run<?, ?> run = job.getBuildByNumber(number);
+        AlfredBuildAction action = run != null ? run.getAction(AlfredBuildAction.class) : null;
+        if (action == null || run.isBuilding()) {
+            return -1;
+        }
+
+        FailureAnalysisResult result = action.readAnalysisResult();
+        if (result == null || result.isCompacted()) {
+            // An unreadable file is kept as it is, so it can still be salvaged
+            return -1;
+        }
+        long before = file.length();
+        action.setAnalysisResult(compact(result));
+        return Math.max(0, before - file.length());
+    }
+
+    /**
+     * Copy of a result without stack traces and with messages cut to their first line
+     */
+    static FailureAnalysisResult compact(FailureAnalysisResult result) {
+        FailureAnalysisResult compacted = new FailureAnalysisResult();
+        compacted.setTotalTests(result.getTotalTests());
+        compacted.setPassedTests(result.getPassedTests());
+        compacted.setFailedTests(result.getFailedTests());
+        compacted.setSkippedTests(result.getSkippedTests());
+        compacted.getFailedApiEndpoints().putAll(result.getFailedApiEndpoints());
+
+        compacted.setDifferential(result.isDifferential());
+        compacted.setReusedCategorizations(result.getReusedCategorizations());
+        result.getNewFailures().forEach(compacted::addNewFailure);
+        result.getStillFailing().forEach(compacted::addStillFailing);
+        result.getFixedTests().forEach(compacted::addFixed);
+        result.getPredictedTests().forEach(compacted::addPredicted);
+        result.getCorrectedTests().forEach(compacted::addCorrected);
+        result.getDurationRegressions().forEach(compacted::addDurationRegression);
+        compacted.setSampledFailures(result.getSampledFailures());
+        result.getEstimates().forEach(compacted::setEstimate);
+
+        for (Map.Entry<FailureCategory, List<FailureAnalysisResult.TestFailureInfo>> entry :
+             result.getFailuresByCategory().entrySet()) {
+            List<FailureAnalysisResult.TestFailureInfo> target = compacted.getFailuresByCategory().get(entry.getKey());
+            for (FailureAnalysisResult.TestFailureInfo failure : entry.getValue()) {
+                FailureAnalysisResult.TestFailureInfo info = new FailureAnalysisResult.TestFailureInfo(
+                    failure.getClassName(), failure.getTestName(), firstLine(failure.getErrorDetails()),
+                    null, failure.getAge());
+                info.setFingerprint(failure.getFingerprint());
+                info.setCulprit(failure.getCulprit());
+                target.add(info);
+            }
+        }
+        compacted.setCompacted(true);
+        return compacted;
+    }
+
+    private static String firstLine(String text) {
+        if (text == null) {
+            return null;
+        }
+        int end = text.indexOf('\n');
+        if (end < 0) {
+            end = text.length();
+        }
+        return text.substring(0, Math.min(end, MAX_ERROR_CHARS));
+    }
+
+    public long getBuildsCompacted() {
+        return buildsCompacted.get();
+    }
+
+    public long getBytesReclaimed() {
+        return bytesReclaimed.get();
+    }
+
+    public long getPasses() {
+        return passes.get();
+    }
+
+    public long getLastPassMillis() {
+        return lastPassMillis;
+    }
+
+    public long getLastPassBytes() {
+        return lastPassBytes;
+    }
+
+    public int getLastPassBuilds() {
+        return lastPassBuilds;
+    }
+}
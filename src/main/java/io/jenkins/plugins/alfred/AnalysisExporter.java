@@ -0,0 +1,260 @@
+package io.jenkins.plugins.alfred;
+
+import hudson.model.ItemGroup;
+import hudson.model.Job;
+import hudson.model.Run;
+import jenkins.model.Jenkins;
+import net.sf.json.JSONObject;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Streams stored analyses as newline-delimited JSON, one record per build or per failure.
+ *
+ * Only analyses already attached as {@link AlfredBuildAction} are read; nothing is
+ * re-analyzed. Jobs are visited in full-name order and builds newest first, and every
+ * record carries a cursor, so an interrupted export resumes after the last record it
+ * received. Results are decoded one build at a time and not cached, so memory does not
+ * grow with the size of the export.
+ */
+public class AnalysisExporter {
+
+    private static final int FLUSH_EVERY = 100;
+
+    private final boolean perFailure;
+    private final boolean includeStacks;
+    private final long since;
+    private final long until;
+    private final int limit;
+
+    /**
+     * @param perFailure emit one record per failure instead of one per build
+     * @param includeStacks include stack traces in failure records
+     * @param since only builds started at or after this time, 0 for no bound
+     * @param until only builds started before this time, 0 for no bound
+     * @param limit maximum number of records, 0 for no limit
+     */
+    public AnalysisExporter(boolean perFailure, boolean includeStacks, long since, long until, int limit) {
+        this.perFailure = perFailure;
+        this.includeStacks = includeStacks;
+        this.since = since;
+        this.until = until;
+        this.limit = limit;
+    }
+
+    /**
+     * Full names of the jobs to export: one job, every job below a folder, or every job
+     * the caller can see. Returns null if the named job or folder does not exist.
+     */
+    public static TreeSet<String> selectJobs(String jobName, String folderName) {
+        TreeSet<String> names = new TreeSet<>();
+        Jenkins jenkins = Jenkins.get();
+        if (jobName != null && !jobName.isEmpty()) {
+            Job<?, ?> job = jenkins.getItemByFullName(jobName, Job.class);
+            if (job == null) {
+                return null;
+            }
+            names.add(job.getFullName());
+        } else if (folderName != null && !folderName.isEmpty()) {
+            ItemGroup<?> group = ItemAggregator.resolveFolder(folderName);
+            if (group == null) {
+                return null;
+            }
+            for (Job<?, ?> job : group.getAllItems(Job.class)) {
+                names.add(job.getFullName());
+            }
+        } else {
+            for (Job<?, ?> job : jenkins.getAllItems(Job.class)) {
+                names.add(job.getFullName());
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Write records for the given jobs, starting after the cursor if one is given
+     *
+     * @return number of records written
+     */
+    public int export(TreeSet<String> jobNames, String cursor, Writer out) throws IOException {
+        Cursor resume = Cursor.decode(cursor);
+        Jenkins jenkins = Jenkins.get();
+        int written = 0;
+
+        Iterable<String> names = resume != null ? jobNames.tailSet(resume.job, true) : jobNames;
+        for (String name : names) {
+            Job<?, ?> job = jenkins.getItemByFullName(name, Job.class);
+            if (job == null) {
+                // Deleted or hidden since the export started
+                continue;
+            }
+            boolean resumingJob = resume != null && resume.job.equals(name);
+
+            for (Run<?, ?> build : job.getBuilds()) {
+                if (resumingJob && build.getNumber() > resume.build) {
+                    continue;
+                }
+                long timestamp = build.getTimeInMillis();
+                if (until > 0 && timestamp >= until) {
+                    continue;
+                }
+                if (since > 0 && timestamp < since) {
+                    // Builds are newest first, so the rest of this job is older still
+                    break;
+                }
+                if (build.isBuilding()) {
+                    continue;
+                }
+
+                boolean resumingBuild = resumingJob && build.getNumber() == resume.build;
+                if (resumingBuild && !perFailure) {
+                    continue;
+                }
+
+                AlfredBuildAction action = build.getAction(AlfredBuildAction.class);
+                if (action == null) {
+                    continue;
+                }
+                FailureAnalysisResult result = action.readAnalysisResult();
+                if (result == null) {
+                    // Unreadable, already logged
+                    continue;
+                }
+
+                if (!perFailure) {
+                    writeRecord(out, buildRecord(name, build, result, new Cursor(name, build.getNumber(), -1)));
+                    if (++written == limit) {
+                        break;
+                    }
+                    if (written % FLUSH_EVERY == 0) {
+                        out.flush();
+                    }
+                    continue;
+                }
+
+                int index = 0;
+                for (Map.Entry<FailureCategory, List<FailureAnalysisResult.TestFailureInfo>> entry :
+                     result.getFailuresByCategory().entrySet()) {
+                    for (FailureAnalysisResult.TestFailureInfo failure : entry.getValue()) {
+                        if (!resumingBuild || index > resume.index) {
+                            Cursor next = new Cursor(name, build.getNumber(), index);
+                            writeRecord(out, failureRecord(name, build, entry.getKey(), failure, next));
+                            if (++written == limit) {
+                                out.flush();
+                                return written;
+                            }
+                            if (written % FLUSH_EVERY == 0) {
+                                out.flush();
+                            }
+                        }
+                        index++;
+                    }
+                }
+            }
+            if (limit > 0 && written >= limit) {
+                break;
+            }
+        }
+        out.flush();
+        return written;
+    }
+
+    private JSONObject buildRecord(String job, Run<?, ?> build, FailureAnalysisResult result, Cursor cursor) {
+        JSONObject json = new JSONObject();
+        json.put("type", "build");
+        json.put("job", job);
+        json.put("build", build.getNumber());
+        json.put("timestamp", build.getTimeInMillis());
+        json.put("result", build.getResult() != null ? build.getResult().toString() : null);
+        json.put("totalTests", result.getTotalTests());
+        json.put("passedTests", result.getPassedTests());
+        json.put("failedTests", result.getFailedTests());
+        json.put("skippedTests", result.getSkippedTests());
+
+        JSONObject categories = new JSONObject();
+        for (FailureCategory category : FailureCategory.values()) {
+            int count = result.getFailureCountForCategory(category);
+            if (count > 0) {
+                categories.put(category.name(), count);
+            }
+        }
+        json.put("categories", categories);
+        json.put("cursor", cursor.encode());
+        return json;
+    }
+
+    private JSONObject failureRecord(String job, Run<?, ?> build, FailureCategory category,
+            FailureAnalysisResult.TestFailureInfo failure, Cursor cursor) {
+        JSONObject json = new JSONObject();
+        json.put("type", "failure");
+        json.put("job", job);
+        json.put("build", build.getNumber());
+        json.put("timestamp", build.getTimeInMillis());
+        json.put("className", failure.getClassName());
+        json.put("testName", failure.getTestName());
+        json.put("category", category.name());
+        json.put("age", failure.getAge());
+        json.put("fingerprint", failure.getFingerprint());
+        json.put("error", failure.getErrorDetails());
+        if (includeStacks) {
+            json.put("stackTrace", failure.getStackTrace());
+        }
+        json.put("cursor", cursor.encode());
+        return json;
+    }
+
+    private static void writeRecord(Writer out, JSONObject record) throws IOException {
+        out.write(record.toString());
+        out.write('\n');
+    }
+
+    /**
+     * Position of the last exported record: job, build and failure index (-1 for build records)
+     */
+    static final class Cursor {
+        final String job;
+        final int build;
+        final int index;
+
+        Cursor(String job, int build, int index) {
+            this.job = job;
+            this.build = build;
+            this.index = index;
+        }
+
+        String encode() {
+            String raw = build + ":" + index + ":" + job;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+        }
+
+        /**
+         * Parse a cursor, or return null for an empty one
+         *
+         * @throws IllegalArgumentException if the cursor is malformed
+         */
+        static Cursor decode(String value) {
+            if (value == null || value.isEmpty()) {
+                return null;
+            }
+            String raw = new String(Base64.getUrlDecoder().decode(value), StandardCharsets.UTF_8);
+            int first = raw.indexOf(':');
+            int second = first < 0 ? -1 : raw.indexOf(':', first + 1);
+            if (second < 0) {
+                throw new IllegalArgumentException("Malformed export cursor");
+            }
+            try {
+                return new Cursor(raw.substring(second + 1),
+                    Integer.parseInt(raw.substring(0, first)),
+                    Integer.parseInt(raw.substring(first + 1, second)));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Malformed export cursor", e);
+            }
+        }
+    }
+}
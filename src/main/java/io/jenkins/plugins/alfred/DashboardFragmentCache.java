@@ -0,0 +1,274 @@
+package io.jenkins.plugins.alfred;
+
+import hudson.Extension;
+import hudson.ExtensionList;
+import hudson.Util;
+import hudson.model.Item;
+import hudson.model.Job;
+import hudson.model.Run;
+import hudson.model.TopLevelItem;
+import hudson.model.View;
+import hudson.model.listeners.ItemListener;
+import hudson.model.listeners.RunListener;
+import jenkins.model.Jenkins;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches the server-rendered dashboard fragment per view and user.
+ * A build completion or deletion drops only the snapshots of views that contain its job;
+ * an item change bumps the generation and drops all snapshots. Snapshots also expire
+ * after a short age so view membership edits show up.
+ */
+@Extension
+public class DashboardFragmentCache {
+
+    private static final long MAX_AGE_MILLIS = TimeUnit.SECONDS.toMillis(60);
+
+    private final Map<String, Snapshot> snapshots = new ConcurrentHashMap<>();
+    private final AtomicLong generation = new AtomicLong();
+    // Bumped by every invalidation, so a render that raced with one is not kept
+    private final AtomicLong invalidations = new AtomicLong();
+
+    public static DashboardFragmentCache get() {
+        return ExtensionList.lookupSingleton(DashboardFragmentCache.class);
+    }
+
+    /**
+     * Get the fragment for a view, rendering it if there is no fresh snapshot.
+     * Items in a view depend on the caller's permissions, so snapshots are per user.
+     */
+    public Snapshot getSnapshot(View view) {
+        String key = Jenkins.getAuthentication2().getName() + "@" + view.getUrl();
+        long currentGeneration = generation.get();
+        long now = System.currentTimeMillis();
+
+        Snapshot snapshot = snapshots.get(key);
+        if (snapshot != null && snapshot.generation == currentGeneration
+                && now - snapshot.renderedAt < MAX_AGE_MILLIS) {
+            return snapshot;
+        }
+
+        long currentInvalidations = invalidations.get();
+        Set<String> jobs = new HashSet<>();
+        for (TopLevelItem item : view.getItems()) {
+            if (item instanceof Job) {
+                jobs.add(item.getFullName());
+            }
+        }
+        snapshot = new Snapshot(currentGeneration, now, render(view, now), jobs);
+        if (invalidations.get() == currentInvalidations) {
+            snapshots.put(key, snapshot);
+        }
+        return snapshot;
+    }
+
+    public void invalidate() {
+        invalidations.incrementAndGet();
+        generation.incrementAndGet();
+        snapshots.clear();
+    }
+
+    /**
+     * Drop the snapshots of views that contain a job, e.g. after one of its builds completed
+     */
+    public void invalidate(Job<?, ?> job) {
+        String fullName = job.getFullName();
+        invalidations.incrementAndGet();
+        snapshots.values().removeIf(snapshot -> snapshot.jobs.contains(fullName));
+    }
+
+    /**
+     * Render the dashboard body: stats grid, failure analysis and embedded job rows
+     */
+    static String render(View view, long renderedAt) {
+        AlfredDashboardProperty property = view.getProperties().get(AlfredDashboardProperty.class);
+        AlfredDashboardProperty.DashboardStats stats = property != null
+            ? property.getStats(view)
+            : new AlfredDashboardProperty.DashboardStats();
+        boolean showFailureAnalysis = property != null && property.isShowFailureAnalysis();
+
+        StringBuilder html = new StringBuilder(4096);
+        html.append("<div class=\"alfred-fragment\" data-rendered-at=\"").append(renderedAt).append("\">");
+
+        // Stats Grid
+        html.append("<div id=\"alfred-stats-grid\" style=\"display: grid; grid-template-columns: repeat(auto-fit, minmax(170px, 1fr)); gap: 12px;\">");
+        appendStat(html, "alfred-stat-total", "#006fe6", stats.totalJobs, "Total Jobs");
+        appendStat(html, "alfred-stat-success", "#5cb85c", stats.successfulJobs, "Successful");
+        appendStat(html, "alfred-stat-failed", "#d9534f", stats.failedJobs, "Failed");
+        appendStat(html, "alfred-stat-unstable", "#f0ad4e", stats.unstableJobs, "Unstable");
+        html.append("</div>");
+
+        // Failure Analysis Section (only shown if enabled and there are failed/unstable jobs)
+        if (showFailureAnalysis && (stats.failedJobs > 0 || stats.unstableJobs > 0)) {
+            appendFailureAnalysis(html, stats);
+        }
+
+        // No Failures Message
+        if (stats.failedJobs == 0 && stats.unstableJobs == 0 && stats.totalJobs > 0) {
+            html.append("<div style=\"background: white; border: 1px solid #5cb85c; color: #5cb85c; padding: 12px; border-radius: 3px; text-align: center; font-size: 12px; font-weight: 600; margin-top: 16px;\">")
+                .append("&#x2705; All jobs are passing - No failures detected!</div>");
+        }
+
+        // Job rows for "Copy Results", so the client does not fetch every job
+        JSONArray jobs = new JSONArray();
+        for (AlfredDashboardProperty.JobSummary job : stats.getJobs()) {
+            JSONObject row = new JSONObject();
+            row.put("name", job.getName());
+            row.put("url", job.getUrl());
+            row.put("status", job.getStatus());
+            row.put("buildNumber", job.getBuildNumber());
+            row.put("buildUrl", job.getBuildUrl());
+            row.put("buildTimestamp", job.getTimestamp());
+            if (job.getTotalTests() >= 0) {
+                row.put("totalTests", job.getTotalTests());
+                row.put("failedTests", job.getFailedTests());
+                row.put("skippedTests", job.getSkippedTests());
+            }
+            jobs.add(row);
+        }
+        html.append("<script type=\"application/json\" id=\"alfred-jobs-data\">")
+            .append(jobs.toString().replace("</", "<\\/"))
+            .append("</script>");
+
+        html.append("</div>");
+        return html.toString();
+    }
+
+    private static void appendStat(StringBuilder html, String id, String color, int value, String label) {
+        html.append("<div style=\"background: white; border-radius: 3px; padding: 14px; text-align: center;\">")
+            .append("<div id=\"").append(id).append("\" class=\"alfred-stat-value\" style=\"font-size: 36px; font-weight: 700; font-family: Consolas, monospace; margin-bottom: 6px; line-height: 1; color: ")
+            .append(color).append(";\">").append(value).append("</div>")
+            .append("<div style=\"font-size: 11px; color: #777; text-transform: uppercase; letter-spacing: 0.5px; font-weight: 600;\">")
+            .append(label).append("</div></div>");
+    }
+
+    private static void appendFailureAnalysis(StringBuilder html, AlfredDashboardProperty.DashboardStats stats) {
+        html.append("<div id=\"alfred-failure-analysis\" style=\"margin-top: 16px; padding-top: 16px; border-top: 1px solid #d9d9d9;\">")
+            .append("<div id=\"alfred-analysis-header\" data-alfred-action=\"toggle-analysis\" style=\"display: flex; justify-content: space-between; align-items: center; cursor: pointer; padding: 8px 0;\">")
+            .append("<div style=\"font-size: 13px; font-weight: 600; color: #333; display: flex; align-items: center; gap: 8px;\">")
+            .append("<span id=\"alfred-analysis-icon\" style=\"transition: transform 200ms ease; color: #006fe6; font-size: 10px; font-weight: bold;\">&#x25B6;</span>")
+            .append("<span>Failure Analysis</span></div>")
+            .append("<button id=\"alfred-analyze-btn\" data-alfred-action=\"analyze\" style=\"background: #5cb85c; color: white; border: none; outline: none; padding: 4px 10px; border-radius: 3px; font-size: 11px; cursor: pointer;\">Analyze Failures</button>")
+            .append("</div>")
+            .append("<div id=\"alfred-analysis-content\" style=\"max-height: 0; overflow: hidden; transition: max-height 300ms ease;\"><div style=\"margin-top: 12px;\">");
+
+        if (stats.hasFailures()) {
+            html.append("<div style=\"padding: 12px; background: linear-gradient(135deg, #fff5f5 0%, #ffe5e5 100%); border: 1px solid #ffcccc; border-radius: 3px; margin-bottom: 12px;\">")
+                .append("<div style=\"font-size: 10px; color: #666; margin-bottom: 3px; text-transform: uppercase; letter-spacing: 0.5px;\">Total Test Failures</div>")
+                .append("<div style=\"font-size: 24px; font-weight: 700; color: #d9534f; font-family: Consolas, monospace;\">")
+                .append(stats.getTotalFailures()).append("</div></div>");
+
+            if (stats.getTopCategoryCount() > 0) {
+                html.append("<div style=\"padding: 12px; background: white; border: 1px solid #d9d9d9; border-left: 3px solid #d9534f; border-radius: 3px; margin-bottom: 10px;\">")
+                    .append("<div style=\"display: flex; justify-content: space-between; align-items: center;\">")
+                    .append("<div style=\"font-size: 12px; font-weight: 600; color: #333;\">Top Failure Category</div>")
+                    .append("<div style=\"font-size: 18px; font-weight: 700; color: #d9534f; font-family: Consolas, monospace;\">")
+                    .append(stats.getTopCategoryCount()).append("</div></div>")
+                    .append("<div style=\"font-size: 10px; color: #777; margin-top: 4px;\">")
+                    .append(Util.escape(stats.getTopCategory().getDisplayName())).append("</div></div>");
+            }
+
+            Map<FailureCategory, Integer> categories = stats.getCategoryCount();
+            if (!categories.isEmpty()) {
+                html.append("<div style=\"margin-top: 12px;\">")
+                    .append("<div style=\"font-size: 12px; font-weight: 600; color: #333; margin-bottom: 8px; padding-bottom: 8px; border-bottom: 1px solid #e9e9e9;\">Failure Categories</div>")
+                    .append("<div style=\"display: grid; grid-template-columns: repeat(auto-fit, minmax(200px, 1fr)); gap: 10px;\">");
+                for (Map.Entry<FailureCategory, Integer> entry : categories.entrySet()) {
+                    html.append("<div style=\"background: white; border: 1px solid #d9d9d9; border-radius: 3px; padding: 12px; border-left: 3px solid #d9534f;\">")
+                        .append("<div style=\"font-size: 11px; font-weight: 600; color: #555; margin-bottom: 6px; text-transform: uppercase; letter-spacing: 0.5px;\">")
+                        .append(Util.escape(entry.getKey().getDisplayName())).append("</div>")
+                        .append("<div style=\"font-size: 28px; font-weight: 700; color: #d9534f; font-family: Consolas, monospace;\">")
+                        .append(entry.getValue()).append("</div></div>");
+                }
+                html.append("</div></div>");
+            }
+        } else {
+            // Placeholder when detailed analysis is not yet available
+            html.append("<div style=\"padding: 20px; background: white; border: 1px solid #e0e0e0; border-radius: 3px; text-align: center;\">")
+                .append("<div style=\"font-size: 13px; color: #666; margin-bottom: 10px;\">&#x26A0;&#xFE0F; Detailed failure analysis not yet available</div>")
+                .append("<div style=\"font-size: 12px; color: #999; line-height: 1.6;\">")
+                .append("<p style=\"margin: 8px 0;\">Click \"Analyze Failures\" to generate a detailed analysis report.</p>")
+                .append("<p style=\"margin: 8px 0;\">Or trigger a new build to automatically analyze test failures.</p></div>")
+                .append("<div style=\"margin-top: 12px; padding: 10px; background: #f9f9f9; border-radius: 3px;\">")
+                .append("<div style=\"font-size: 11px; color: #777; text-transform: uppercase; letter-spacing: 0.5px; margin-bottom: 4px;\">Current Status</div>")
+                .append("<div style=\"font-size: 13px; color: #d9534f; font-weight: 600;\">")
+                .append(stats.failedJobs).append(" Failed &#x2022; ").append(stats.unstableJobs).append(" Unstable</div></div></div>");
+        }
+
+        html.append("</div></div></div>");
+    }
+
+    /**
+     * A rendered fragment and the generation it was rendered for
+     */
+    public static class Snapshot {
+        private final long generation;
+        private final long renderedAt;
+        private final String html;
+        private final String etag;
+        // Full names of the jobs the view showed
+        private final Set<String> jobs;
+
+        Snapshot(long generation, long renderedAt, String html, Set<String> jobs) {
+            this.generation = generation;
+            this.renderedAt = renderedAt;
+            this.html = html;
+            this.jobs = jobs;
+            // Content-derived, so an unchanged re-render still answers 304
+            this.etag = "\"" + Integer.toHexString(html.hashCode()) + "-" + Integer.toHexString(html.length()) + "\"";
+        }
+
+        public String getHtml() {
+            return html;
+        }
+
+        public String getEtag() {
+            return etag;
+        }
+
+        public long getRenderedAt() {
+            return renderedAt;
+        }
+    }
+
+    /**
+     * Invalidate snapshots when builds are deleted; completions are handled by
+     * {@link AlfredRunListener} once the analysis is attached
+     */
+    @Extension
+    public static class RunListenerImpl extends RunListener<Run<?, ?>> {
+        @Override
+        public void onDeleted(Run<?, ?> run) {
+            get().invalidate(run.getParent());
+        }
+    }
+
+    /**
+     * Invalidate snapshots when jobs are created, deleted or moved
+     */
+    @Extension
+    public static class ItemListenerImpl extends ItemListener {
+        @Override
+        public void onCreated(Item item) {
+            get().invalidate();
+        }
+
+        @Override
+        public void onDeleted(Item item) {
+            get().invalidate();
+        }
+
+        @Override
+        public void onLocationChanged(Item item, String oldFullName, String newFullName) {
+            get().invalidate();
+        }
+    }
+}
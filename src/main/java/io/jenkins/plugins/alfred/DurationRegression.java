@@ -0,0 +1,59 @@
+package io.jenkins.plugins.alfred;
+
+import java.io.Serializable;
+
+/**
+ * A test whose recent durations are slower than its history
+ */
+public class DurationRegression implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final String testId;
+    private final float baselineP50;
+    private final float recentP50;
+    private final float baselineP95;
+    private final float recentP95;
+
+    public DurationRegression(String testId, float baselineP50, float recentP50,
+            float baselineP95, float recentP95) {
+        this.testId = testId;
+        this.baselineP50 = baselineP50;
+        this.recentP50 = recentP50;
+        this.baselineP95 = baselineP95;
+        this.recentP95 = recentP95;
+    }
+
+    public String getTestId() {
+        return testId;
+    }
+
+    /**
+     * Median duration in milliseconds before the recent window
+     */
+    public float getBaselineP50() {
+        return baselineP50;
+    }
+
+    public float getRecentP50() {
+        return recentP50;
+    }
+
+    public float getBaselineP95() {
+        return baselineP95;
+    }
+
+    public float getRecentP95() {
+        return recentP95;
+    }
+
+    /**
+     * Relative change of the median, e.g. 0.5 for 50% slower
+     */
+    public float getP50Change() {
+        return baselineP50 > 0 ? recentP50 / baselineP50 - 1 : 0;
+    }
+
+    public float getP95Change() {
+        return baselineP95 > 0 ? recentP95 / baselineP95 - 1 : 0;
+    }
+}
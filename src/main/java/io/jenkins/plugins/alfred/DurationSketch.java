@@ -0,0 +1,119 @@
+package io.jenkins.plugins.alfred;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Mergeable quantile sketch over durations with bounded relative error, in the style of
+ * DDSketch: a duration d falls into bucket ceil(log_gamma(d)) and every bucket is reported
+ * by its midpoint, so any quantile is within about (gamma - 1) / 2 of the true value.
+ *
+ * Buckets are kept as sorted parallel arrays; test durations span a few orders of
+ * magnitude, so a sketch rarely holds more than a few dozen. Once the sketch holds more
+ * than {@link #MAX_COUNT} samples beyond one per bucket all counts are halved, rounding up,
+ * which weights recent history over old and keeps counts small without dropping buckets.
+ */
+final class DurationSketch {
+
+    private static final double GAMMA = 1.04;
+    private static final double LOG_GAMMA = Math.log(GAMMA);
+    static final int MAX_COUNT = 256;
+
+    private int[] indexes = new int[0];
+    private int[] counts = new int[0];
+    private int size;
+    private int total;
+
+    void add(double millis) {
+        int index = indexOf(millis);
+        int pos = Arrays.binarySearch(indexes, 0, size, index);
+        if (pos >= 0) {
+            counts[pos]++;
+        } else {
+            pos = -pos - 1;
+            if (size == indexes.length) {
+                indexes = Arrays.copyOf(indexes, Math.max(4, size * 2));
+                counts = Arrays.copyOf(counts, indexes.length);
+            }
+            System.arraycopy(indexes, pos, indexes, pos + 1, size - pos);
+            System.arraycopy(counts, pos, counts, pos + 1, size - pos);
+            indexes[pos] = index;
+            counts[pos] = 1;
+            size++;
+        }
+        // Halving leaves every bucket at least one, so those do not count towards the limit
+        if (++total > MAX_COUNT + size) {
+            decay();
+        }
+    }
+
+    int getCount() {
+        return total;
+    }
+
+    /**
+     * Approximate quantile in milliseconds, or NaN if the sketch is empty
+     */
+    double quantile(double q) {
+        if (total == 0) {
+            return Double.NaN;
+        }
+        long rank = (long) Math.floor(q * (total - 1));
+        long seen = 0;
+        for (int i = 0; i < size; i++) {
+            seen += counts[i];
+            if (seen > rank) {
+                return valueOf(indexes[i]);
+            }
+        }
+        return valueOf(indexes[size - 1]);
+    }
+
+    private void decay() {
+        total = 0;
+        for (int i = 0; i < size; i++) {
+            // Rounded up, so rare durations such as the slow tail keep a bucket
+            counts[i] = (counts[i] + 1) / 2;
+            total += counts[i];
+        }
+    }
+
+    private static int indexOf(double millis) {
+        if (millis < 1) {
+            return 0;
+        }
+        return Math.max(1, (int) Math.ceil(Math.log(millis) / LOG_GAMMA));
+    }
+
+    private static double valueOf(int index) {
+        return index == 0 ? 0 : 2 * Math.pow(GAMMA, index) / (1 + GAMMA);
+    }
+
+    void write(DataOutputStream out) throws IOException {
+        FailureAnalysisCodec.writeVarInt(out, size);
+        int previous = 0;
+        for (int i = 0; i < size; i++) {
+            FailureAnalysisCodec.writeVarInt(out, indexes[i] - previous);
+            FailureAnalysisCodec.writeVarInt(out, counts[i]);
+            previous = indexes[i];
+        }
+    }
+
+    static DurationSketch read(DataInputStream in) throws IOException {
+        DurationSketch sketch = new DurationSketch();
+        int size = FailureAnalysisCodec.readVarInt(in);
+        sketch.indexes = new int[size];
+        sketch.counts = new int[size];
+        int index = 0;
+        for (int i = 0; i < size; i++) {
+            index += FailureAnalysisCodec.readVarInt(in);
+            sketch.indexes[i] = index;
+            sketch.counts[i] = FailureAnalysisCodec.readVarInt(in);
+            sketch.total += sketch.counts[i];
+        }
+        sketch.size = size;
+        return sketch;
+    }
+}
@@ -0,0 +1,238 @@
+package io.jenkins.plugins.alfred;
+
+import hudson.Extension;
+import hudson.ExtensionList;
+import hudson.model.Job;
+import hudson.model.Run;
+import hudson.tasks.junit.CaseResult;
+import hudson.tasks.junit.SuiteResult;
+import hudson.tasks.junit.TestResult;
+import hudson.tasks.test.AbstractTestResultAction;
+import jenkins.util.SystemProperties;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Detects tests that got slower, from per-test duration history kept next to each job
+ * in alfred-durations.bin.
+ *
+ * Every test keeps its last {@link #WINDOW} durations exactly and everything older in a
+ * {@link DurationSketch}. Each completed build adds one sample per passing test, so old
+ * test reports are never read again. A test has regressed when the median or p95 of the
+ * recent window exceeds the sketch's by more than {@link #REGRESSION_RATIO} and at least
+ * {@link #MIN_DELTA_MILLIS}.
+ *
+ * <pre>
+ * magic "ALFD" | version int | last build number int | test count varint
+ * tests: id, builds since last seen varint, window (varint size, float millis per sample), sketch
+ * </pre>
+ */
+@Extension
+public class DurationTracker {
+    private static final Logger LOGGER = Logger.getLogger(DurationTracker.class.getName());
+
+    private static final String PREFIX = DurationTracker.class.getName();
+    static final boolean ENABLED = SystemProperties.getBoolean(PREFIX + ".enabled", true);
+    static final int WINDOW = SystemProperties.getInteger(PREFIX + ".window", 10);
+    static final int MIN_BASELINE = SystemProperties.getInteger(PREFIX + ".minBaseline", 20);
+    static final double REGRESSION_RATIO = Double.parseDouble(
+        SystemProperties.getString(PREFIX + ".regressionRatio", "0.2"));
+    static final long MIN_DELTA_MILLIS = SystemProperties.getLong(PREFIX + ".minDeltaMillis", 100L);
+    // Tests missing from this many builds in a row are forgotten
+    private static final int STALE_BUILDS = SystemProperties.getInteger(PREFIX + ".staleBuilds", 50);
+    private static final int MAX_REPORTED = 50;
+
+    static final String FILE_NAME = "alfred-durations.bin";
+    private static final int MAGIC = 0x414C4644; // "ALFD"
+    private static final int VERSION = 1;
+
+    // One update per job at a time; concurrent builds of a job take turns
+    private final Map<String, Object> locks = new ConcurrentHashMap<>();
+
+    public static DurationTracker get() {
+        return ExtensionList.lookupSingleton(DurationTracker.class);
+    }
+
+    /**
+     * Add the durations of a completed build and return the tests that regressed,
+     * largest median slowdown first
+     */
+    public List<DurationRegression> update(Run<?, ?> build) {
+        AbstractTestResultAction<?> action = build.getAction(AbstractTestResultAction.class);
+        if (!ENABLED || action == null || !(action.getResult() instanceof TestResult)) {
+            return Collections.emptyList();
+        }
+        TestResult testResult = (TestResult) action.getResult();
+
+        Job<?, ?> job = build.getParent();
+        File file = new File(job.getRootDir(), FILE_NAME);
+        synchronized (locks.computeIfAbsent(job.getFullName(), k -> new Object())) {
+            History history = load(file);
+            if (build.getNumber() <= history.lastBuild) {
+                // Already counted, e.g. the listener ran twice
+                return Collections.emptyList();
+            }
+            List<DurationRegression> regressions = history.add(build.getNumber(), testResult);
+            try {
+                save(file, history);
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Failed to save test durations of " + job.getFullName(), e);
+            }
+            return regressions;
+        }
+    }
+
+    private static History load(File file) {
+        if (!file.isFile()) {
+            return new History();
+        }
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(file.toPath())))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                LOGGER.warning("Ignoring test durations in an unknown format " + file);
+                return new History();
+            }
+            History history = new History();
+            history.lastBuild = in.readInt();
+            int count = FailureAnalysisCodec.readVarInt(in);
+            for (int i = 0; i < count; i++) {
+                String id = FailureAnalysisCodec.readString(in);
+                TestHistory test = new TestHistory();
+                test.missedBuilds = FailureAnalysisCodec.readVarInt(in);
+                // Every stored sample is read to stay in step; the newest WINDOW are kept
+                int stored = FailureAnalysisCodec.readCount(in);
+                test.size = Math.min(stored, WINDOW);
+                for (int s = 0; s < stored; s++) {
+                    float millis = in.readFloat();
+                    int at = s - (stored - test.size);
+                    if (at >= 0) {
+                        test.window[at] = millis;
+                    }
+                }
+                test.sketch = DurationSketch.read(in);
+                history.tests.put(id, test);
+            }
+            return history;
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Ignoring unreadable test durations " + file, e);
+            return new History();
+        }
+    }
+
+    private static void save(File file, History history) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(history.tests.size() * 64 + 16);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(history.lastBuild);
+        FailureAnalysisCodec.writeVarInt(out, history.tests.size());
+        for (Map.Entry<String, TestHistory> entry : history.tests.entrySet()) {
+            TestHistory test = entry.getValue();
+            FailureAnalysisCodec.writeString(out, entry.getKey());
+            FailureAnalysisCodec.writeVarInt(out, test.missedBuilds);
+            // Oldest first, so reading back needs no position
+            FailureAnalysisCodec.writeVarInt(out, test.size);
+            for (int s = 0; s < test.size; s++) {
+                out.writeFloat(test.window[(test.start + s) % WINDOW]);
+            }
+            test.sketch.write(out);
+        }
+        out.flush();
+
+        File tmp = new File(file.getPath() + ".tmp");
+        Files.write(tmp.toPath(), bytes.toByteArray());
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static final class History {
+        private int lastBuild;
+        private final Map<String, TestHistory> tests = new HashMap<>();
+
+        List<DurationRegression> add(int buildNumber, TestResult testResult) {
+            lastBuild = buildNumber;
+            Set<String> seen = new HashSet<>();
+            List<DurationRegression> regressions = new ArrayList<>();
+            for (SuiteResult suite : testResult.getSuites()) {
+                for (CaseResult testCase : suite.getCases()) {
+                    // Failures often end early or at a timeout, so only passing runs are sampled
+                    if (!testCase.isPassed()) {
+                        continue;
+                    }
+                    String id = FailureAnalysisResult.TestFailureInfo.testId(testCase.getClassName(), testCase.getName());
+                    if (!seen.add(id)) {
+                        continue;
+                    }
+                    TestHistory test = tests.computeIfAbsent(id, k -> new TestHistory());
+                    test.add(testCase.getDuration() * 1000f);
+                    DurationRegression regression = test.regression(id);
+                    if (regression != null) {
+                        regressions.add(regression);
+                    }
+                }
+            }
+
+            Iterator<Map.Entry<String, TestHistory>> it = tests.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<String, TestHistory> entry = it.next();
+                if (!seen.contains(entry.getKey()) && ++entry.getValue().missedBuilds > STALE_BUILDS) {
+                    it.remove();
+                }
+            }
+
+            regressions.sort(Comparator.comparingDouble(
+                (DurationRegression r) -> r.getRecentP50() - r.getBaselineP50()).reversed());
+            return regressions.size() > MAX_REPORTED
+                ? new ArrayList<>(regressions.subList(0, MAX_REPORTED)) : regressions;
+        }
+    }
+
+    private static final class TestHistory {
+        // Ring of the latest durations in milliseconds; start is the oldest
+        private final float[] window = new float[WINDOW];
+        private int start;
+        private int size;
+        private int missedBuilds;
+        private DurationSketch sketch = new DurationSketch();
+
+        void add(float millis) {
+            missedBuilds = 0;
+            if (size < WINDOW) {
+                window[(start + size++) % WINDOW] = millis;
+            } else {
+                sketch.add(window[start]);
+                window[start] = millis;
+                start = (start + 1) % WINDOW;
+            }
+        }
+
+        DurationRegression regression(String id) {
+            if (sketch.getCount() < MIN_BASELINE) {
+                return null;
+            }
+            float[] recent = Arrays.copyOf(window, size);
+            Arrays.sort(recent);
+            float recentP50 = recent[(size - 1) / 2];
+            float recentP95 = recent[(int) Math.floor(0.95 * (size - 1))];
+            float baselineP50 = (float) sketch.quantile(0.5);
+            float baselineP95 = (float) sketch.quantile(0.95);
+            if (regressed(baselineP50, recentP50) || regressed(baselineP95, recentP95)) {
+                return new DurationRegression(id, baselineP50, recentP50, baselineP95, recentP95);
+            }
+            return null;
+        }
+
+        private static boolean regressed(float baseline, float recent) {
+            return recent - baseline >= MIN_DELTA_MILLIS && recent > baseline * (1 + REGRESSION_RATIO);
+        }
+    }
+}
@@ -0,0 +1,614 @@
+package io.jenkins.plugins.alfred;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Versioned binary format for {@link FailureAnalysisResult}.
+ *
+ * <pre>
+ * magic "ALFR" | version u8 | flags u8
+ * string table:  varint count, then (varint length, UTF-8 bytes) per string
+ * body:          counts, categories by name, failures as string-table indexes,
+ *                API endpoints, build-over-build change sets
+ * stack block:   varint raw length, varint stored length, bytes
+ *                (deflated with a preset dictionary when FLAG_DEFLATED_STACKS is set)
+ * predictions:   test ids categorized by the classifier, only when FLAG_PREDICTIONS is set
+ * fingerprints:  one string index per failure in body order, only when FLAG_COMPACTED is set
+ * culprits:      one string index per failure in body order, only when FLAG_CULPRITS is set;
+ *                written when some failure has a culprit but no stack trace to find it in,
+ *                as in compacted results
+ * durations:     regressed tests with baseline and recent p50/p95, only when FLAG_DURATIONS is set
+ * estimates:     sample size and per-category count with bounds, only when FLAG_ESTIMATED is set
+ * corrections:   test ids a user moved to another category, only when FLAG_CORRECTIONS is set
+ * </pre>
+ *
+ * Every repeated string (class names, messages, endpoints, test ids) is stored once.
+ * Categories are written by name so reordering the enum does not corrupt old files;
+ * unknown names decode as {@link FailureCategory#UNKNOWN}. Readers reject versions
+ * newer than {@link #VERSION}.
+ *
+ * Input is not trusted: every count and length is checked against the bytes left before
+ * anything is allocated for it, and malformed input fails with an {@link IOException}.
+ */
+public final class FailureAnalysisCodec {
+
+    static final int VERSION = 1;
+    static final int FLAG_DEFLATED_STACKS = 1;
+    static final int FLAG_PREDICTIONS = 2;
+    static final int FLAG_COMPACTED = 4;
+    static final int FLAG_DURATIONS = 8;
+    static final int FLAG_ESTIMATED = 16;
+    static final int FLAG_CULPRITS = 32;
+    static final int FLAG_CORRECTIONS = 64;
+
+    /**
+     * Bytes before the string table: magic, version and flags
+     */
+    static final int HEADER_SIZE = 6;
+
+    private static final byte[] MAGIC = {'A', 'L', 'F', 'R'};
+    private static final int NULL_INDEX = 0;
+
+    // Largest string any reader accepts, whatever the input claims
+    static final int MAX_STRING_BYTES = 64 << 20;
+    // Largest inflated stack block, and the most deflate can expand one stored byte
+    private static final int MAX_STACK_BYTES = 256 << 20;
+    private static final int MAX_INFLATE_RATIO = 1032;
+
+    // Preset dictionary of frames that dominate JVM test stack traces; most frequent last
+    private static final byte[] STACK_DICTIONARY = (
+        "Caused by: java.net.ConnectException: Connection refused\n"
+            + "java.net.SocketTimeoutException: Read timed out\n"
+            + "java.sql.SQLException: \n"
+            + "\tat java.base/java.util.concurrent.FutureTask.run(FutureTask.java:\n"
+            + "\tat java.base/java.util.concurrent.ThreadPoolExecutor.runWorker(ThreadPoolExecutor.java:\n"
+            + "\tat java.base/java.lang.Thread.run(Thread.java:\n"
+            + "\tat org.apache.maven.surefire.booter.ForkedBooter.main(ForkedBooter.java:\n"
+            + "\tat org.apache.maven.surefire.junitplatform.JUnitPlatformProvider.invoke(JUnitPlatformProvider.java:\n"
+            + "\tat org.junit.platform.engine.support.hierarchical.NodeTestTask.executeRecursively(NodeTestTask.java:\n"
+            + "\tat org.junit.platform.engine.support.hierarchical.ThrowableCollector.execute(ThrowableCollector.java:\n"
+            + "\tat org.junit.jupiter.engine.execution.InvocationInterceptorChain.proceed(InvocationInterceptorChain.java:\n"
+            + "\tat org.junit.jupiter.engine.execution.MethodInvocation.proceed(MethodInvocation.java:\n"
+            + "\tat org.junit.runners.ParentRunner.runLeaf(ParentRunner.java:\n"
+            + "\tat org.junit.runners.ParentRunner$3.run(ParentRunner.java:\n"
+            + "\tat org.junit.runners.BlockJUnit4ClassRunner.runChild(BlockJUnit4ClassRunner.java:\n"
+            + "\tat org.junit.internal.runners.statements.InvokeMethod.evaluate(InvokeMethod.java:\n"
+            + "\tat org.junit.runners.model.FrameworkMethod$1.runReflectiveCall(FrameworkMethod.java:\n"
+            + "\tat org.testng.internal.MethodInvocationHelper.invokeMethod(MethodInvocationHelper.java:\n"
+            + "\tat org.junit.Assert.assertEquals(Assert.java:\n"
+            + "\tat org.junit.Assert.fail(Assert.java:\n"
+            + "java.lang.AssertionError: expected:<\n"
+            + "\tat java.base/jdk.internal.reflect.NativeMethodAccessorImpl.invoke0(Native Method)\n"
+            + "\tat java.base/jdk.internal.reflect.NativeMethodAccessorImpl.invoke(NativeMethodAccessorImpl.java:\n"
+            + "\tat java.base/jdk.internal.reflect.DelegatingMethodAccessorImpl.invoke(DelegatingMethodAccessorImpl.java:\n"
+            + "\tat java.base/java.lang.reflect.Method.invoke(Method.java:\n")
+        .getBytes(StandardCharsets.UTF_8);
+
+    private FailureAnalysisCodec() {
+    }
+
+    public static byte[] encode(FailureAnalysisResult result) throws IOException {
+        return encode(result, true);
+    }
+
+    /**
+     * Encode a result, optionally deflating the stack traces with the preset dictionary
+     */
+    public static byte[] encode(FailureAnalysisResult result, boolean deflateStacks) throws IOException {
+        StringTable strings = new StringTable();
+        ByteArrayOutputStream stackBytes = new ByteArrayOutputStream();
+        DataOutputStream stacks = new DataOutputStream(stackBytes);
+
+        // Body first, so the string table is complete before it is written
+        ByteArrayOutputStream bodyBytes = new ByteArrayOutputStream();
+        DataOutputStream body = new DataOutputStream(bodyBytes);
+
+        writeVarInt(body, result.getTotalTests());
+        writeVarInt(body, result.getPassedTests());
+        writeVarInt(body, result.getFailedTests());
+        writeVarInt(body, result.getSkippedTests());
+
+        int stackCount = 0;
+        Map<FailureCategory, List<FailureAnalysisResult.TestFailureInfo>> byCategory = result.getFailuresByCategory();
+        int nonEmpty = 0;
+        for (List<FailureAnalysisResult.TestFailureInfo> failures : byCategory.values()) {
+            if (!failures.isEmpty()) {
+                nonEmpty++;
+            }
+        }
+        writeVarInt(body, nonEmpty);
+        for (Map.Entry<FailureCategory, List<FailureAnalysisResult.TestFailureInfo>> entry : byCategory.entrySet()) {
+            List<FailureAnalysisResult.TestFailureInfo> failures = entry.getValue();
+            if (failures.isEmpty()) {
+                continue;
+            }
+            writeVarInt(body, strings.indexOf(entry.getKey().name()));
+            writeVarInt(body, failures.size());
+            for (FailureAnalysisResult.TestFailureInfo failure : failures) {
+                writeVarInt(body, strings.indexOf(failure.getClassName()));
+                writeVarInt(body, strings.indexOf(failure.getTestName()));
+                writeVarInt(body, strings.indexOf(failure.getErrorDetails()));
+                writeVarInt(body, failure.getAge());
+                String stackTrace = failure.getStackTrace();
+                if (stackTrace == null) {
+                    body.writeBoolean(false);
+                } else {
+                    body.writeBoolean(true);
+                    writeString(stacks, stackTrace);
+                    stackCount++;
+                }
+            }
+        }
+
+        Map<String, Integer> apis = result.getFailedApiEndpoints();
+        writeVarInt(body, apis.size());
+        for (Map.Entry<String, Integer> entry : apis.entrySet()) {
+            writeVarInt(body, strings.indexOf(entry.getKey()));
+            writeVarInt(body, entry.getValue());
+        }
+
+        body.writeBoolean(result.isDifferential());
+        writeVarInt(body, result.getReusedCategorizations());
+        writeIds(body, strings, result.getNewFailures());
+        writeIds(body, strings, result.getStillFailing());
+        writeIds(body, strings, result.getFixedTests());
+        body.flush();
+        stacks.flush();
+
+        // Trailing section, so readers that predate it stop before it
+        ByteArrayOutputStream predictionBytes = new ByteArrayOutputStream();
+        boolean predictions = !result.getPredictedTests().isEmpty();
+        if (predictions) {
+            DataOutputStream predicted = new DataOutputStream(predictionBytes);
+            writeIds(predicted, strings, result.getPredictedTests());
+            predicted.flush();
+        }
+
+        // Compacted results have no stack traces to recompute fingerprints from, so keep them
+        ByteArrayOutputStream fingerprintBytes = new ByteArrayOutputStream();
+        boolean compacted = result.isCompacted();
+        if (compacted) {
+            DataOutputStream fingerprints = new DataOutputStream(fingerprintBytes);
+            for (List<FailureAnalysisResult.TestFailureInfo> failures : byCategory.values()) {
+                for (FailureAnalysisResult.TestFailureInfo failure : failures) {
+                    writeVarInt(fingerprints, strings.indexOf(failure.getFingerprint()));
+                }
+            }
+            fingerprints.flush();
+        }
+
+        // Only needed where a culprit is known but its stack trace is gone, as in compacted results
+        ByteArrayOutputStream culpritBytes = new ByteArrayOutputStream();
+        boolean culprits = false;
+        for (List<FailureAnalysisResult.TestFailureInfo> failures : byCategory.values()) {
+            for (FailureAnalysisResult.TestFailureInfo failure : failures) {
+                culprits |= failure.getStackTrace() == null && failure.getCulprit() != null;
+            }
+        }
+        if (culprits) {
+            DataOutputStream culpritOut = new DataOutputStream(culpritBytes);
+            for (List<FailureAnalysisResult.TestFailureInfo> failures : byCategory.values()) {
+                for (FailureAnalysisResult.TestFailureInfo failure : failures) {
+                    StackFrame culprit = failure.getCulprit();
+                    writeVarInt(culpritOut, strings.indexOf(culprit != null ? culprit.toString() : null));
+                }
+            }
+            culpritOut.flush();
+        }
+
+        ByteArrayOutputStream durationBytes = new ByteArrayOutputStream();
+        boolean durations = !result.getDurationRegressions().isEmpty();
+        if (durations) {
+            DataOutputStream regressions = new DataOutputStream(durationBytes);
+            writeVarInt(regressions, result.getDurationRegressions().size());
+            for (DurationRegression regression : result.getDurationRegressions()) {
+                writeVarInt(regressions, strings.indexOf(regression.getTestId()));
+                regressions.writeFloat(regression.getBaselineP50());
+                regressions.writeFloat(regression.getRecentP50());
+                regressions.writeFloat(regression.getBaselineP95());
+                regressions.writeFloat(regression.getRecentP95());
+            }
+            regressions.flush();
+        }
+
+        ByteArrayOutputStream estimateBytes = new ByteArrayOutputStream();
+        boolean estimated = result.isEstimated();
+        if (estimated) {
+            DataOutputStream estimates = new DataOutputStream(estimateBytes);
+            writeVarInt(estimates, result.getSampledFailures());
+            writeVarInt(estimates, result.getEstimates().size());
+            for (Map.Entry<FailureCategory, FailureAnalysisResult.Estimate> entry : result.getEstimates().entrySet()) {
+                writeVarInt(estimates, strings.indexOf(entry.getKey().name()));
+                writeVarInt(estimates, entry.getValue().getCount());
+                writeVarInt(estimates, entry.getValue().getLower());
+                writeVarInt(estimates, entry.getValue().getUpper());
+            }
+            estimates.flush();
+        }
+
+        ByteArrayOutputStream correctionBytes = new ByteArrayOutputStream();
+        boolean corrections = !result.getCorrectedTests().isEmpty();
+        if (corrections) {
+            DataOutputStream corrected = new DataOutputStream(correctionBytes);
+            writeIds(corrected, strings, result.getCorrectedTests());
+            corrected.flush();
+        }
+
+        boolean deflate = deflateStacks && stackCount > 0;
+        ByteArrayOutputStream out = new ByteArrayOutputStream(bodyBytes.size() + stackBytes.size() / 4 + 256);
+        DataOutputStream data = new DataOutputStream(out);
+        data.write(MAGIC);
+        data.writeByte(VERSION);
+        data.writeByte((deflate ? FLAG_DEFLATED_STACKS : 0) | (predictions ? FLAG_PREDICTIONS : 0)
+            | (compacted ? FLAG_COMPACTED : 0) | (durations ? FLAG_DURATIONS : 0)
+            | (estimated ? FLAG_ESTIMATED : 0) | (culprits ? FLAG_CULPRITS : 0)
+            | (corrections ? FLAG_CORRECTIONS : 0));
+
+        writeVarInt(data, strings.size());
+        for (String value : strings.values()) {
+            writeString(data, value);
+        }
+
+        bodyBytes.writeTo(data);
+
+        byte[] rawStacks = stackBytes.toByteArray();
+        byte[] storedStacks = deflate ? deflate(rawStacks) : rawStacks;
+        writeVarInt(data, rawStacks.length);
+        writeVarInt(data, storedStacks.length);
+        data.write(storedStacks);
+        predictionBytes.writeTo(data);
+        fingerprintBytes.writeTo(data);
+        durationBytes.writeTo(data);
+        estimateBytes.writeTo(data);
+        culpritBytes.writeTo(data);
+        correctionBytes.writeTo(data);
+        data.flush();
+
+        return out.toByteArray();
+    }
+
+    /**
+     * Read only the flags of an encoded file, or -1 if it is missing or not in this format
+     */
+    static int peekFlags(File file) {
+        byte[] header = new byte[HEADER_SIZE];
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            if (in.readNBytes(header, 0, HEADER_SIZE) < HEADER_SIZE
+                    || !Arrays.equals(Arrays.copyOf(header, MAGIC.length), MAGIC)) {
+                return -1;
+            }
+            return header[HEADER_SIZE - 1] & 0xFF;
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    public static FailureAnalysisResult decode(byte[] bytes) throws IOException {
+        try {
+            return decode(new DataInputStream(new ByteArrayInputStream(bytes)));
+        } catch (RuntimeException e) {
+            // The checks below should leave nothing to fail this way; never let bad input escape as one
+            throw new IOException("Corrupt Alfred analysis", e);
+        }
+    }
+
+    private static FailureAnalysisResult decode(DataInputStream in) throws IOException {
+
+        byte[] magic = new byte[MAGIC.length];
+        in.readFully(magic);
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new IOException("Not an Alfred analysis file");
+        }
+        int version = in.readUnsignedByte();
+        if (version < 1 || version > VERSION) {
+            throw new IOException("Unsupported Alfred analysis format version " + version);
+        }
+        int flags = in.readUnsignedByte();
+
+        int stringCount = readCount(in);
+        String[] strings = new String[stringCount + 1];
+        for (int i = 1; i <= stringCount; i++) {
+            strings[i] = readBoundedString(in);
+        }
+
+        FailureAnalysisResult result = new FailureAnalysisResult();
+        result.setTotalTests(readVarInt(in));
+        result.setPassedTests(readVarInt(in));
+        result.setFailedTests(readVarInt(in));
+        result.setSkippedTests(readVarInt(in));
+
+        // Failures are read before the stack block, so remember which ones need a trace
+        List<PendingFailure> pending = new ArrayList<>();
+        int categories = readCount(in);
+        for (int c = 0; c < categories; c++) {
+            FailureCategory category = categoryOf(string(strings, readVarInt(in)));
+            int failures = readCount(in);
+            for (int f = 0; f < failures; f++) {
+                PendingFailure failure = new PendingFailure();
+                failure.category = category;
+                failure.className = string(strings, readVarInt(in));
+                failure.testName = string(strings, readVarInt(in));
+                failure.errorDetails = string(strings, readVarInt(in));
+                failure.age = readVarInt(in);
+                failure.hasStackTrace = in.readBoolean();
+                pending.add(failure);
+            }
+        }
+
+        int apis = readCount(in);
+        for (int i = 0; i < apis; i++) {
+            String endpoint = string(strings, readVarInt(in));
+            result.getFailedApiEndpoints().put(endpoint, readVarInt(in));
+        }
+
+        result.setDifferential(in.readBoolean());
+        result.setReusedCategorizations(readVarInt(in));
+        for (String id : readIds(in, strings)) {
+            result.addNewFailure(id);
+        }
+        for (String id : readIds(in, strings)) {
+            result.addStillFailing(id);
+        }
+        for (String id : readIds(in, strings)) {
+            result.addFixed(id);
+        }
+
+        int rawLength = readVarInt(in);
+        int storedLength = readCount(in);
+        byte[] storedStacks = new byte[storedLength];
+        in.readFully(storedStacks);
+        byte[] rawStacks = storedStacks;
+        if ((flags & FLAG_DEFLATED_STACKS) != 0) {
+            if (rawLength < 0 || rawLength > MAX_STACK_BYTES || rawLength > (long) storedLength * MAX_INFLATE_RATIO) {
+                throw new IOException("Stack trace block length out of range: " + rawLength);
+            }
+            rawStacks = inflate(storedStacks, rawLength);
+        }
+        DataInputStream stacks = new DataInputStream(new ByteArrayInputStream(rawStacks));
+
+        List<FailureAnalysisResult.TestFailureInfo> decoded = new ArrayList<>(pending.size());
+        for (PendingFailure failure : pending) {
+            String stackTrace = failure.hasStackTrace ? readBoundedString(stacks) : null;
+            FailureAnalysisResult.TestFailureInfo info = new FailureAnalysisResult.TestFailureInfo(
+                failure.className, failure.testName, failure.errorDetails, stackTrace, failure.age);
+            result.getFailuresByCategory().get(failure.category).add(info);
+            decoded.add(info);
+        }
+
+        if ((flags & FLAG_PREDICTIONS) != 0) {
+            for (String id : readIds(in, strings)) {
+                result.addPredicted(id);
+            }
+        }
+
+        if ((flags & FLAG_COMPACTED) != 0) {
+            result.setCompacted(true);
+            for (FailureAnalysisResult.TestFailureInfo info : decoded) {
+                info.setFingerprint(string(strings, readVarInt(in)));
+            }
+        }
+
+        if ((flags & FLAG_DURATIONS) != 0) {
+            int count = readCount(in);
+            for (int i = 0; i < count; i++) {
+                String testId = string(strings, readVarInt(in));
+                result.addDurationRegression(new DurationRegression(
+                    testId, in.readFloat(), in.readFloat(), in.readFloat(), in.readFloat()));
+            }
+        }
+
+        if ((flags & FLAG_ESTIMATED) != 0) {
+            result.setSampledFailures(readVarInt(in));
+            int count = readCount(in);
+            for (int i = 0; i < count; i++) {
+                FailureCategory category = categoryOf(string(strings, readVarInt(in)));
+                result.setEstimate(category, new FailureAnalysisResult.Estimate(
+                    readVarInt(in), readVarInt(in), readVarInt(in)));
+            }
+        }
+
+        if ((flags & FLAG_CULPRITS) != 0) {
+            for (FailureAnalysisResult.TestFailureInfo info : decoded) {
+                String culprit = string(strings, readVarInt(in));
+                if (culprit != null) {
+                    info.setCulprit(StackTraceParser.parseFrame(culprit, 0, culprit.length()));
+                }
+            }
+        }
+
+        if ((flags & FLAG_CORRECTIONS) != 0) {
+            for (String id : readIds(in, strings)) {
+                result.addCorrected(id);
+            }
+        }
+
+        return result;
+    }
+
+    private static FailureCategory categoryOf(String name) {
+        if (name != null) {
+            for (int i = 0; i < FailureCategory.count(); i++) {
+                FailureCategory category = FailureCategory.byOrdinal(i);
+                if (category.name().equals(name)) {
+                    return category;
+                }
+            }
+        }
+        return FailureCategory.UNKNOWN;
+    }
+
+    private static String string(String[] strings, int index) throws IOException {
+        if (index < 0 || index >= strings.length) {
+            throw new IOException("String index out of range: " + index);
+        }
+        return strings[index];
+    }
+
+    private static void writeIds(DataOutputStream out, StringTable strings, List<String> ids) throws IOException {
+        writeVarInt(out, ids.size());
+        for (String id : ids) {
+            writeVarInt(out, strings.indexOf(id));
+        }
+    }
+
+    private static List<String> readIds(DataInputStream in, String[] strings) throws IOException {
+        int count = readCount(in);
+        List<String> ids = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            ids.add(string(strings, readVarInt(in)));
+        }
+        return ids;
+    }
+
+    private static byte[] deflate(byte[] raw) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setDictionary(STACK_DICTIONARY);
+            deflater.setInput(raw);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, raw.length / 4));
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                int n = deflater.deflate(buffer);
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] stored, int rawLength) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(stored);
+            byte[] raw = new byte[rawLength];
+            int offset = 0;
+            while (offset < rawLength) {
+                int n = inflater.inflate(raw, offset, rawLength - offset);
+                if (n == 0) {
+                    if (inflater.needsDictionary()) {
+                        inflater.setDictionary(STACK_DICTIONARY);
+                    } else if (inflater.finished() || inflater.needsInput()) {
+                        throw new EOFException("Truncated stack trace block");
+                    }
+                }
+                offset += n;
+            }
+            return raw;
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt stack trace block", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    static int readVarInt(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(out, bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(DataInputStream in) throws IOException {
+        int length = readVarInt(in);
+        if (length < 0 || length > MAX_STRING_BYTES) {
+            throw new IOException("String length out of range: " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Read a count of items that take at least one byte each, from input held in memory
+     */
+    static int readCount(DataInputStream in) throws IOException {
+        int count = readVarInt(in);
+        if (count < 0 || count > in.available()) {
+            throw new IOException("Count out of range: " + count);
+        }
+        return count;
+    }
+
+    /**
+     * Like {@link #readString} for input held in memory, where the bytes left are known
+     */
+    static String readBoundedString(DataInputStream in) throws IOException {
+        int length = readVarInt(in);
+        if (length < 0 || length > MAX_STRING_BYTES || length > in.available()) {
+            throw new IOException("String length out of range: " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Insertion-ordered string table; index 0 is reserved for null
+     */
+    private static final class StringTable {
+        private final Map<String, Integer> indexes = new LinkedHashMap<>();
+
+        int indexOf(String value) {
+            if (value == null) {
+                return NULL_INDEX;
+            }
+            Integer index = indexes.get(value);
+            if (index == null) {
+                index = indexes.size() + 1;
+                indexes.put(value, index);
+            }
+            return index;
+        }
+
+        int size() {
+            return indexes.size();
+        }
+
+        Collection<String> values() {
+            return indexes.keySet();
+        }
+    }
+
+    private static final class PendingFailure {
+        FailureCategory category;
+        String className;
+        String testName;
+        String errorDetails;
+        int age;
+        boolean hasStackTrace;
+    }
+}
@@ -16,9 +16,34 @@ public class FailureAnalysisResult implements Serializable {
     private int failedTests = 0;
     private int skippedTests = 0;
 
-    private Map<FailureCategory, List<TestFailureInfo>> failuresByCategory = new HashMap<>();
+    private Map<FailureCategory, List<TestFailureInfo>> failuresByCategory = new EnumMap<>(FailureCategory.class);
     private Map<String, Integer> failedApiEndpoints = new HashMap<>();
 
+    // Build-over-build comparison, only filled when analyzed against a previous result
+    private boolean differential = false;
+    private int reusedCategorizations = 0;
+    // Failures whose category came from this build's live analysis, see LiveAnalysis; not stored
+    private transient int liveCategorizations = 0;
+    private List<String> newFailures = new ArrayList<>();
+    private List<String> stillFailing = new ArrayList<>();
+    private List<String> fixedTests = new ArrayList<>();
+
+    // Failures moved out of UNKNOWN by the classifier
+    private List<String> predictedTests = new ArrayList<>();
+
+    // Failures a user moved to another category, see AlfredApiEndpoint#doCorrect
+    private List<String> correctedTests = new ArrayList<>();
+
+    // Set once stack traces were dropped by retention compaction
+    private boolean compacted = false;
+
+    // Tests that got slower, see DurationTracker
+    private List<DurationRegression> durationRegressions = new ArrayList<>();
+
+    // Set while only a sample of the failures was categorized, see FailureAnalyzer#estimate
+    private int sampledFailures = 0;
+    private Map<FailureCategory, Estimate> estimates = new EnumMap<>(FailureCategory.class);
+
     public FailureAnalysisResult() {
         // Initialize all categories
         for (FailureCategory category : FailureCategory.values()) {
@@ -26,7 +51,48 @@ public class FailureAnalysisResult implements Serializable {
         }
     }
 
-    public void addFailure(FailureCategory category, CaseResult testCase) {
+    /**
+     * Migrate results stored before categories were kept in an EnumMap
+     */
+    protected Object readResolve() {
+        if (!(failuresByCategory instanceof EnumMap)) {
+            Map<FailureCategory, List<TestFailureInfo>> migrated = new EnumMap<>(FailureCategory.class);
+            if (failuresByCategory != null) {
+                migrated.putAll(failuresByCategory);
+            }
+            failuresByCategory = migrated;
+        }
+        for (FailureCategory category : FailureCategory.values()) {
+            failuresByCategory.putIfAbsent(category, new ArrayList<>());
+        }
+        if (failedApiEndpoints == null) {
+            failedApiEndpoints = new HashMap<>();
+        }
+        if (newFailures == null) {
+            newFailures = new ArrayList<>();
+        }
+        if (stillFailing == null) {
+            stillFailing = new ArrayList<>();
+        }
+        if (fixedTests == null) {
+            fixedTests = new ArrayList<>();
+        }
+        if (predictedTests == null) {
+            predictedTests = new ArrayList<>();
+        }
+        if (correctedTests == null) {
+            correctedTests = new ArrayList<>();
+        }
+        if (durationRegressions == null) {
+            durationRegressions = new ArrayList<>();
+        }
+        if (estimates == null) {
+            estimates = new EnumMap<>(FailureCategory.class);
+        }
+        return this;
+    }
+
+    public TestFailureInfo addFailure(FailureCategory category, CaseResult testCase) {
         TestFailureInfo info = new TestFailureInfo(
                 testCase.getClassName(),
                 testCase.getName(),
@@ -34,12 +100,216 @@ public class FailureAnalysisResult implements Serializable {
                 testCase.getErrorStackTrace(),
                 testCase.getAge());
         failuresByCategory.get(category).add(info);
+        return info;
     }
 
     public void addFailedApi(String endpoint) {
         failedApiEndpoints.merge(endpoint, 1, Integer::sum);
     }
 
+    void setDifferential(boolean differential) {
+        this.differential = differential;
+    }
+
+    void addReusedCategorization() {
+        reusedCategorizations++;
+    }
+
+    void addLiveCategorization() {
+        liveCategorizations++;
+    }
+
+    void setReusedCategorizations(int reusedCategorizations) {
+        this.reusedCategorizations = reusedCategorizations;
+    }
+
+    void addNewFailure(String testId) {
+        newFailures.add(testId);
+    }
+
+    void addStillFailing(String testId) {
+        stillFailing.add(testId);
+    }
+
+    void addFixed(String testId) {
+        fixedTests.add(testId);
+    }
+
+    void setCompacted(boolean compacted) {
+        this.compacted = compacted;
+    }
+
+    /**
+     * Whether stack traces and full messages were dropped to save space, see {@link AnalysisCompactor}
+     */
+    public boolean isCompacted() {
+        return compacted;
+    }
+
+    void addPredicted(String testId) {
+        predictedTests.add(testId);
+    }
+
+    void addCorrected(String testId) {
+        correctedTests.add(testId);
+    }
+
+    void addDurationRegression(DurationRegression regression) {
+        durationRegressions.add(regression);
+    }
+
+    void setSampledFailures(int sampledFailures) {
+        this.sampledFailures = sampledFailures;
+    }
+
+    /**
+     * Number of failures categorized for an estimate, 0 for an exact analysis
+     */
+    public int getSampledFailures() {
+        return sampledFailures;
+    }
+
+    /**
+     * Whether category counts are estimated from a sample while the exact analysis runs
+     */
+    public boolean isEstimated() {
+        return sampledFailures > 0;
+    }
+
+    void setEstimate(FailureCategory category, Estimate estimate) {
+        estimates.put(category, estimate);
+    }
+
+    /**
+     * Estimated count of a category with its 95% confidence bounds, or null for an exact analysis
+     */
+    public Estimate getEstimate(FailureCategory category) {
+        return estimates.get(category);
+    }
+
+    Map<FailureCategory, Estimate> getEstimates() {
+        return estimates;
+    }
+
+    /**
+     * Move a failure to another category
+     */
+    void moveFailure(TestFailureInfo failure, FailureCategory from, FailureCategory to) {
+        if (failuresByCategory.get(from).remove(failure)) {
+            failuresByCategory.get(to).add(failure);
+        }
+    }
+
+    /**
+     * Find a failure by test id, or null
+     */
+    TestFailureInfo findFailure(String testId) {
+        for (List<TestFailureInfo> failures : failuresByCategory.values()) {
+            for (TestFailureInfo failure : failures) {
+                if (failure.getTestId().equals(testId)) {
+                    return failure;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Category a failure is currently listed under, or null
+     */
+    FailureCategory categoryOf(TestFailureInfo failure) {
+        for (Map.Entry<FailureCategory, List<TestFailureInfo>> entry : failuresByCategory.entrySet()) {
+            if (entry.getValue().contains(failure)) {
+                return entry.getKey();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Whether this result was computed against the previous build's result
+     */
+    public boolean isDifferential() {
+        return differential;
+    }
+
+    /**
+     * Number of failures whose category was carried over from the previous build
+     */
+    public int getReusedCategorizations() {
+        return reusedCategorizations;
+    }
+
+    /**
+     * Number of failures whose category was already found while the build was running;
+     * only known right after the final analysis
+     */
+    public int getLiveCategorizations() {
+        return liveCategorizations;
+    }
+
+    public List<String> getNewFailures() {
+        return newFailures;
+    }
+
+    public List<String> getStillFailing() {
+        return stillFailing;
+    }
+
+    public List<String> getFixedTests() {
+        return fixedTests;
+    }
+
+    /**
+     * Test ids whose category came from the classifier rather than a rule
+     */
+    public List<String> getPredictedTests() {
+        return predictedTests;
+    }
+
+    /**
+     * Test ids whose category was set by a user correction
+     */
+    public List<String> getCorrectedTests() {
+        return correctedTests;
+    }
+
+    /**
+     * Copy that can be changed without affecting this result, e.g. to correct a result
+     * readers may be iterating. The failures themselves are shared.
+     */
+    FailureAnalysisResult copy() {
+        FailureAnalysisResult copy = new FailureAnalysisResult();
+        copy.totalTests = totalTests;
+        copy.passedTests = passedTests;
+        copy.failedTests = failedTests;
+        copy.skippedTests = skippedTests;
+        for (Map.Entry<FailureCategory, List<TestFailureInfo>> entry : failuresByCategory.entrySet()) {
+            copy.failuresByCategory.get(entry.getKey()).addAll(entry.getValue());
+        }
+        copy.failedApiEndpoints.putAll(failedApiEndpoints);
+        copy.differential = differential;
+        copy.reusedCategorizations = reusedCategorizations;
+        copy.liveCategorizations = liveCategorizations;
+        copy.newFailures.addAll(newFailures);
+        copy.stillFailing.addAll(stillFailing);
+        copy.fixedTests.addAll(fixedTests);
+        copy.predictedTests.addAll(predictedTests);
+        copy.correctedTests.addAll(correctedTests);
+        copy.compacted = compacted;
+        copy.durationRegressions.addAll(durationRegressions);
+        copy.sampledFailures = sampledFailures;
+        copy.estimates.putAll(estimates);
+        return copy;
+    }
+
+    /**
+     * Tests whose recent median or p95 duration regressed, largest slowdown first
+     */
+    public List<DurationRegression> getDurationRegressions() {
+        return durationRegressions;
+    }
+
     public int getTotalTests() {
         return totalTests;
     }
@@ -81,9 +351,43 @@ public class FailureAnalysisResult implements Serializable {
     }
 
     public int getFailureCountForCategory(FailureCategory category) {
+        if (isEstimated()) {
+            // Only the sampled failures are listed
+            Estimate estimate = estimates.get(category);
+            return estimate != null ? estimate.getCount() : 0;
+        }
         return failuresByCategory.get(category).size();
     }
 
+    /**
+     * Estimated failure count of a category and its 95% confidence interval
+     */
+    public static class Estimate implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final int count;
+        private final int lower;
+        private final int upper;
+
+        public Estimate(int count, int lower, int upper) {
+            this.count = count;
+            this.lower = lower;
+            this.upper = upper;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public int getLower() {
+            return lower;
+        }
+
+        public int getUpper() {
+            return upper;
+        }
+    }
+
     /**
      * Inner class to hold test failure information
      */
@@ -95,6 +399,10 @@ public class FailureAnalysisResult implements Serializable {
         private final String errorDetails;
         private final String stackTrace;
         private final int age;
+        private transient String fingerprint;
+        private transient ParsedStackTrace parsedStackTrace;
+        // Kept separately once the stack trace is compacted away
+        private transient StackFrame culprit;
 
         public TestFailureInfo(String className, String testName, String errorDetails,
                 String stackTrace, int age) {
@@ -125,11 +433,73 @@ public class FailureAnalysisResult implements Serializable {
             return age;
         }
 
+        /**
+         * Identifier of the test, stable across builds
+         */
+        public String getTestId() {
+            return testId(className, testName);
+        }
+
+        static String testId(String className, String testName) {
+            return className + "." + testName;
+        }
+
+        /**
+         * Normalized root-cause fingerprint, see {@link FailureFingerprint}
+         */
+        public String getFingerprint() {
+            if (fingerprint == null) {
+                fingerprint = FailureFingerprint.of(errorDetails, stackTrace);
+            }
+            return fingerprint;
+        }
+
+        void setFingerprint(String fingerprint) {
+            this.fingerprint = fingerprint;
+        }
+
+        /**
+         * The stack trace as exception chain and frames, parsed on first use
+         */
+        public ParsedStackTrace getParsedStackTrace() {
+            if (parsedStackTrace == null) {
+                parsedStackTrace = StackTraceParser.parse(stackTrace);
+            }
+            return parsedStackTrace;
+        }
+
+        /**
+         * First application-owned frame of the failure, or null if unknown
+         */
+        public StackFrame getCulprit() {
+            if (culprit == null && stackTrace != null) {
+                culprit = getParsedStackTrace().getCulprit();
+            }
+            return culprit;
+        }
+
+        void setCulprit(StackFrame culprit) {
+            this.culprit = culprit;
+        }
+
         public String getShortError() {
-            if (errorDetails == null)
-                return "No error details";
-            String[] lines = errorDetails.split("\n");
-            return lines.length > 0 ? lines[0].substring(0, Math.min(100, lines[0].length())) : "";
+            if (errorDetails == null) {
+                // Fall back to the exception the stack trace starts with
+                List<ParsedStackTrace.Cause> causes = getParsedStackTrace().getCauses();
+                if (causes.isEmpty()) {
+                    return "No error details";
+                }
+                ParsedStackTrace.Cause thrown = causes.get(0);
+                String error = thrown.getMessage() == null
+                    ? thrown.getExceptionType() : thrown.getExceptionType() + ": " + thrown.getMessage();
+                return error.substring(0, Math.min(100, error.length()));
+            }
+            // First line, capped at 100 chars, without splitting the whole message
+            int end = errorDetails.indexOf('\n');
+            if (end < 0) {
+                end = errorDetails.length();
+            }
+            return errorDetails.substring(0, Math.min(100, end));
         }
     }
 }
@@ -4,17 +4,33 @@ import hudson.model.Run;
 import hudson.tasks.junit.TestResult;
 import hudson.tasks.junit.CaseResult;
 import hudson.tasks.test.AbstractTestResultAction;
+import jenkins.util.SystemProperties;
 
+import java.io.Serializable;
 import java.util.*;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
-import java.util.stream.Collectors;
 
 /**
- * Analyzes test failures and categorizes them by pattern matching
+ * Analyzes test failures and categorizes them by pattern matching.
+ * Instances reuse their matchers between failures and must not be shared across threads.
  */
 public class FailureAnalyzer {
 
-    private static final Map<FailureCategory, List<Pattern>> PATTERNS = new HashMap<>();
+    /**
+     * Builds with more failures than this first get an estimate from a sample, 0 disables sampling
+     */
+    static final int SAMPLING_THRESHOLD = SystemProperties.getInteger(
+        FailureAnalyzer.class.getName() + ".samplingThreshold", 5000);
+    static final int SAMPLE_SIZE = SystemProperties.getInteger(
+        FailureAnalyzer.class.getName() + ".sampleSize", 1000);
+
+    // Two-sided 95% normal quantile
+    private static final double Z_95 = 1.96;
+
+    // EnumMap: rules are tried in category declaration order on every JVM, so the controller
+    // and agents (see AgentAnalysisCallable) put the same failure in the same category
+    private static final Map<FailureCategory, List<Pattern>> PATTERNS = new EnumMap<>(FailureCategory.class);
 
     static {
         // Setup Issues
@@ -111,42 +127,172 @@ public class FailureAnalyzer {
         ));
     }
 
+    private static final Pattern[] API_PATTERNS = {
+        Pattern.compile("/(api|v\\d+)/[\\w\\-/]+"),
+        Pattern.compile("endpoint[:\\s]+(/[\\w\\-/]+)", Pattern.CASE_INSENSITIVE),
+        Pattern.compile("request.*to[:\\s]+(/[\\w\\-/]+)", Pattern.CASE_INSENSITIVE)
+    };
+
+    // Per-analyzer matchers, reset against the shared failure text for every failure.
+    // Flattened in PATTERNS iteration order so categorization keeps its first-match semantics.
+    private final FailureCategory[] matcherCategories;
+    private final Matcher[] categoryMatchers;
+    private final Matcher[] apiMatchers;
+    private final FailureText failureText = new FailureText();
+
+    public FailureAnalyzer() {
+        List<FailureCategory> categories = new ArrayList<>();
+        List<Matcher> matchers = new ArrayList<>();
+        for (Map.Entry<FailureCategory, List<Pattern>> entry : PATTERNS.entrySet()) {
+            for (Pattern pattern : entry.getValue()) {
+                categories.add(entry.getKey());
+                matchers.add(pattern.matcher(""));
+            }
+        }
+        this.matcherCategories = categories.toArray(new FailureCategory[0]);
+        this.categoryMatchers = matchers.toArray(new Matcher[0]);
+
+        this.apiMatchers = new Matcher[API_PATTERNS.length];
+        for (int i = 0; i < API_PATTERNS.length; i++) {
+            apiMatchers[i] = API_PATTERNS[i].matcher("");
+        }
+    }
+
     /**
      * Analyze a build and categorize its failures
      */
     public FailureAnalysisResult analyze(Run<?, ?> build) {
-        FailureAnalysisResult result = new FailureAnalysisResult();
+        return analyze(build, null);
+    }
 
+    /**
+     * Analyze a build, reusing the previous completed build's stored categorizations
+     * when it has an Alfred analysis attached
+     */
+    public FailureAnalysisResult analyzeIncremental(Run<?, ?> build) {
+        return analyzeIncremental(build, null);
+    }
+
+    /**
+     * Like {@link #analyzeIncremental(Run)}, also reusing the categorizations of the build's
+     * live analysis, see {@link LiveAnalysis}
+     */
+    FailureAnalysisResult analyzeIncremental(Run<?, ?> build, FailureAnalysisResult live) {
+        return analyzeAgainst(build, Baseline.of(previousResult(build), live));
+    }
+
+    /**
+     * Stored analysis of the previous completed build, or null if there is none
+     */
+    static FailureAnalysisResult previousResult(Run<?, ?> build) {
+        Run<?, ?> previousBuild = build.getPreviousCompletedBuild();
+        AlfredBuildAction previousAction = previousBuild != null
+            ? previousBuild.getAction(AlfredBuildAction.class)
+            : null;
+        return previousAction != null ? previousAction.getAnalysisResult() : null;
+    }
+
+    /**
+     * Analyze a build. When a previous result is given, failures whose test id and
+     * fingerprint match a previous failure keep its category without running the
+     * matchers, and the result records new, still failing and fixed tests.
+     */
+    public FailureAnalysisResult analyze(Run<?, ?> build, FailureAnalysisResult previous) {
+        return analyzeAgainst(build, previous != null ? Baseline.of(previous) : null);
+    }
+
+    private FailureAnalysisResult analyzeAgainst(Run<?, ?> build, Baseline baseline) {
         AbstractTestResultAction testResultAction = build.getAction(AbstractTestResultAction.class);
         if (testResultAction == null) {
-            return result;
+            return new FailureAnalysisResult();
         }
 
         Object testResultObj = testResultAction.getResult();
         if (!(testResultObj instanceof TestResult)) {
-            return result;
+            return new FailureAnalysisResult();
         }
 
-        TestResult testResult = (TestResult) testResultObj;
+        return analyze((TestResult) testResultObj, baseline);
+    }
+
+    /**
+     * Analyze parsed test results. Used on the controller and, through
+     * {@link AgentAnalysisCallable}, on the agent that holds the reports.
+     */
+    FailureAnalysisResult analyze(TestResult testResult, Baseline baseline) {
+        return analyze(testResult, baseline, null);
+    }
+
+    /**
+     * Analyze parsed test results, taking the categories of the failures in {@code assigned}
+     * (by test id) as given: they are neither matched nor searched for API endpoints.
+     * Used for the categories an agent computed, see {@link AgentAnalysisCallable}.
+     */
+    FailureAnalysisResult analyze(TestResult testResult, Baseline baseline, Map<String, FailureCategory> assigned) {
+        FailureAnalysisResult result = new FailureAnalysisResult();
         result.setTotalTests(testResult.getTotalCount());
         result.setPassedTests(testResult.getPassCount());
         result.setFailedTests(testResult.getFailCount());
         result.setSkippedTests(testResult.getSkipCount());
 
+        Set<String> notSeen = null;
+        if (baseline != null && baseline.previousFailures != null) {
+            notSeen = new LinkedHashSet<>(baseline.previousFailures);
+            result.setDifferential(true);
+        }
+
         // Analyze failed tests
         List<CaseResult> failedTests = testResult.getFailedTests();
         for (CaseResult failedTest : failedTests) {
             String errorMessage = failedTest.getErrorDetails();
             String stackTrace = failedTest.getErrorStackTrace();
-            String fullError = (errorMessage != null ? errorMessage : "") + " " +
-                             (stackTrace != null ? stackTrace : "");
+            CharSequence fullError = failureText.reset(errorMessage, stackTrace);
 
-            FailureCategory category = categorizeFailure(fullError);
+            FailureCategory category = null;
+            String testId = null;
+            boolean failedBefore = false;
+            if (baseline != null || assigned != null) {
+                testId = FailureAnalysisResult.TestFailureInfo.testId(failedTest.getClassName(), failedTest.getName());
+                failedBefore = notSeen != null && notSeen.remove(testId);
+            }
+            if (assigned != null) {
+                category = assigned.get(testId);
+            }
+            boolean wasAssigned = category != null;
+            if (category == null && baseline != null) {
+                String fingerprint = baseline.fingerprints.get(testId);
+                if (fingerprint != null && fingerprint.equals(FailureFingerprint.of(errorMessage, stackTrace))) {
+                    category = baseline.categories.get(testId);
+                    if (baseline.liveTests.contains(testId)) {
+                        result.addLiveCategorization();
+                    } else {
+                        result.addReusedCategorization();
+                    }
+                }
+            }
+            if (category == null) {
+                category = categorizeFailure(fullError);
+            }
             result.addFailure(category, failedTest);
 
+            if (notSeen != null) {
+                if (failedBefore) {
+                    result.addStillFailing(testId);
+                } else {
+                    result.addNewFailure(testId);
+                }
+            }
+
             // Extract API endpoints if it's an API failure
-            if (category == FailureCategory.API_FAILURES) {
-                extractApiEndpoints(fullError).forEach(result::addFailedApi);
+            if (category == FailureCategory.API_FAILURES && !wasAssigned) {
+                extractApiEndpoints(fullError, result);
+            }
+        }
+
+        if (notSeen != null) {
+            // Whatever was failing before and was not matched above is no longer failing
+            for (String testId : notSeen) {
+                result.addFixed(testId);
             }
         }
 
@@ -154,41 +300,188 @@ public class FailureAnalyzer {
     }
 
     /**
-     * Categorize a failure based on error message
+     * Categorize one failed test into a result, for callers that see failures one at a time
      */
-    private FailureCategory categorizeFailure(String errorText) {
-        for (Map.Entry<FailureCategory, List<Pattern>> entry : PATTERNS.entrySet()) {
-            for (Pattern pattern : entry.getValue()) {
-                if (pattern.matcher(errorText).find()) {
-                    return entry.getKey();
+    FailureAnalysisResult.TestFailureInfo categorize(CaseResult failedTest, FailureAnalysisResult result) {
+        CharSequence fullError = failureText.reset(failedTest.getErrorDetails(), failedTest.getErrorStackTrace());
+        FailureCategory category = categorizeFailure(fullError);
+        if (category == FailureCategory.API_FAILURES) {
+            extractApiEndpoints(fullError, result);
+        }
+        return result.addFailure(category, failedTest);
+    }
+
+    /**
+     * Whether a build has enough failures that an estimate is published before the exact analysis
+     */
+    static boolean shouldSample(Run<?, ?> build) {
+        AbstractTestResultAction<?> action = build.getAction(AbstractTestResultAction.class);
+        return SAMPLING_THRESHOLD > 0 && action != null && action.getFailCount() > SAMPLING_THRESHOLD;
+    }
+
+    /**
+     * Estimate the category breakdown of a build from a sample of its failures
+     */
+    public FailureAnalysisResult estimate(Run<?, ?> build) {
+        AbstractTestResultAction<?> action = build.getAction(AbstractTestResultAction.class);
+        if (action == null || !(action.getResult() instanceof TestResult)) {
+            return new FailureAnalysisResult();
+        }
+        // Seeded by build so the same build always shows the same estimate
+        return estimate((TestResult) action.getResult(), SAMPLE_SIZE, new Random(build.getNumber()));
+    }
+
+    /**
+     * Categorize a stratified sample of the failures and extrapolate per-category counts.
+     *
+     * Failures are stratified by test class, since failures of one class tend to share a
+     * cause. Each class gets a share of the sample proportional to its failures, and the
+     * shares add up to exactly the sample size. Classes too small for two samples, the
+     * fewest that give a variance, are pooled, and a pool still too small joins the smallest
+     * class. Counts use the stratified estimator sum(N_h * p_h) with variance
+     * sum(N_h^2 * (1 - n_h/N_h) * p_h(1 - p_h) / (n_h - 1)).
+     * Only the sampled failures are listed in the result.
+     */
+    FailureAnalysisResult estimate(TestResult testResult, int sampleSize, Random random) {
+        FailureAnalysisResult result = new FailureAnalysisResult();
+        result.setTotalTests(testResult.getTotalCount());
+        result.setPassedTests(testResult.getPassCount());
+        result.setFailedTests(testResult.getFailCount());
+        result.setSkippedTests(testResult.getSkipCount());
+
+        List<CaseResult> failedTests = testResult.getFailedTests();
+        int total = failedTests.size();
+        if (total == 0) {
+            return result;
+        }
+
+        int budget = Math.max(1, Math.min(sampleSize, total));
+        Map<String, List<CaseResult>> byClass = new LinkedHashMap<>();
+        for (CaseResult failedTest : failedTests) {
+            byClass.computeIfAbsent(failedTest.getClassName(), k -> new ArrayList<>()).add(failedTest);
+        }
+        List<List<CaseResult>> strata = new ArrayList<>();
+        List<CaseResult> pooled = new ArrayList<>();
+        for (List<CaseResult> cases : byClass.values()) {
+            if ((long) cases.size() * budget < 2L * total) {
+                pooled.addAll(cases);
+            } else {
+                strata.add(cases);
+            }
+        }
+        if ((long) pooled.size() * budget >= 2L * total || strata.isEmpty()) {
+            if (!pooled.isEmpty()) {
+                strata.add(pooled);
+            }
+        } else if (!pooled.isEmpty()) {
+            List<CaseResult> smallest = Collections.min(strata, Comparator.comparingInt(List::size));
+            smallest.addAll(pooled);
+        }
+
+        int[] allocation = allocate(strata, total, budget);
+        int categories = FailureCategory.count();
+        double[] estimates = new double[categories];
+        double[] variances = new double[categories];
+        int sampled = 0;
+        for (int h = 0; h < strata.size(); h++) {
+            List<CaseResult> stratum = strata.get(h);
+            int size = stratum.size();
+            int n = allocation[h];
+
+            // Partial Fisher-Yates: the first n entries become a uniform sample
+            int[] hits = new int[categories];
+            for (int i = 0; i < n; i++) {
+                Collections.swap(stratum, i, i + random.nextInt(size - i));
+                CaseResult failedTest = stratum.get(i);
+                CharSequence fullError = failureText.reset(failedTest.getErrorDetails(), failedTest.getErrorStackTrace());
+                FailureCategory category = categorizeFailure(fullError);
+                result.addFailure(category, failedTest);
+                if (category == FailureCategory.API_FAILURES) {
+                    extractApiEndpoints(fullError, result);
+                }
+                hits[category.ordinal()]++;
+            }
+            sampled += n;
+
+            double finiteCorrection = 1 - (double) n / size;
+            for (int c = 0; c < categories; c++) {
+                double p = (double) hits[c] / n;
+                estimates[c] += size * p;
+                if (n > 1) {
+                    variances[c] += (double) size * size * finiteCorrection * p * (1 - p) / (n - 1);
                 }
             }
         }
-        return FailureCategory.UNKNOWN;
+
+        result.setSampledFailures(sampled);
+        for (int c = 0; c < categories; c++) {
+            if (estimates[c] <= 0) {
+                continue;
+            }
+            double margin = Z_95 * Math.sqrt(variances[c]);
+            result.setEstimate(FailureCategory.byOrdinal(c), new FailureAnalysisResult.Estimate(
+                (int) Math.round(estimates[c]),
+                (int) Math.max(0, Math.floor(estimates[c] - margin)),
+                (int) Math.min(total, Math.ceil(estimates[c] + margin))));
+        }
+        return result;
     }
 
     /**
-     * Extract API endpoints from error messages
+     * Split a sample over strata in proportion to their sizes, by largest remainder, so the
+     * shares add up to the budget. Every stratum gets at least two samples when the strata
+     * were formed as {@link #estimate(TestResult, int, Random)} does, and never more than it holds.
      */
-    private List<String> extractApiEndpoints(String errorText) {
-        List<String> endpoints = new ArrayList<>();
-        Pattern[] apiPatterns = {
-            Pattern.compile("/(api|v\\d+)/[\\w\\-/]+"),
-            Pattern.compile("endpoint[:\\s]+(/[\\w\\-/]+)", Pattern.CASE_INSENSITIVE),
-            Pattern.compile("request.*to[:\\s]+(/[\\w\\-/]+)", Pattern.CASE_INSENSITIVE)
-        };
+    private static int[] allocate(List<List<CaseResult>> strata, int total, int budget) {
+        int[] allocation = new int[strata.size()];
+        double[] remainders = new double[strata.size()];
+        int allocated = 0;
+        for (int h = 0; h < strata.size(); h++) {
+            double share = (double) budget * strata.get(h).size() / total;
+            allocation[h] = (int) share;
+            remainders[h] = share - allocation[h];
+            allocated += allocation[h];
+        }
+        Integer[] order = new Integer[strata.size()];
+        for (int h = 0; h < order.length; h++) {
+            order[h] = h;
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(remainders[b], remainders[a]));
+        for (int i = 0; allocated < budget && i < order.length; i++) {
+            int h = order[i];
+            if (allocation[h] < strata.get(h).size()) {
+                allocation[h]++;
+                allocated++;
+            }
+        }
+        return allocation;
+    }
+
+    /**
+     * Categorize a failure based on error message
+     */
+    FailureCategory categorizeFailure(CharSequence errorText) {
+        for (int i = 0; i < categoryMatchers.length; i++) {
+            if (categoryMatchers[i].reset(errorText).find()) {
+                return matcherCategories[i];
+            }
+        }
+        return FailureCategory.UNKNOWN;
+    }
 
-        for (Pattern pattern : apiPatterns) {
-            java.util.regex.Matcher matcher = pattern.matcher(errorText);
+    /**
+     * Extract API endpoints from error messages straight into the result
+     */
+    void extractApiEndpoints(CharSequence errorText, FailureAnalysisResult result) {
+        for (Matcher matcher : apiMatchers) {
+            matcher.reset(errorText);
             while (matcher.find()) {
                 String endpoint = matcher.group(matcher.groupCount() > 0 ? 1 : 0);
                 if (endpoint != null && endpoint.startsWith("/")) {
-                    endpoints.add(endpoint);
+                    result.addFailedApi(endpoint);
                 }
             }
         }
-
-        return endpoints;
     }
 
     /**
@@ -203,4 +496,55 @@ public class FailureAnalyzer {
 
         return aggregated;
     }
+
+    /**
+     * What the differential analysis needs from a previous result: each failing test's
+     * fingerprint and category. Small enough to ship to an agent instead of the full result.
+     */
+    static final class Baseline implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        // Categorizations that may be reused when the fingerprint still matches
+        private final HashMap<String, String> fingerprints = new HashMap<>();
+        private final HashMap<String, FailureCategory> categories = new HashMap<>();
+        // Tests failing in the previous build, null when there is none to compare with
+        private HashSet<String> previousFailures;
+        // Tests categorized by this build's live analysis rather than the previous build
+        private final HashSet<String> liveTests = new HashSet<>();
+
+        static Baseline of(FailureAnalysisResult previous) {
+            Baseline baseline = new Baseline();
+            baseline.add(previous);
+            baseline.previousFailures = new HashSet<>(baseline.fingerprints.keySet());
+            return baseline;
+        }
+
+        /**
+         * Baseline from the previous build's result and this build's live result, either of
+         * which may be null; the live categorizations win as they come from this very build
+         */
+        static Baseline of(FailureAnalysisResult previous, FailureAnalysisResult live) {
+            if (live == null) {
+                return previous != null ? of(previous) : null;
+            }
+            Baseline baseline = previous != null ? of(previous) : new Baseline();
+            baseline.add(live);
+            for (List<FailureAnalysisResult.TestFailureInfo> failures : live.getFailuresByCategory().values()) {
+                for (FailureAnalysisResult.TestFailureInfo failure : failures) {
+                    baseline.liveTests.add(failure.getTestId());
+                }
+            }
+            return baseline;
+        }
+
+        private void add(FailureAnalysisResult result) {
+            for (Map.Entry<FailureCategory, List<FailureAnalysisResult.TestFailureInfo>> entry :
+                 result.getFailuresByCategory().entrySet()) {
+                for (FailureAnalysisResult.TestFailureInfo failure : entry.getValue()) {
+                    fingerprints.put(failure.getTestId(), failure.getFingerprint());
+                    categories.put(failure.getTestId(), entry.getKey());
+                }
+            }
+        }
+    }
 }
@@ -16,6 +16,8 @@ public enum FailureCategory {
     ASSERTION_FAILURES("Assertion Failures"),
     UNKNOWN("Unknown");
 
+    private static final FailureCategory[] VALUES = values();
+
     private final String displayName;
 
     FailureCategory(String displayName) {
@@ -25,4 +27,18 @@ public enum FailureCategory {
     public String getDisplayName() {
         return displayName;
     }
+
+    /**
+     * Number of categories, for ordinal-indexed counters
+     */
+    static int count() {
+        return VALUES.length;
+    }
+
+    /**
+     * Category for an ordinal, without cloning values() on every call
+     */
+    static FailureCategory byOrdinal(int ordinal) {
+        return VALUES[ordinal];
+    }
 }
@@ -0,0 +1,421 @@
+package io.jenkins.plugins.alfred;
+
+import hudson.Extension;
+import hudson.ExtensionList;
+import hudson.init.Terminator;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.TaskListener;
+import jenkins.model.Jenkins;
+import jenkins.util.SystemProperties;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Multinomial naive Bayes over feature-hashed tokens, used to place failures that no
+ * rule in {@link FailureAnalyzer} matched.
+ *
+ * Features are the words of the error message and of the top stack frames, hashed into
+ * a fixed number of buckets, so the model is one float array of categories x buckets
+ * regardless of how much it has seen. It learns online from rule-categorized failures
+ * and, with more weight, from user corrections. A failure is only moved out of
+ * {@link FailureCategory#UNKNOWN} when the model has enough examples and the winning
+ * category's posterior clears the confidence threshold.
+ *
+ * Enabled with -Dio.jenkins.plugins.alfred.FailureClassifier.enabled=true. The model is
+ * stored sparsely in JENKINS_HOME/alfred/classifier.bin.
+ */
+@Extension
+public class FailureClassifier {
+    private static final Logger LOGGER = Logger.getLogger(FailureClassifier.class.getName());
+
+    private static final String PREFIX = FailureClassifier.class.getName();
+    static final boolean ENABLED = SystemProperties.getBoolean(PREFIX + ".enabled");
+    private static final double MIN_CONFIDENCE = Double.parseDouble(
+        SystemProperties.getString(PREFIX + ".minConfidence", "0.8"));
+    private static final int MIN_EXAMPLES = SystemProperties.getInteger(PREFIX + ".minExamples", 50);
+
+    private static final int BUCKET_BITS = 16;
+    private static final int BUCKETS = 1 << BUCKET_BITS;
+    private static final int MAX_MESSAGE_CHARS = 2000;
+    private static final int TOP_FRAMES = 3;
+    private static final int MAX_FEATURES = 512;
+    private static final float CORRECTION_WEIGHT = 5f;
+    private static final double ALPHA = 1.0;
+
+    private static final int MAGIC = 0x414C4643; // "ALFC"
+    private static final int VERSION = 1;
+
+    // counts[category * BUCKETS + bucket]: weighted occurrences of the bucket in that category.
+    // Allocated on first use so a disabled classifier costs nothing.
+    private float[] counts;
+    private final double[] tokensPerCategory = new double[FailureCategory.count()];
+    private final double[] examplesPerCategory = new double[FailureCategory.count()];
+    private double totalExamples;
+
+    private final int[] features = new int[MAX_FEATURES];
+    private boolean loaded;
+    private boolean dirty;
+
+    public static FailureClassifier get() {
+        return ExtensionList.lookupSingleton(FailureClassifier.class);
+    }
+
+    File getFile() {
+        return new File(Jenkins.get().getRootDir(), "alfred/classifier.bin");
+    }
+
+    /**
+     * Classify the UNKNOWN failures of a fresh result, then learn from the ones the rules
+     * categorized. Failures carried over from the previous build are not learned again.
+     */
+    public synchronized void apply(FailureAnalysisResult result) {
+        classifyUnknown(result);
+
+        Set<String> skip = new HashSet<>(result.getStillFailing());
+        skip.addAll(result.getPredictedTests());
+        for (Map.Entry<FailureCategory, List<FailureAnalysisResult.TestFailureInfo>> entry :
+             result.getFailuresByCategory().entrySet()) {
+            if (entry.getKey() == FailureCategory.UNKNOWN) {
+                continue;
+            }
+            for (FailureAnalysisResult.TestFailureInfo failure : entry.getValue()) {
+                if (!skip.contains(failure.getTestId())) {
+                    learn(entry.getKey(), failure.getErrorDetails(), failure.getStackTrace(), 1f);
+                }
+            }
+        }
+    }
+
+    /**
+     * Move UNKNOWN failures the model is confident about into their predicted category
+     */
+    public synchronized void classifyUnknown(FailureAnalysisResult result) {
+        ensureLoaded();
+        List<FailureAnalysisResult.TestFailureInfo> unknown =
+            result.getFailuresByCategory().get(FailureCategory.UNKNOWN);
+        if (totalExamples < MIN_EXAMPLES || unknown.isEmpty()) {
+            return;
+        }
+        for (FailureAnalysisResult.TestFailureInfo failure : new ArrayList<>(unknown)) {
+            FailureCategory predicted = classify(failure.getErrorDetails(), failure.getStackTrace());
+            if (predicted != null) {
+                result.moveFailure(failure, FailureCategory.UNKNOWN, predicted);
+                result.addPredicted(failure.getTestId());
+            }
+        }
+    }
+
+    /**
+     * Learn from a user correction, weighted above rule labels, and take back what was learned
+     * from the label it replaces in {@code before}: once for a rule's label, with the
+     * correction weight for an earlier correction, and nothing for a prediction
+     */
+    public synchronized void correct(FailureAnalysisResult before, FailureAnalysisResult.TestFailureInfo failure,
+            FailureCategory category) {
+        ensureLoaded();
+        String testId = failure.getTestId();
+        if (!before.getPredictedTests().contains(testId)) {
+            float learned = before.getCorrectedTests().contains(testId) ? CORRECTION_WEIGHT : 1f;
+            learn(before.categoryOf(failure), failure.getErrorDetails(), failure.getStackTrace(), -learned);
+        }
+        learn(category, failure.getErrorDetails(), failure.getStackTrace(), CORRECTION_WEIGHT);
+    }
+
+    /**
+     * Most likely category, or null if the model is not confident enough
+     */
+    synchronized FailureCategory classify(String errorDetails, String stackTrace) {
+        ensureLoaded();
+        int featureCount = extract(errorDetails, stackTrace);
+        if (featureCount == 0 || totalExamples == 0) {
+            return null;
+        }
+
+        double[] scores = new double[FailureCategory.count()];
+        double best = Double.NEGATIVE_INFINITY;
+        int bestCategory = -1;
+        for (int c = 0; c < scores.length; c++) {
+            if (examplesPerCategory[c] == 0) {
+                scores[c] = Double.NEGATIVE_INFINITY;
+                continue;
+            }
+            double denominator = Math.log(tokensPerCategory[c] + ALPHA * BUCKETS);
+            double score = Math.log(examplesPerCategory[c] / totalExamples);
+            int base = c * BUCKETS;
+            for (int f = 0; f < featureCount; f++) {
+                score += Math.log(counts[base + features[f]] + ALPHA) - denominator;
+            }
+            scores[c] = score;
+            if (score > best) {
+                best = score;
+                bestCategory = c;
+            }
+        }
+        if (bestCategory < 0) {
+            return null;
+        }
+
+        // Posterior of the winner, computed stably relative to the best score
+        double sum = 0;
+        for (double score : scores) {
+            if (score != Double.NEGATIVE_INFINITY) {
+                sum += Math.exp(score - best);
+            }
+        }
+        return 1.0 / sum >= MIN_CONFIDENCE ? FailureCategory.byOrdinal(bestCategory) : null;
+    }
+
+    /**
+     * Add an example with a weight; a negative weight removes one, never taking counts below
+     * zero, as the example may have been learned while the classifier was disabled
+     */
+    private void learn(FailureCategory category, String errorDetails, String stackTrace, float weight) {
+        if (category == null || category == FailureCategory.UNKNOWN) {
+            return;
+        }
+        int featureCount = extract(errorDetails, stackTrace);
+        if (featureCount == 0) {
+            return;
+        }
+        int c = category.ordinal();
+        int base = c * BUCKETS;
+        for (int f = 0; f < featureCount; f++) {
+            counts[base + features[f]] = Math.max(0f, counts[base + features[f]] + weight);
+        }
+        tokensPerCategory[c] = Math.max(0, tokensPerCategory[c] + (double) featureCount * weight);
+        double examples = Math.max(0, examplesPerCategory[c] + weight);
+        totalExamples += examples - examplesPerCategory[c];
+        examplesPerCategory[c] = examples;
+        dirty = true;
+    }
+
+    /**
+     * Hash the words of the message and of the top stack frames into {@link #features}.
+     * Words are runs of letters, lowercased; digits and punctuation separate them.
+     */
+    private int extract(String errorDetails, String stackTrace) {
+        int count = 0;
+        if (errorDetails != null) {
+            count = hashWords(errorDetails, 0, Math.min(errorDetails.length(), MAX_MESSAGE_CHARS), 0, count);
+        }
+        if (stackTrace != null) {
+            int frames = 0;
+            int pos = 0;
+            int length = stackTrace.length();
+            while (pos < length && frames < TOP_FRAMES && count < MAX_FEATURES) {
+                int lineEnd = stackTrace.indexOf('\n', pos);
+                if (lineEnd < 0) {
+                    lineEnd = length;
+                }
+                int start = pos;
+                while (start < lineEnd && Character.isWhitespace(stackTrace.charAt(start))) {
+                    start++;
+                }
+                if (stackTrace.startsWith("at ", start)) {
+                    // Frame words get their own hash space so "timeout" in a frame and in a message differ
+                    count = hashWords(stackTrace, start + 3, lineEnd, 0x9E3779B9, count);
+                    frames++;
+                }
+                pos = lineEnd + 1;
+            }
+        }
+        return count;
+    }
+
+    private int hashWords(String text, int from, int to, int seed, int count) {
+        int hash = seed;
+        int wordLength = 0;
+        for (int i = from; i <= to && count < MAX_FEATURES; i++) {
+            char ch = i < to ? text.charAt(i) : ' ';
+            if (Character.isLetter(ch)) {
+                hash = hash * 31 + Character.toLowerCase(ch);
+                wordLength++;
+            } else {
+                if (wordLength >= 2) {
+                    features[count++] = bucket(hash);
+                }
+                hash = seed;
+                wordLength = 0;
+            }
+        }
+        return count;
+    }
+
+    private static int bucket(int hash) {
+        // Murmur3 finalizer spreads String-style hashes over the low bits
+        hash ^= hash >>> 16;
+        hash *= 0x85EBCA6B;
+        hash ^= hash >>> 13;
+        hash *= 0xC2B2AE35;
+        hash ^= hash >>> 16;
+        return hash & (BUCKETS - 1);
+    }
+
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        counts = new float[FailureCategory.count() * BUCKETS];
+        File file = getFile();
+        if (!file.isFile()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file.toPath())))) {
+            read(in);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Discarding unreadable Alfred classifier model " + file, e);
+            Arrays.fill(counts, 0f);
+            Arrays.fill(tokensPerCategory, 0);
+            Arrays.fill(examplesPerCategory, 0);
+            totalExamples = 0;
+        }
+    }
+
+    /**
+     * Per category: name, example and token totals, then the non-zero buckets as
+     * (delta-encoded index, count) pairs. Categories are stored by name, so reordering
+     * or removing enum constants does not misattribute counts.
+     */
+    private void read(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC || in.readUnsignedByte() != VERSION) {
+            throw new IOException("Not an Alfred classifier model");
+        }
+        if (in.readUnsignedByte() != BUCKET_BITS) {
+            throw new IOException("Classifier model uses a different bucket count");
+        }
+        int categories = FailureAnalysisCodec.readVarInt(in);
+        for (int i = 0; i < categories; i++) {
+            String name = FailureAnalysisCodec.readString(in);
+            double examples = in.readDouble();
+            double tokens = in.readDouble();
+            int nonZero = FailureAnalysisCodec.readVarInt(in);
+
+            FailureCategory category = null;
+            try {
+                category = FailureCategory.valueOf(name);
+            } catch (IllegalArgumentException e) {
+                // Category no longer exists; skip its buckets
+            }
+            int base = category != null ? category.ordinal() * BUCKETS : -1;
+            int bucket = 0;
+            for (int b = 0; b < nonZero; b++) {
+                bucket += FailureAnalysisCodec.readVarInt(in);
+                float count = in.readFloat();
+                if (base >= 0 && bucket < BUCKETS) {
+                    counts[base + bucket] = count;
+                }
+            }
+            if (category != null) {
+                examplesPerCategory[category.ordinal()] = examples;
+                tokensPerCategory[category.ordinal()] = tokens;
+                totalExamples += examples;
+            }
+        }
+    }
+
+    /**
+     * Write the model if it changed since the last save
+     */
+    synchronized void save() {
+        if (!dirty) {
+            return;
+        }
+        File file = getFile();
+        File tmp = new File(file.getPath() + ".tmp");
+        try {
+            Files.createDirectories(file.getParentFile().toPath());
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp.toPath())))) {
+                out.writeInt(MAGIC);
+                out.writeByte(VERSION);
+                out.writeByte(BUCKET_BITS);
+
+                int categories = 0;
+                for (double examples : examplesPerCategory) {
+                    if (examples > 0) {
+                        categories++;
+                    }
+                }
+                FailureAnalysisCodec.writeVarInt(out, categories);
+                for (int c = 0; c < examplesPerCategory.length; c++) {
+                    if (examplesPerCategory[c] == 0) {
+                        continue;
+                    }
+                    FailureAnalysisCodec.writeString(out, FailureCategory.byOrdinal(c).name());
+                    out.writeDouble(examplesPerCategory[c]);
+                    out.writeDouble(tokensPerCategory[c]);
+
+                    int base = c * BUCKETS;
+                    int nonZero = 0;
+                    for (int b = 0; b < BUCKETS; b++) {
+                        if (counts[base + b] != 0f) {
+                            nonZero++;
+                        }
+                    }
+                    FailureAnalysisCodec.writeVarInt(out, nonZero);
+                    int previous = 0;
+                    for (int b = 0; b < BUCKETS; b++) {
+                        if (counts[base + b] != 0f) {
+                            FailureAnalysisCodec.writeVarInt(out, b - previous);
+                            out.writeFloat(counts[base + b]);
+                            previous = b;
+                        }
+                    }
+                }
+            }
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            dirty = false;
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to save Alfred classifier model", e);
+        }
+    }
+
+    /**
+     * Persist the model when Jenkins shuts down
+     */
+    @Terminator
+    public static void saveOnShutdown() {
+        FailureClassifier classifier = ExtensionList.lookup(FailureClassifier.class).get(FailureClassifier.class);
+        if (classifier != null) {
+            classifier.save();
+        }
+    }
+
+    /**
+     * Saves the model periodically so a crash loses at most a few minutes of learning
+     */
+    @Extension
+    public static class Persister extends AsyncPeriodicWork {
+        public Persister() {
+            super("Alfred classifier persistence");
+        }
+
+        @Override
+        public long getRecurrencePeriod() {
+            return TimeUnit.MINUTES.toMillis(5);
+        }
+
+        @Override
+        protected void execute(TaskListener listener) {
+            if (ENABLED) {
+                get().save();
+            }
+        }
+    }
+}
@@ -0,0 +1,320 @@
+package io.jenkins.plugins.alfred;
+
+import hudson.Extension;
+import hudson.ExtensionList;
+import hudson.model.Run;
+import jenkins.util.SystemProperties;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * Correlates failures across jobs into incidents. Each completed build feeds its
+ * failure fingerprints into an in-memory index; a fingerprint seen in several jobs
+ * within the sliding window is reported as one incident instead of N failures.
+ * Entries older than the window are evicted, so nothing ever re-scans old builds.
+ */
+@Extension
+public class FailureCorrelator {
+
+    private static final long WINDOW_MILLIS = TimeUnit.MINUTES.toMillis(
+        SystemProperties.getLong(FailureCorrelator.class.getName() + ".windowMinutes", 60L));
+    private static final int MAX_INCIDENTS = SystemProperties.getInteger(
+        FailureCorrelator.class.getName() + ".maxIncidents", 5000);
+    private static final long EVICTION_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+    private final Map<String, Incident> incidents = new HashMap<>();
+    // Fingerprints each job contributed on its latest build, so fixed jobs leave their incidents
+    private final Map<String, Set<String>> fingerprintsByJob = new HashMap<>();
+    private long lastEviction = 0;
+
+    public static FailureCorrelator get() {
+        return ExtensionList.lookupSingleton(FailureCorrelator.class);
+    }
+
+    /**
+     * Record the failures of a completed build
+     */
+    public void record(Run<?, ?> build, FailureAnalysisResult result) {
+        record(build.getParent().getFullName(), build.getNumber(), System.currentTimeMillis(), result);
+    }
+
+    synchronized void record(String jobName, int buildNumber, long now, FailureAnalysisResult result) {
+        // Count failures per fingerprint within this build
+        Map<String, Integer> counts = new HashMap<>();
+        Map<String, FailureAnalysisResult.TestFailureInfo> samples = new HashMap<>();
+        Map<String, FailureCategory> categories = new HashMap<>();
+        for (Map.Entry<FailureCategory, List<FailureAnalysisResult.TestFailureInfo>> entry :
+             result.getFailuresByCategory().entrySet()) {
+            for (FailureAnalysisResult.TestFailureInfo failure : entry.getValue()) {
+                String fingerprint = failure.getFingerprint();
+                counts.merge(fingerprint, 1, Integer::sum);
+                if (samples.putIfAbsent(fingerprint, failure) == null) {
+                    categories.put(fingerprint, entry.getKey());
+                }
+            }
+        }
+
+        // Drop this job from incidents it no longer contributes to
+        Set<String> previous = fingerprintsByJob.remove(jobName);
+        if (previous != null) {
+            for (String fingerprint : previous) {
+                if (!counts.containsKey(fingerprint)) {
+                    Incident incident = incidents.get(fingerprint);
+                    if (incident != null && incident.removeJob(jobName)) {
+                        incidents.remove(fingerprint);
+                    }
+                }
+            }
+        }
+
+        for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+            String fingerprint = entry.getKey();
+            Incident incident = incidents.computeIfAbsent(fingerprint,
+                fp -> new Incident(fp, categories.get(fp), now));
+            incident.addHit(jobName, buildNumber, now, entry.getValue(), samples.get(fingerprint).getShortError());
+        }
+        if (!counts.isEmpty()) {
+            fingerprintsByJob.put(jobName, new HashSet<>(counts.keySet()));
+        }
+
+        if (now - lastEviction >= EVICTION_INTERVAL_MILLIS || incidents.size() > MAX_INCIDENTS) {
+            evict(now);
+        }
+    }
+
+    /**
+     * Incidents affecting at least minJobs jobs within the window, most widespread first
+     */
+    public List<Incident> getIncidents(int minJobs) {
+        return getIncidents(minJobs, jobName -> true, System.currentTimeMillis());
+    }
+
+    /**
+     * Like {@link #getIncidents(int)}, counting only the jobs that pass {@code visibleJob}:
+     * other jobs are left out of every figure, so an incident only reaches minJobs
+     * through jobs the caller may see
+     */
+    public List<Incident> getIncidents(int minJobs, Predicate<String> visibleJob) {
+        return getIncidents(minJobs, visibleJob, System.currentTimeMillis());
+    }
+
+    synchronized List<Incident> getIncidents(int minJobs, Predicate<String> visibleJob, long now) {
+        evict(now);
+        List<Incident> matching = new ArrayList<>();
+        for (Incident incident : incidents.values()) {
+            Incident visible = incident.snapshot(visibleJob);
+            if (visible.getAffectedJobCount() >= minJobs && visible.getAffectedJobCount() > 0) {
+                matching.add(visible);
+            }
+        }
+        matching.sort(Comparator.comparingInt(Incident::getAffectedJobCount).reversed()
+            .thenComparingLong(Incident::getFirstSeen));
+        return matching;
+    }
+
+    private void evict(long now) {
+        lastEviction = now;
+        long cutoff = now - WINDOW_MILLIS;
+
+        Iterator<Incident> it = incidents.values().iterator();
+        while (it.hasNext()) {
+            Incident incident = it.next();
+            for (String jobName : incident.evictBefore(cutoff)) {
+                Set<String> fingerprints = fingerprintsByJob.get(jobName);
+                if (fingerprints != null) {
+                    fingerprints.remove(incident.getFingerprint());
+                    if (fingerprints.isEmpty()) {
+                        fingerprintsByJob.remove(jobName);
+                    }
+                }
+            }
+            if (incident.hits.isEmpty()) {
+                it.remove();
+            }
+        }
+
+        // Keep memory bounded when an outage produces many distinct fingerprints
+        if (incidents.size() > MAX_INCIDENTS) {
+            List<Incident> byAge = new ArrayList<>(incidents.values());
+            byAge.sort(Comparator.comparingLong(Incident::getLastSeen));
+            for (int i = 0; i < byAge.size() - MAX_INCIDENTS; i++) {
+                Incident incident = byAge.get(i);
+                incidents.remove(incident.getFingerprint());
+                for (String jobName : incident.hits.keySet()) {
+                    Set<String> fingerprints = fingerprintsByJob.get(jobName);
+                    if (fingerprints != null) {
+                        fingerprints.remove(incident.getFingerprint());
+                        if (fingerprints.isEmpty()) {
+                            fingerprintsByJob.remove(jobName);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * A shared root cause and the jobs it currently affects
+     */
+    public static class Incident {
+        private final String fingerprint;
+        private final FailureCategory category;
+        private long firstSeen;
+        private long lastSeen;
+        // In the order jobs joined, so the first hit is the oldest
+        private final Map<String, JobHit> hits;
+
+        Incident(String fingerprint, FailureCategory category, long firstSeen) {
+            this(fingerprint, category, firstSeen, firstSeen, new LinkedHashMap<>());
+        }
+
+        private Incident(String fingerprint, FailureCategory category,
+                long firstSeen, long lastSeen, Map<String, JobHit> hits) {
+            this.fingerprint = fingerprint;
+            this.category = category;
+            this.firstSeen = firstSeen;
+            this.lastSeen = lastSeen;
+            this.hits = hits;
+        }
+
+        void addHit(String jobName, int buildNumber, long time, int failures, String sampleError) {
+            JobHit existing = hits.get(jobName);
+            long jobFirstSeen = existing != null ? existing.firstSeen : time;
+            hits.put(jobName, new JobHit(jobName, buildNumber, jobFirstSeen, time, failures, sampleError));
+            lastSeen = Math.max(lastSeen, time);
+        }
+
+        /**
+         * @return true if no jobs are left
+         */
+        boolean removeJob(String jobName) {
+            hits.remove(jobName);
+            return hits.isEmpty();
+        }
+
+        /**
+         * Drop jobs last seen before the cutoff and return their names
+         */
+        List<String> evictBefore(long cutoff) {
+            List<String> evicted = new ArrayList<>();
+            Iterator<JobHit> it = hits.values().iterator();
+            while (it.hasNext()) {
+                JobHit hit = it.next();
+                if (hit.lastSeen < cutoff) {
+                    evicted.add(hit.jobName);
+                    it.remove();
+                }
+            }
+            if (!evicted.isEmpty() && !hits.isEmpty()) {
+                firstSeen = Long.MAX_VALUE;
+                for (JobHit hit : hits.values()) {
+                    firstSeen = Math.min(firstSeen, hit.firstSeen);
+                }
+            }
+            return evicted;
+        }
+
+        /**
+         * Copy holding only the hits of jobs that pass the filter, with times taken from those
+         */
+        Incident snapshot(Predicate<String> visibleJob) {
+            Map<String, JobHit> visible = new LinkedHashMap<>();
+            long visibleFirstSeen = Long.MAX_VALUE;
+            long visibleLastSeen = Long.MIN_VALUE;
+            for (JobHit hit : hits.values()) {
+                if (visibleJob.test(hit.jobName)) {
+                    visible.put(hit.jobName, hit);
+                    visibleFirstSeen = Math.min(visibleFirstSeen, hit.firstSeen);
+                    visibleLastSeen = Math.max(visibleLastSeen, hit.lastSeen);
+                }
+            }
+            return visible.isEmpty()
+                ? new Incident(fingerprint, category, firstSeen, lastSeen, visible)
+                : new Incident(fingerprint, category, visibleFirstSeen, visibleLastSeen, visible);
+        }
+
+        public String getFingerprint() {
+            return fingerprint;
+        }
+
+        public FailureCategory getCategory() {
+            return category;
+        }
+
+        /**
+         * Short error of the oldest job still in the incident, or null if it has none
+         */
+        public String getSampleError() {
+            Iterator<JobHit> it = hits.values().iterator();
+            return it.hasNext() ? it.next().sampleError : null;
+        }
+
+        public long getFirstSeen() {
+            return firstSeen;
+        }
+
+        public long getLastSeen() {
+            return lastSeen;
+        }
+
+        public int getAffectedJobCount() {
+            return hits.size();
+        }
+
+        public int getTotalFailures() {
+            int total = 0;
+            for (JobHit hit : hits.values()) {
+                total += hit.failures;
+            }
+            return total;
+        }
+
+        public Collection<JobHit> getAffectedJobs() {
+            return Collections.unmodifiableCollection(hits.values());
+        }
+    }
+
+    /**
+     * One job's contribution to an incident
+     */
+    public static class JobHit {
+        private final String jobName;
+        private final int buildNumber;
+        private final long firstSeen;
+        private final long lastSeen;
+        private final int failures;
+        // Short error of one of the job's failures with this fingerprint
+        private final String sampleError;
+
+        JobHit(String jobName, int buildNumber, long firstSeen, long lastSeen, int failures, String sampleError) {
+            this.jobName = jobName;
+            this.buildNumber = buildNumber;
+            this.firstSeen = firstSeen;
+            this.lastSeen = lastSeen;
+            this.failures = failures;
+            this.sampleError = sampleError;
+        }
+
+        public String getJobName() {
+            return jobName;
+        }
+
+        public int getBuildNumber() {
+            return buildNumber;
+        }
+
+        public long getFirstSeen() {
+            return firstSeen;
+        }
+
+        public long getLastSeen() {
+            return lastSeen;
+        }
+
+        public int getFailures() {
+            return failures;
+        }
+    }
+}
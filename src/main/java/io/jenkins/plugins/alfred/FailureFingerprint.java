@@ -0,0 +1,75 @@
+package io.jenkins.plugins.alfred;
+
+/**
+ * Computes a stable fingerprint for a failure so the same root cause can be
+ * recognised across tests, builds and jobs. The fingerprint is the exception
+ * type plus the first line of the message, with digits masked and whitespace
+ * collapsed, so ports, ids and timestamps do not split one cause into many.
+ */
+public final class FailureFingerprint {
+
+    private static final int MAX_LENGTH = 160;
+
+    private FailureFingerprint() {
+    }
+
+    public static String of(String errorDetails, String stackTrace) {
+        StringBuilder sb = new StringBuilder(MAX_LENGTH);
+
+        // Exception type is the text before ':' on the first stack trace line
+        if (stackTrace != null) {
+            int lineEnd = lineEnd(stackTrace, 0);
+            int colon = stackTrace.indexOf(':');
+            int typeEnd = colon >= 0 && colon < lineEnd ? colon : lineEnd;
+            appendNormalized(sb, stackTrace, 0, typeEnd);
+        }
+
+        sb.append('|');
+
+        String message = errorDetails;
+        if (message == null || message.isEmpty()) {
+            // Fall back to the rest of the first stack trace line
+            message = stackTrace;
+        }
+        if (message != null) {
+            appendNormalized(sb, message, 0, lineEnd(message, 0));
+        }
+
+        return sb.toString();
+    }
+
+    private static int lineEnd(String text, int from) {
+        int end = text.indexOf('\n', from);
+        return end < 0 ? text.length() : end;
+    }
+
+    private static void appendNormalized(StringBuilder sb, String text, int start, int end) {
+        boolean lastWasSpace = true;
+        boolean lastWasDigit = false;
+        for (int i = start; i < end && sb.length() < MAX_LENGTH; i++) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c)) {
+                if (!lastWasSpace) {
+                    sb.append(' ');
+                }
+                lastWasSpace = true;
+                lastWasDigit = false;
+            } else if (Character.isDigit(c)) {
+                if (!lastWasDigit) {
+                    sb.append('#');
+                }
+                lastWasSpace = false;
+                lastWasDigit = true;
+            } else {
+                sb.append(c);
+                lastWasSpace = false;
+                lastWasDigit = false;
+            }
+        }
+        // Trim a trailing collapsed space
+        int last = sb.length() - 1;
+        if (last >= 0 && sb.charAt(last) == ' ') {
+            sb.setLength(last);
+        }
+    }
+}
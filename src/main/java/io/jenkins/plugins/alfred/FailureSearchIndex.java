@@ -0,0 +1,584 @@
+package io.jenkins.plugins.alfred;
+
+import hudson.Extension;
+import hudson.ExtensionList;
+import hudson.init.Terminator;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import jenkins.model.Jenkins;
+import jenkins.util.SystemProperties;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Controller-local inverted index over historical failures.
+ *
+ * Completed builds are added to an in-memory buffer by {@link AlfredRunListener}; the
+ * buffer is flushed into immutable, memory-mapped {@link SearchSegment}s under
+ * JENKINS_HOME/alfred/index, so queries touch a handful of sorted posting lists instead
+ * of build directories.
+ *
+ * A background task keeps the number of segments logarithmic in the number of documents:
+ * segments fall into size tiers growing by {@link #MERGE_FACTOR}, and a run of that many
+ * adjacent segments of one tier is merged into one of the next tier, so each document is
+ * rewritten once per tier rather than on every merge. Searches skip documents older than
+ * the retention period; merges drop them, and segments holding only such documents are
+ * deleted.
+ *
+ * The live segments are listed, in order, in a manifest that is atomically rewritten
+ * whenever a flush or merge changes them; that rewrite is the commit point. On start only
+ * the listed segments are opened, so a crash between writing a merged segment and
+ * deleting its sources cannot surface the same failures twice: whichever side the
+ * manifest does not list is deleted.
+ */
+@Extension
+public class FailureSearchIndex {
+    private static final Logger LOGGER = Logger.getLogger(FailureSearchIndex.class.getName());
+
+    private static final int FLUSH_THRESHOLD = SystemProperties.getInteger(
+        FailureSearchIndex.class.getName() + ".flushThreshold", 10000);
+    private static final int MERGE_FACTOR = Math.max(2, SystemProperties.getInteger(
+        FailureSearchIndex.class.getName() + ".mergeFactor", 4));
+    private static final long RETENTION_MILLIS = TimeUnit.DAYS.toMillis(
+        SystemProperties.getInteger(FailureSearchIndex.class.getName() + ".retentionDays", 30));
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".idx";
+    private static final String MANIFEST = "segments.list";
+    private static final String TMP_SUFFIX = ".tmp";
+
+    // Immutable snapshot, oldest segment first; replaced under the instance lock, and
+    // searches acquire the segments they read under that lock too
+    private volatile List<SearchSegment> segments = Collections.emptyList();
+    private List<SearchDocument> bufferDocs = new ArrayList<>();
+    private TreeMap<String, IntList> bufferPostings = new TreeMap<>();
+    private long nextSegmentNumber = 0;
+    private boolean loaded = false;
+
+    public static FailureSearchIndex get() {
+        return ExtensionList.lookupSingleton(FailureSearchIndex.class);
+    }
+
+    File getDirectory() {
+        return new File(Jenkins.get().getRootDir(), "alfred/index");
+    }
+
+    /**
+     * Add every failure of a completed build to the index
+     */
+    public void record(Run<?, ?> build, FailureAnalysisResult result) {
+        if (result.getFailedTests() == 0) {
+            return;
+        }
+        String jobName = build.getParent().getFullName();
+        long timestamp = build.getTimeInMillis();
+
+        synchronized (this) {
+            ensureLoaded();
+            for (Map.Entry<FailureCategory, List<FailureAnalysisResult.TestFailureInfo>> entry :
+                 result.getFailuresByCategory().entrySet()) {
+                String category = entry.getKey().name();
+                for (FailureAnalysisResult.TestFailureInfo failure : entry.getValue()) {
+                    int docId = bufferDocs.size();
+                    bufferDocs.add(new SearchDocument(jobName, build.getNumber(), timestamp,
+                        failure.getClassName(), failure.getTestName(), category, failure.getShortError()));
+                    for (String term : SearchDocument.terms(jobName, failure.getClassName(), category,
+                            failure.getErrorDetails(), failure.getStackTrace())) {
+                        bufferPostings.computeIfAbsent(term, t -> new IntList()).add(docId);
+                    }
+                }
+            }
+            if (bufferDocs.size() >= FLUSH_THRESHOLD) {
+                flush();
+            }
+        }
+    }
+
+    /**
+     * Find failures matching all terms, newest first
+     *
+     * @param terms index terms, see {@link #queryTerms}
+     * @param since only failures from builds started at or after this time
+     * @param start number of matches to skip
+     * @param limit maximum number of matches to return
+     * @param visibleJob whether failures of the job with this full name may be returned; applied
+     *                   before counting and paging, so totals and pages only cover those
+     */
+    public SearchPage search(List<String> terms, long since, int start, int limit, Predicate<String> visibleJob) {
+        List<SearchDocument> hits = new ArrayList<>();
+        int total = 0;
+        // Asked once per job, not once per failure
+        Map<String, Boolean> visible = new HashMap<>();
+        // Expired documents stay in their segment until it is merged or deleted
+        since = Math.max(since, System.currentTimeMillis() - RETENTION_MILLIS);
+
+        // The live buffer holds the newest documents
+        List<SearchSegment> snapshot;
+        synchronized (this) {
+            ensureLoaded();
+            int[] ids = intersect(terms, term -> {
+                IntList list = bufferPostings.get(term);
+                return list != null ? list.toArray() : new int[0];
+            });
+            for (int i = ids.length - 1; i >= 0; i--) {
+                SearchDocument doc = bufferDocs.get(ids[i]);
+                if (doc.getTimestamp() < since || !visible.computeIfAbsent(doc.getJobName(), visibleJob::test)) {
+                    continue;
+                }
+                if (total >= start && hits.size() < limit) {
+                    hits.add(doc);
+                }
+                total++;
+            }
+
+            snapshot = segments;
+            for (SearchSegment segment : snapshot) {
+                // Segments in the snapshot hold the index's reference, so this cannot fail
+                segment.acquire();
+            }
+        }
+
+        try {
+            for (int s = snapshot.size() - 1; s >= 0; s--) {
+                SearchSegment segment = snapshot.get(s);
+                if (segment.getMaxTimestamp() < since) {
+                    continue;
+                }
+                int[] ids = intersect(terms, segment::postings);
+                for (int i = ids.length - 1; i >= 0; i--) {
+                    if (segment.timestamp(ids[i]) < since
+                            || !visible.computeIfAbsent(segment.jobName(ids[i]), visibleJob::test)) {
+                        continue;
+                    }
+                    if (total >= start && hits.size() < limit) {
+                        hits.add(segment.document(ids[i]));
+                    }
+                    total++;
+                }
+            }
+        } finally {
+            for (SearchSegment segment : snapshot) {
+                segment.release();
+            }
+        }
+
+        return new SearchPage(total, start, hits);
+    }
+
+    /**
+     * Build index terms for a search request; null or empty arguments are ignored
+     */
+    public static List<String> queryTerms(String text, String testClass, String category, String job) {
+        Set<String> terms = new LinkedHashSet<>();
+        if (text != null && !text.isEmpty()) {
+            SearchDocument.tokenize(text, text.length(), terms);
+        }
+        if (testClass != null && !testClass.isEmpty()) {
+            terms.add(SearchDocument.CLASS_PREFIX + testClass.toLowerCase(Locale.ROOT));
+        }
+        if (category != null && !category.isEmpty()) {
+            terms.add(SearchDocument.CATEGORY_PREFIX + category.toUpperCase(Locale.ROOT));
+        }
+        if (job != null && !job.isEmpty()) {
+            terms.add(SearchDocument.JOB_PREFIX + job);
+        }
+        return new ArrayList<>(terms);
+    }
+
+    /**
+     * Intersect sorted posting lists, shortest first
+     */
+    private static int[] intersect(List<String> terms, java.util.function.Function<String, int[]> lookup) {
+        if (terms.isEmpty()) {
+            return new int[0];
+        }
+        List<int[]> lists = new ArrayList<>(terms.size());
+        for (String term : terms) {
+            int[] ids = lookup.apply(term);
+            if (ids.length == 0) {
+                return ids;
+            }
+            lists.add(ids);
+        }
+        lists.sort(Comparator.comparingInt(ids -> ids.length));
+
+        int[] result = lists.get(0);
+        for (int l = 1; l < lists.size() && result.length > 0; l++) {
+            int[] other = lists.get(l);
+            int[] merged = new int[result.length];
+            int n = 0;
+            int j = 0;
+            for (int id : result) {
+                while (j < other.length && other[j] < id) {
+                    j++;
+                }
+                if (j < other.length && other[j] == id) {
+                    merged[n++] = id;
+                }
+            }
+            result = Arrays.copyOf(merged, n);
+        }
+        return result;
+    }
+
+    /**
+     * Write the in-memory buffer as a new segment
+     */
+    synchronized void flush() {
+        ensureLoaded();
+        if (bufferDocs.isEmpty()) {
+            return;
+        }
+        SortedMap<String, int[]> postings = new TreeMap<>();
+        for (Map.Entry<String, IntList> entry : bufferPostings.entrySet()) {
+            postings.put(entry.getKey(), entry.getValue().toArray());
+        }
+        SearchSegment segment = null;
+        try {
+            segment = SearchSegment.write(newSegmentFile(), bufferDocs, postings);
+            List<SearchSegment> updated = new ArrayList<>(segments);
+            updated.add(segment);
+            writeManifest(updated);
+            segments = Collections.unmodifiableList(updated);
+            bufferDocs = new ArrayList<>();
+            bufferPostings = new TreeMap<>();
+        } catch (IOException e) {
+            // Keep the buffer; the next flush retries
+            if (segment != null) {
+                segment.release();
+            }
+            LOGGER.log(Level.WARNING, "Failed to flush Alfred search index", e);
+        }
+    }
+
+    /**
+     * Delete segments that hold only expired documents, then merge runs of same-tier segments
+     */
+    void maintain(long now) throws IOException {
+        long cutoff = now - RETENTION_MILLIS;
+
+        List<SearchSegment> expired = new ArrayList<>();
+        for (SearchSegment segment : segments) {
+            if (segment.getMaxTimestamp() < cutoff) {
+                expired.add(segment);
+            }
+        }
+        if (!expired.isEmpty()) {
+            replace(expired, null);
+        }
+
+        List<SearchSegment> run;
+        while ((run = nextMerge(segments)) != null) {
+            replace(run, merge(run, cutoff));
+        }
+    }
+
+    /**
+     * The first {@link #MERGE_FACTOR} adjacent segments of one tier, or null if there are none.
+     * Only adjacent segments are merged so the list stays ordered by age.
+     */
+    private static List<SearchSegment> nextMerge(List<SearchSegment> snapshot) {
+        int runStart = 0;
+        for (int i = 1; i <= snapshot.size(); i++) {
+            if (i == snapshot.size() || tier(snapshot.get(i)) != tier(snapshot.get(runStart))) {
+                runStart = i;
+            } else if (i - runStart + 1 == MERGE_FACTOR) {
+                return new ArrayList<>(snapshot.subList(runStart, i + 1));
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Size tier of a segment: 0 below {@link #MERGE_FACTOR} flushes worth of documents,
+     * then one more for every further factor
+     */
+    private static int tier(SearchSegment segment) {
+        int tier = 0;
+        for (long size = (long) FLUSH_THRESHOLD * MERGE_FACTOR; segment.getDocCount() >= size; size *= MERGE_FACTOR) {
+            tier++;
+        }
+        return tier;
+    }
+
+    /**
+     * Write the unexpired documents of a run of segments as one segment, or return null if
+     * none are left. Runs outside the lock: segments are immutable, flushes only append,
+     * and only maintenance, which never runs twice at once, drops segments.
+     */
+    private SearchSegment merge(List<SearchSegment> run, long cutoff) throws IOException {
+        List<SearchDocument> docs = new ArrayList<>();
+        TreeMap<String, IntList> postings = new TreeMap<>();
+        for (SearchSegment segment : run) {
+            int[] remap = new int[segment.getDocCount()];
+            segment.forEachDocument((doc, oldId) -> {
+                if (doc.getTimestamp() < cutoff) {
+                    remap[oldId] = -1;
+                } else {
+                    remap[oldId] = docs.size();
+                    docs.add(doc);
+                }
+            });
+            segment.forEachTerm((term, ids) -> {
+                IntList merged = null;
+                for (int id : ids) {
+                    int newId = remap[id];
+                    if (newId >= 0) {
+                        if (merged == null) {
+                            merged = postings.computeIfAbsent(term, t -> new IntList());
+                        }
+                        merged.add(newId);
+                    }
+                }
+            });
+        }
+
+        if (docs.isEmpty()) {
+            return null;
+        }
+        SortedMap<String, int[]> arrays = new TreeMap<>();
+        for (Map.Entry<String, IntList> entry : postings.entrySet()) {
+            arrays.put(entry.getKey(), entry.getValue().toArray());
+        }
+        File file;
+        synchronized (this) {
+            file = newSegmentFile();
+        }
+        return SearchSegment.write(file, docs, arrays);
+    }
+
+    /**
+     * Swap a set of segments for an optional replacement placed where the oldest of them was.
+     * The removed segments are deleted once no search is reading them. If the manifest cannot
+     * be written nothing is swapped and the replacement is dropped.
+     */
+    private synchronized void replace(List<SearchSegment> removed, SearchSegment replacement) throws IOException {
+        List<SearchSegment> updated = new ArrayList<>();
+        for (SearchSegment segment : segments) {
+            if (!removed.contains(segment)) {
+                updated.add(segment);
+            } else if (replacement != null && segment == removed.get(0)) {
+                updated.add(replacement);
+            }
+        }
+        try {
+            writeManifest(updated);
+        } catch (IOException e) {
+            if (replacement != null) {
+                replacement.release();
+            }
+            throw e;
+        }
+        segments = Collections.unmodifiableList(updated);
+
+        for (SearchSegment segment : removed) {
+            segment.release();
+        }
+    }
+
+    private File newSegmentFile() {
+        return new File(getDirectory(), String.format("%s%012d%s", SEGMENT_PREFIX, nextSegmentNumber++, SEGMENT_SUFFIX));
+    }
+
+    /**
+     * Atomically record which segments are live, in order
+     */
+    private void writeManifest(List<SearchSegment> live) throws IOException {
+        List<String> names = new ArrayList<>(live.size());
+        for (SearchSegment segment : live) {
+            names.add(segment.getFile().getName());
+        }
+        File file = new File(getDirectory(), MANIFEST);
+        File tmp = new File(file.getPath() + TMP_SUFFIX);
+        Files.write(tmp.toPath(), names, StandardCharsets.UTF_8);
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+
+        File dir = getDirectory();
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            LOGGER.warning("Could not create Alfred index directory " + dir);
+            return;
+        }
+
+        // Left behind by a segment or manifest write that did not finish
+        File[] partial = dir.listFiles((d, name) -> name.endsWith(TMP_SUFFIX));
+        if (partial != null) {
+            for (File file : partial) {
+                delete(file);
+            }
+        }
+
+        Map<String, File> files = new HashMap<>();
+        File[] found = dir.listFiles((d, name) -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX));
+        if (found != null) {
+            for (File file : found) {
+                String number = file.getName().substring(SEGMENT_PREFIX.length(),
+                    file.getName().length() - SEGMENT_SUFFIX.length());
+                try {
+                    nextSegmentNumber = Math.max(nextSegmentNumber, Long.parseLong(number) + 1);
+                    files.put(file.getName(), file);
+                } catch (NumberFormatException e) {
+                    LOGGER.log(Level.WARNING, "Skipping unrecognized file in Alfred index " + file, e);
+                }
+            }
+        }
+
+        List<String> manifest = null;
+        File manifestFile = new File(dir, MANIFEST);
+        if (manifestFile.isFile()) {
+            try {
+                manifest = Files.readAllLines(manifestFile.toPath(), StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Failed to read " + manifestFile + ", loading every segment", e);
+            }
+        }
+
+        List<SearchSegment> loadedSegments = new ArrayList<>();
+        if (manifest != null) {
+            for (String name : manifest) {
+                File file = files.remove(name);
+                if (file == null) {
+                    LOGGER.warning("Alfred index segment " + name + " is missing");
+                    continue;
+                }
+                open(file, loadedSegments);
+            }
+            // Written by a flush or merge that never committed, or dropped but not yet deleted
+            for (File file : files.values()) {
+                delete(file);
+            }
+        } else {
+            // Indexes written before the manifest existed
+            for (File file : files.values()) {
+                open(file, loadedSegments);
+            }
+            loadedSegments.sort(Comparator.comparingLong(SearchSegment::getMinTimestamp));
+        }
+        segments = Collections.unmodifiableList(loadedSegments);
+
+        if (manifest == null || loadedSegments.size() != manifest.size()) {
+            try {
+                writeManifest(loadedSegments);
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Failed to write " + manifestFile, e);
+            }
+        }
+    }
+
+    private static void open(File file, List<SearchSegment> into) {
+        try {
+            into.add(SearchSegment.open(file));
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Skipping unreadable Alfred index segment " + file, e);
+        }
+    }
+
+    private static void delete(File file) {
+        if (!file.delete()) {
+            LOGGER.fine(() -> "Could not delete " + file);
+        }
+    }
+
+    /**
+     * Persist buffered documents when Jenkins shuts down
+     */
+    @Terminator
+    public static void flushOnShutdown() {
+        FailureSearchIndex index = ExtensionList.lookup(FailureSearchIndex.class).get(FailureSearchIndex.class);
+        if (index != null) {
+            index.flush();
+        }
+    }
+
+    /**
+     * One page of search results
+     */
+    public static class SearchPage {
+        private final int total;
+        private final int start;
+        private final List<SearchDocument> hits;
+
+        SearchPage(int total, int start, List<SearchDocument> hits) {
+            this.total = total;
+            this.start = start;
+            this.hits = hits;
+        }
+
+        public int getTotal() {
+            return total;
+        }
+
+        public int getStart() {
+            return start;
+        }
+
+        public List<SearchDocument> getHits() {
+            return hits;
+        }
+
+        /**
+         * Start offset of the next page, or -1 if this is the last one
+         */
+        public int getNextStart() {
+            int next = start + hits.size();
+            return next < total ? next : -1;
+        }
+    }
+
+    /**
+     * Periodically flushes the buffer, applies retention and merges segments
+     */
+    @Extension
+    public static class Maintenance extends AsyncPeriodicWork {
+        public Maintenance() {
+            super("Alfred search index maintenance");
+        }
+
+        @Override
+        public long getRecurrencePeriod() {
+            return TimeUnit.MINUTES.toMillis(5);
+        }
+
+        @Override
+        protected void execute(TaskListener listener) throws IOException {
+            FailureSearchIndex index = get();
+            index.flush();
+            index.maintain(System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Growable int array for posting lists
+     */
+    private static final class IntList {
+        private int[] values = new int[4];
+        private int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package io.jenkins.plugins.alfred;
+
+/**
+ * Reusable CharSequence view over a failure's error message and stack trace,
+ * read as "message + ' ' + stackTrace" without concatenating the two strings.
+ * Not thread-safe: each analyzer owns its own instance and resets it per failure.
+ */
+final class FailureText implements CharSequence {
+
+    private String message = "";
+    private String stackTrace = "";
+    private int messageLength;
+    private int length;
+
+    /**
+     * Point this view at a new failure; null parts are treated as empty
+     */
+    FailureText reset(String message, String stackTrace) {
+        this.message = message != null ? message : "";
+        this.stackTrace = stackTrace != null ? stackTrace : "";
+        this.messageLength = this.message.length();
+        this.length = messageLength + 1 + this.stackTrace.length();
+        return this;
+    }
+
+    String getMessage() {
+        return message;
+    }
+
+    String getStackTrace() {
+        return stackTrace;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < messageLength) {
+            return message.charAt(index);
+        }
+        if (index == messageLength) {
+            return ' ';
+        }
+        return stackTrace.charAt(index - messageLength - 1);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        // Only hit when a matcher extracts a group, so copying here is fine
+        if (end <= messageLength) {
+            return message.substring(start, end);
+        }
+        if (start > messageLength) {
+            return stackTrace.substring(start - messageLength - 1, end - messageLength - 1);
+        }
+        StringBuilder sb = new StringBuilder(end - start);
+        for (int i = start; i < end; i++) {
+            sb.append(charAt(i));
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        return message + " " + stackTrace;
+    }
+}
@@ -0,0 +1,399 @@
+package io.jenkins.plugins.alfred;
+
+import hudson.Extension;
+import hudson.ExtensionList;
+import hudson.ProxyConfiguration;
+import hudson.XmlFile;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.Job;
+import hudson.model.TaskListener;
+import hudson.util.Secret;
+import hudson.util.XStream2;
+import jenkins.model.Jenkins;
+import jenkins.util.SystemProperties;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Global failure aggregate over this controller and its peers.
+ *
+ * Peers are listed in JENKINS_HOME/alfred/peers.xml:
+ * <pre>
+ * &lt;peers&gt;
+ *   &lt;peer&gt;
+ *     &lt;name&gt;east&lt;/name&gt;
+ *     &lt;url&gt;https://jenkins-east.example.com/&lt;/url&gt;
+ *     &lt;user&gt;alfred-reader&lt;/user&gt;
+ *     &lt;token&gt;API token of that user&lt;/token&gt;
+ *   &lt;/peer&gt;
+ * &lt;/peers&gt;
+ * </pre>
+ * Tokens are {@link Secret}s: one entered in plain text is encrypted when the file is next
+ * read. A peers.properties file from earlier versions is imported once and then deleted.
+ * Every minute each peer is asked for its {@link AnalysisChangeLog} changes since the
+ * last cursor, so steady-state traffic is one small request per peer plus one record
+ * per job that built. A peer URL can be any controller running Alfred, including a second
+ * local instance such as http://localhost:8081/jenkins/ standing in for a remote one.
+ */
+@Extension
+public class FederatedAggregate {
+    private static final Logger LOGGER = Logger.getLogger(FederatedAggregate.class.getName());
+
+    private static final String PREFIX = FederatedAggregate.class.getName();
+    private static final long PULL_SECONDS = SystemProperties.getLong(PREFIX + ".pullSeconds", 60L);
+    private static final int PAGE_SIZE = 500;
+    // Pages per peer and pull, so one peer resyncing cannot hold up the others for long
+    private static final int MAX_PAGES = 20;
+    private static final int CONNECT_TIMEOUT_MILLIS = 10000;
+    private static final int READ_TIMEOUT_MILLIS = 30000;
+
+    private static final XStream2 XSTREAM = new XStream2();
+
+    static {
+        XSTREAM.alias("peers", PeerList.class);
+        XSTREAM.addImplicitCollection(PeerList.class, "peers", "peer", PeerConfig.class);
+    }
+
+    private final Map<String, Peer> peers = new LinkedHashMap<>();
+    // Modification time of peers.xml when it was last read or written
+    private long configModified;
+
+    public static FederatedAggregate get() {
+        return ExtensionList.lookupSingleton(FederatedAggregate.class);
+    }
+
+    File getConfigFile() {
+        return new File(Jenkins.get().getRootDir(), "alfred/peers.xml");
+    }
+
+    File getLegacyConfigFile() {
+        return new File(Jenkins.get().getRootDir(), "alfred/peers.properties");
+    }
+
+    /**
+     * Where a peer's changes come from; HTTP in production, anything in a test harness
+     */
+    @FunctionalInterface
+    interface PeerSource {
+        /**
+         * Body of a /alfred-api/changes response
+         */
+        String fetch(String cursor, int limit) throws IOException;
+    }
+
+    /**
+     * Re-read the peer list, keeping the state of peers whose configuration did not change
+     */
+    synchronized void reloadPeers() {
+        XmlFile file = new XmlFile(XSTREAM, getConfigFile());
+        PeerList list;
+        try {
+            list = file.exists() ? (PeerList) file.read() : importLegacyConfig(file);
+            File config = file.getFile();
+            if (config.isFile() && config.lastModified() != configModified) {
+                // Written back so tokens entered in plain text are stored encrypted
+                file.write(list);
+                configModified = config.lastModified();
+            }
+        } catch (IOException | RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Failed to read " + file.getFile(), e);
+            return;
+        }
+
+        Map<String, Peer> configured = new LinkedHashMap<>();
+        for (PeerConfig config : list.peers) {
+            if (config.name == null || config.url == null || configured.containsKey(config.name)) {
+                continue;
+            }
+            String name = config.name;
+            String url = config.url.trim();
+            String user = config.user;
+            String token = config.token != null ? config.token.getPlainText() : null;
+            String identity = url + '\n' + user + '\n' + token;
+
+            Peer existing = peers.get(name);
+            configured.put(name, existing != null && existing.identity.equals(identity)
+                ? existing : new Peer(name, url, identity, new HttpPeerSource(url, user, token)));
+        }
+        peers.clear();
+        peers.putAll(configured);
+    }
+
+    /**
+     * Move peers from a peers.properties file of earlier versions into peers.xml
+     */
+    private PeerList importLegacyConfig(XmlFile file) throws IOException {
+        PeerList list = new PeerList();
+        File legacy = getLegacyConfigFile();
+        if (!legacy.isFile()) {
+            return list;
+        }
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(legacy.toPath(), StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        }
+        for (String key : new TreeSet<>(properties.stringPropertyNames())) {
+            if (!key.startsWith("peer.") || !key.endsWith(".url")) {
+                continue;
+            }
+            PeerConfig config = new PeerConfig();
+            config.name = key.substring("peer.".length(), key.length() - ".url".length());
+            config.url = properties.getProperty(key).trim();
+            config.user = properties.getProperty("peer." + config.name + ".user");
+            String token = properties.getProperty("peer." + config.name + ".token");
+            config.token = token != null ? Secret.fromString(token) : null;
+            list.peers.add(config);
+        }
+        file.write(list);
+        configModified = file.getFile().lastModified();
+        Files.delete(legacy.toPath());
+        LOGGER.info("Moved " + list.peers.size() + " Alfred peers from " + legacy + " to " + file.getFile());
+        return list;
+    }
+
+    /**
+     * Root of peers.xml
+     */
+    static final class PeerList {
+        private List<PeerConfig> peers = new ArrayList<>();
+
+        private Object readResolve() {
+            if (peers == null) {
+                peers = new ArrayList<>();
+            }
+            return this;
+        }
+    }
+
+    /**
+     * One peer as configured in peers.xml
+     */
+    static final class PeerConfig {
+        private String name;
+        private String url;
+        private String user;
+        private Secret token;
+    }
+
+    synchronized List<Peer> getPeers() {
+        return new ArrayList<>(peers.values());
+    }
+
+    /**
+     * Pull pending changes from every peer
+     */
+    void pullAll() {
+        for (Peer peer : getPeers()) {
+            peer.pull();
+        }
+    }
+
+    /**
+     * Category totals over local jobs the current user can see and all peer jobs
+     */
+    public JSONObject toJson() {
+        Jenkins jenkins = Jenkins.get();
+        int[] categories = new int[FailureCategory.count()];
+        int totalFailures = 0;
+        int jobCount = 0;
+        JSONArray controllers = new JSONArray();
+
+        int localFailures = 0;
+        int localJobs = 0;
+        for (AnalysisChangeLog.Change change : AnalysisChangeLog.get().current()) {
+            if (jenkins.getItemByFullName(change.getJob(), Job.class) == null) {
+                continue;
+            }
+            localJobs++;
+            localFailures += change.getFailedTests();
+            add(categories, change);
+        }
+        JSONObject local = new JSONObject();
+        local.put("name", "local");
+        local.put("jobCount", localJobs);
+        local.put("failures", localFailures);
+        controllers.add(local);
+        totalFailures += localFailures;
+        jobCount += localJobs;
+
+        for (Peer peer : getPeers()) {
+            synchronized (peer) {
+                int failures = 0;
+                for (AnalysisChangeLog.Change change : peer.jobs.values()) {
+                    failures += change.getFailedTests();
+                    add(categories, change);
+                }
+                JSONObject json = new JSONObject();
+                json.put("name", peer.name);
+                json.put("jobCount", peer.jobs.size());
+                json.put("failures", failures);
+                json.put("lastSync", peer.lastSync);
+                json.put("lastError", peer.lastError);
+                json.put("bytesFetched", peer.bytesFetched);
+                controllers.add(json);
+                totalFailures += failures;
+                jobCount += peer.jobs.size();
+            }
+        }
+
+        JSONObject counts = new JSONObject();
+        for (int i = 0; i < categories.length; i++) {
+            if (categories[i] > 0) {
+                counts.put(FailureCategory.byOrdinal(i).name(), categories[i]);
+            }
+        }
+        JSONObject json = new JSONObject();
+        json.put("totalFailures", totalFailures);
+        json.put("jobCount", jobCount);
+        json.put("categories", counts);
+        json.put("controllers", controllers);
+        return json;
+    }
+
+    private static void add(int[] categories, AnalysisChangeLog.Change change) {
+        for (int i = 0; i < categories.length; i++) {
+            categories[i] += change.getCount(FailureCategory.byOrdinal(i));
+        }
+    }
+
+    /**
+     * Replica of one peer's latest summary per job
+     */
+    static final class Peer {
+        private final String name;
+        private final String url;
+        // Configuration the state was built with; a change starts a fresh replica
+        private final String identity;
+        private final PeerSource source;
+
+        private final Map<String, AnalysisChangeLog.Change> jobs = new HashMap<>();
+        private String cursor;
+        private long lastSync;
+        private String lastError;
+        private long bytesFetched;
+
+        Peer(String name, String url, String identity, PeerSource source) {
+            this.name = name;
+            this.url = url;
+            this.identity = identity;
+            this.source = source;
+        }
+
+        void pull() {
+            try {
+                for (int page = 0; page < MAX_PAGES; page++) {
+                    String body = source.fetch(cursor, PAGE_SIZE);
+                    boolean more = apply(body);
+                    if (!more) {
+                        break;
+                    }
+                }
+                synchronized (this) {
+                    lastSync = System.currentTimeMillis();
+                    lastError = null;
+                }
+            } catch (IOException | RuntimeException e) {
+                LOGGER.log(Level.FINE, "Failed to pull Alfred changes from " + url, e);
+                synchronized (this) {
+                    lastError = e.getMessage() != null ? e.getMessage() : e.getClass().getName();
+                }
+            }
+        }
+
+        // Merge one page; returns whether the peer has more
+        private synchronized boolean apply(String body) {
+            JSONObject page = JSONObject.fromObject(body);
+            bytesFetched += body.length();
+            if (page.optBoolean("reset")) {
+                jobs.clear();
+            }
+            JSONArray changes = page.optJSONArray("changes");
+            if (changes != null) {
+                for (int i = 0; i < changes.size(); i++) {
+                    AnalysisChangeLog.Change change = AnalysisChangeLog.Change.fromJson(changes.getJSONObject(i));
+                    if (change.isDeleted()) {
+                        jobs.remove(change.getJob());
+                    } else {
+                        jobs.put(change.getJob(), change);
+                    }
+                }
+            }
+            cursor = page.getString("cursor");
+            return page.optBoolean("more");
+        }
+    }
+
+    private static final class HttpPeerSource implements PeerSource {
+        private final String baseUrl;
+        private final String authorization;
+
+        HttpPeerSource(String url, String user, String token) {
+            this.baseUrl = url.endsWith("/") ? url : url + "/";
+            this.authorization = user != null && token != null
+                ? "Basic " + Base64.getEncoder().encodeToString((user + ":" + token).getBytes(StandardCharsets.UTF_8))
+                : null;
+        }
+
+        @Override
+        public String fetch(String cursor, int limit) throws IOException {
+            String query = "limit=" + limit
+                + (cursor != null ? "&since=" + URLEncoder.encode(cursor, StandardCharsets.UTF_8.name()) : "");
+            URLConnection connection = ProxyConfiguration.open(new URL(baseUrl + "alfred-api/changes?" + query));
+            connection.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+            connection.setReadTimeout(READ_TIMEOUT_MILLIS);
+            connection.setRequestProperty("Accept", "application/json");
+            connection.setRequestProperty("Accept-Encoding", "gzip");
+            if (authorization != null) {
+                connection.setRequestProperty("Authorization", authorization);
+            }
+            if (connection instanceof HttpURLConnection) {
+                int status = ((HttpURLConnection) connection).getResponseCode();
+                if (status != 200) {
+                    throw new IOException("HTTP " + status + " from " + baseUrl);
+                }
+            }
+            try (InputStream raw = connection.getInputStream();
+                 InputStream in = "gzip".equalsIgnoreCase(connection.getContentEncoding()) ? new GZIPInputStream(raw) : raw) {
+                return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            }
+        }
+    }
+
+    /**
+     * Pulls peer changes
+     */
+    @Extension
+    public static class Puller extends AsyncPeriodicWork {
+        public Puller() {
+            super("Alfred federation");
+        }
+
+        @Override
+        public long getRecurrencePeriod() {
+            return TimeUnit.SECONDS.toMillis(PULL_SECONDS);
+        }
+
+        @Override
+        protected void execute(TaskListener listener) {
+            FederatedAggregate aggregate = get();
+            aggregate.reloadPeers();
+            aggregate.pullAll();
+        }
+    }
+}
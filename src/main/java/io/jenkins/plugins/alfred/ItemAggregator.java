@@ -0,0 +1,116 @@
+package io.jenkins.plugins.alfred;
+
+import hudson.model.Item;
+import hudson.model.ItemGroup;
+import hudson.model.Job;
+import hudson.model.TopLevelItem;
+import hudson.model.View;
+import hudson.model.ViewGroup;
+import jenkins.model.Jenkins;
+
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Resolves views and folders and aggregates the jobs they contain, recursing into
+ * nested views, folders and multibranch projects. Per-job results come from the
+ * shared {@link JobAnalysisCache}.
+ */
+public class ItemAggregator {
+
+    private final JobAnalysisCache cache;
+
+    public ItemAggregator(JobAnalysisCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * Resolve a view by name. Nested views are addressed as "outer/inner", and a view
+     * owned by a folder is looked up when folderName is given.
+     */
+    public static View resolveView(String name, String folderName) {
+        if (name == null || name.isEmpty()) {
+            return null;
+        }
+
+        ViewGroup owner = Jenkins.get();
+        if (folderName != null && !folderName.isEmpty()) {
+            Item folder = Jenkins.get().getItemByFullName(folderName);
+            if (!(folder instanceof ViewGroup)) {
+                return null;
+            }
+            owner = (ViewGroup) folder;
+        }
+
+        View view = null;
+        for (String part : name.split("/")) {
+            if (part.isEmpty()) {
+                continue;
+            }
+            view = owner.getView(part);
+            if (view == null) {
+                return null;
+            }
+            if (view instanceof ViewGroup) {
+                owner = (ViewGroup) view;
+            }
+        }
+        return view;
+    }
+
+    /**
+     * Resolve a folder, multibranch project or any other item group by full name
+     */
+    public static ItemGroup<?> resolveFolder(String fullName) {
+        if (fullName == null || fullName.isEmpty()) {
+            return null;
+        }
+        Item item = Jenkins.get().getItemByFullName(fullName);
+        return item instanceof ItemGroup ? (ItemGroup<?>) item : null;
+    }
+
+    /**
+     * All jobs in a view, including those in nested views and inside contained folders
+     */
+    public static Set<Job<?, ?>> collectJobs(View view) {
+        Set<Job<?, ?>> jobs = new LinkedHashSet<>();
+        for (TopLevelItem item : view.getAllItems()) {
+            addItem(item, jobs);
+        }
+        return jobs;
+    }
+
+    /**
+     * All jobs below an item group, at any depth
+     */
+    public static Set<Job<?, ?>> collectJobs(ItemGroup<?> group) {
+        Set<Job<?, ?>> jobs = new LinkedHashSet<>();
+        for (Job<?, ?> job : group.getAllItems(Job.class)) {
+            jobs.add(job);
+        }
+        return jobs;
+    }
+
+    private static void addItem(Item item, Set<Job<?, ?>> jobs) {
+        if (item instanceof Job) {
+            jobs.add((Job<?, ?>) item);
+        } else if (item instanceof ItemGroup) {
+            jobs.addAll(collectJobs((ItemGroup<?>) item));
+        }
+    }
+
+    /**
+     * Aggregate the last completed build of each job
+     */
+    public AggregatedAnalysis aggregate(Collection<Job<?, ?>> jobs) {
+        AggregatedAnalysis aggregated = new AggregatedAnalysis();
+        for (Job<?, ?> job : jobs) {
+            FailureAnalysisResult result = cache.getAnalysis(job);
+            if (result != null) {
+                aggregated.addResult(result);
+            }
+        }
+        return aggregated;
+    }
+}
@@ -0,0 +1,264 @@
+package io.jenkins.plugins.alfred;
+
+import hudson.Extension;
+import hudson.ExtensionList;
+import hudson.model.Item;
+import hudson.model.Job;
+import hudson.model.Run;
+import hudson.model.listeners.ItemListener;
+import hudson.model.listeners.RunListener;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Controller-wide memo of the analysis for each job's last completed build.
+ * Every view, folder and column that contains a job shares the same entry,
+ * so overlapping dashboards cost one analysis per job.
+ */
+@Extension
+public class JobAnalysisCache {
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    // Analyses running for a cache miss, by job and build number
+    private final Map<String, CompletableFuture<FailureAnalysisResult>> inFlight = new ConcurrentHashMap<>();
+    // Bumped on every change, so checkpoints can tell whether anything moved
+    private final AtomicLong generation = new AtomicLong();
+
+    public static JobAnalysisCache get() {
+        return ExtensionList.lookupSingleton(JobAnalysisCache.class);
+    }
+
+    /**
+     * Get the analysis for the last completed build of a job, or null if it has none
+     */
+    public FailureAnalysisResult getAnalysis(Job<?, ?> job) {
+        // No build started since the entry was made: answer without loading any build
+        Entry cached = entries.get(job.getFullName());
+        if (cached != null && cached.nextBuildNumber >= 0 && cached.nextBuildNumber == job.getNextBuildNumber()) {
+            return cached.result;
+        }
+
+        Run<?, ?> lastBuild = job.getLastCompletedBuild();
+        if (lastBuild == null) {
+            return null;
+        }
+        return getAnalysis(lastBuild);
+    }
+
+    /**
+     * Get the analysis for a specific build, reusing the stored action or cached result when possible
+     */
+    public FailureAnalysisResult getAnalysis(Run<?, ?> build) {
+        String key = build.getParent().getFullName();
+        int number = build.getNumber();
+
+        Entry cached = entries.get(key);
+        if (cached != null && cached.buildNumber == number) {
+            return cached.result;
+        }
+
+        // Concurrent misses for the same build share one analysis, run outside the map
+        String flight = key + '#' + number;
+        CompletableFuture<FailureAnalysisResult> mine = new CompletableFuture<>();
+        CompletableFuture<FailureAnalysisResult> running = inFlight.putIfAbsent(flight, mine);
+        if (running != null) {
+            return await(running);
+        }
+        try {
+            FailureAnalysisResult result = analyze(build);
+            publish(key, new Entry(number, nextBuildNumberIfLatest(build), result));
+            mine.complete(result);
+            return result;
+        } catch (RuntimeException | Error e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(flight, mine);
+        }
+    }
+
+    /**
+     * Install an entry unless the job already has one for the same or a newer build
+     */
+    private void publish(String key, Entry entry) {
+        while (true) {
+            Entry existing = entries.get(key);
+            if (existing == null) {
+                if (entries.putIfAbsent(key, entry) == null) {
+                    break;
+                }
+            } else if (existing.buildNumber >= entry.buildNumber) {
+                // Someone else got there, or a newer build is cached; an older build was asked for explicitly
+                return;
+            } else if (entries.replace(key, existing, entry)) {
+                break;
+            }
+        }
+        generation.incrementAndGet();
+        recordIfCurrent(key, entry);
+    }
+
+    /**
+     * Log an entry's change unless a newer entry replaced it meanwhile. Checked under the
+     * change log's lock, so changes are logged in the order entries were installed.
+     */
+    private void recordIfCurrent(String key, Entry entry) {
+        AnalysisChangeLog changeLog = AnalysisChangeLog.get();
+        synchronized (changeLog) {
+            if (entries.get(key) == entry) {
+                changeLog.record(key, entry.buildNumber, entry.result);
+            }
+        }
+    }
+
+    private static FailureAnalysisResult await(CompletableFuture<FailureAnalysisResult> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Record a fresh analysis, e.g. right after a build completes
+     */
+    public void put(Run<?, ?> build, FailureAnalysisResult result) {
+        String key = build.getParent().getFullName();
+        Entry current = entries.merge(key, new Entry(build.getNumber(), nextBuildNumberIfLatest(build), result),
+            (existing, fresh) -> existing.buildNumber > fresh.buildNumber ? existing : fresh);
+        generation.incrementAndGet();
+        if (current.result == result) {
+            recordIfCurrent(key, current);
+        }
+    }
+
+    /**
+     * Drop the entry for a job, or for every job below a folder
+     */
+    public void invalidate(String fullName) {
+        entries.remove(fullName);
+        String prefix = fullName + "/";
+        entries.keySet().removeIf(key -> key.startsWith(prefix));
+        generation.incrementAndGet();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    long getGeneration() {
+        return generation.get();
+    }
+
+    /**
+     * Add an entry restored from a snapshot unless the job already has a live one
+     */
+    void restore(String fullName, int buildNumber, int nextBuildNumber, FailureAnalysisResult result) {
+        Entry entry = new Entry(buildNumber, nextBuildNumber, result);
+        if (entries.putIfAbsent(fullName, entry) == null) {
+            generation.incrementAndGet();
+            recordIfCurrent(fullName, entry);
+        }
+    }
+
+    boolean contains(String fullName) {
+        return entries.containsKey(fullName);
+    }
+
+    /**
+     * Visit entries that can be checked against the job without loading builds
+     */
+    void forEachVerifiable(EntryVisitor visitor) {
+        for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+            Entry value = entry.getValue();
+            if (value.nextBuildNumber >= 0) {
+                visitor.visit(entry.getKey(), value.buildNumber, value.nextBuildNumber, value.result);
+            }
+        }
+    }
+
+    @FunctionalInterface
+    interface EntryVisitor {
+        void visit(String fullName, int buildNumber, int nextBuildNumber, FailureAnalysisResult result);
+    }
+
+    /**
+     * The job's next build number if this build is its newest and finished, otherwise -1.
+     * While that number is unchanged no later build exists, so the entry is still current.
+     */
+    private static int nextBuildNumberIfLatest(Run<?, ?> build) {
+        Job<?, ?> job = build.getParent();
+        Run<?, ?> last = job.getLastBuild();
+        if (last == null || last.getNumber() != build.getNumber() || last.isBuilding()) {
+            return -1;
+        }
+        return job.getNextBuildNumber();
+    }
+
+    private static FailureAnalysisResult analyze(Run<?, ?> build) {
+        AlfredBuildAction action = build.getAction(AlfredBuildAction.class);
+        if (action != null) {
+            return action.getAnalysisResult();
+        }
+        // Against the previous build's stored analysis, so the changes are reported too
+        return new FailureAnalyzer().analyzeIncremental(build);
+    }
+
+    private static final class Entry {
+        private final int buildNumber;
+        private final int nextBuildNumber;
+        private final FailureAnalysisResult result;
+
+        Entry(int buildNumber, int nextBuildNumber, FailureAnalysisResult result) {
+            this.buildNumber = buildNumber;
+            this.nextBuildNumber = nextBuildNumber;
+            this.result = result;
+        }
+    }
+
+    /**
+     * Drop entries for jobs that are deleted or moved
+     */
+    @Extension
+    public static class ItemListenerImpl extends ItemListener {
+        @Override
+        public void onDeleted(Item item) {
+            get().invalidate(item.getFullName());
+            AnalysisChangeLog.get().remove(item.getFullName());
+        }
+
+        @Override
+        public void onLocationChanged(Item item, String oldFullName, String newFullName) {
+            get().invalidate(oldFullName);
+            AnalysisChangeLog.get().remove(oldFullName);
+        }
+    }
+
+    /**
+     * A deleted build may have been the cached one; log rotation deleting older builds
+     * leaves the entry alone
+     */
+    @Extension
+    public static class RunListenerImpl extends RunListener<Run<?, ?>> {
+        @Override
+        public void onDeleted(Run<?, ?> run) {
+            JobAnalysisCache cache = get();
+            String key = run.getParent().getFullName();
+            Entry entry = cache.entries.get(key);
+            if (entry != null && entry.buildNumber == run.getNumber() && cache.entries.remove(key, entry)) {
+                cache.generation.incrementAndGet();
+            }
+        }
+    }
+}
@@ -0,0 +1,258 @@
+package io.jenkins.plugins.alfred;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import hudson.Extension;
+import hudson.ExtensionList;
+import hudson.model.Action;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.model.listeners.RunListener;
+import hudson.tasks.junit.CaseResult;
+import hudson.tasks.junit.TestResult;
+import hudson.tasks.test.AbstractTestResultAction;
+import jenkins.model.TransientActionFactory;
+import jenkins.util.SystemProperties;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Analysis of builds that are still running.
+ *
+ * Pipelines publish test results in several junit steps, each merging its cases into the
+ * build's test result action. The junit plugin has no listener for that, so the action of
+ * every running build is checked every {@link #POLL_SECONDS}; when its failure count grew,
+ * failed cases are walked from the most recently merged end until the new ones are found and
+ * categorized into a running {@link FailureAnalysisResult}. While the build runs, a snapshot
+ * of that result is shown as its Alfred analysis; categories that did not change share their
+ * list with the previous snapshot.
+ *
+ * At completion {@link AlfredRunListener} passes the running result to the final analysis,
+ * which reuses its categorizations, so most of the matching already happened during the build.
+ */
+@Extension
+public class LiveAnalysis {
+    private static final Logger LOGGER = Logger.getLogger(LiveAnalysis.class.getName());
+
+    private static final String PREFIX = LiveAnalysis.class.getName();
+    static final boolean ENABLED = SystemProperties.getBoolean(PREFIX + ".enabled", true);
+    private static final long POLL_SECONDS = SystemProperties.getLong(PREFIX + ".pollSeconds", 15L);
+
+    // Keyed by Run#getExternalizableId
+    private final Map<String, Live> running = new ConcurrentHashMap<>();
+    // Only used by the poller, which never runs twice at once
+    private final FailureAnalyzer analyzer = new FailureAnalyzer();
+
+    public static LiveAnalysis get() {
+        return ExtensionList.lookupSingleton(LiveAnalysis.class);
+    }
+
+    void started(Run<?, ?> run) {
+        if (ENABLED) {
+            running.put(run.getExternalizableId(), new Live(run));
+        }
+    }
+
+    /**
+     * Stop following a build and take its running result, or null if there is none
+     */
+    FailureAnalysisResult finish(Run<?, ?> run) {
+        Live live = running.remove(run.getExternalizableId());
+        if (live == null) {
+            return null;
+        }
+        synchronized (live) {
+            live.finished = true;
+            return live.working;
+        }
+    }
+
+    /**
+     * Analysis of the test results a running build published so far, or null
+     */
+    FailureAnalysisResult getResult(Run<?, ?> run) {
+        Live live = running.get(run.getExternalizableId());
+        return live != null ? live.snapshot : null;
+    }
+
+    void pollAll() {
+        for (Live live : running.values()) {
+            try {
+                live.update(analyzer);
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.FINE, "Failed to update live analysis of " + live.run, e);
+            }
+        }
+    }
+
+    private static final class Live {
+        private final Run<?, ?> run;
+        // Only touched under the lock; readers get the snapshot
+        private final FailureAnalysisResult working = new FailureAnalysisResult();
+        // Failed cases categorized so far, per test id: parameterized tests repeat ids
+        private final Map<String, Integer> seen = new HashMap<>();
+        private int categorized;
+        private int lastTotal = -1;
+        private int lastFailed = -1;
+        private boolean finished;
+        private volatile FailureAnalysisResult snapshot;
+
+        Live(Run<?, ?> run) {
+            this.run = run;
+        }
+
+        synchronized void update(FailureAnalyzer analyzer) {
+            if (finished) {
+                return;
+            }
+            AbstractTestResultAction<?> action = run.getAction(AbstractTestResultAction.class);
+            if (action == null) {
+                return;
+            }
+            int total = action.getTotalCount();
+            int failed = action.getFailCount();
+            if (total == lastTotal && failed == lastFailed) {
+                return;
+            }
+            Object result = action.getResult();
+            if (!(result instanceof TestResult)) {
+                return;
+            }
+            TestResult testResult = (TestResult) result;
+
+            int[] sizes = new int[FailureCategory.count()];
+            for (Map.Entry<FailureCategory, List<FailureAnalysisResult.TestFailureInfo>> entry :
+                 working.getFailuresByCategory().entrySet()) {
+                sizes[entry.getKey().ordinal()] = entry.getValue().size();
+            }
+
+            // Failures only accumulate and later steps merge theirs at the end, so search
+            // from there and stop once as many new failures were found as the count grew by.
+            // A case is new when its id occurs more often than it had been categorized.
+            int missing = failed - categorized;
+            if (missing > 0) {
+                List<CaseResult> failedTests = testResult.getFailedTests();
+                Map<String, Integer> occurrences = new HashMap<>();
+                for (int i = failedTests.size() - 1; i >= 0 && missing > 0; i--) {
+                    CaseResult failedTest = failedTests.get(i);
+                    String testId = FailureAnalysisResult.TestFailureInfo.testId(failedTest.getClassName(), failedTest.getName());
+                    int occurrence = occurrences.merge(testId, 1, Integer::sum);
+                    if (occurrence > seen.getOrDefault(testId, 0)) {
+                        seen.put(testId, occurrence);
+                        // The final analysis compares fingerprints before reusing a category
+                        analyzer.categorize(failedTest, working).getFingerprint();
+                        categorized++;
+                        missing--;
+                    }
+                }
+            }
+            working.setTotalTests(total);
+            working.setPassedTests(testResult.getPassCount());
+            working.setFailedTests(failed);
+            working.setSkippedTests(testResult.getSkipCount());
+            lastTotal = total;
+            lastFailed = failed;
+            snapshot = snapshot(sizes);
+        }
+
+        /**
+         * Copy of the working result for readers. Lists of categories that kept their
+         * {@code previousSizes} are shared with the previous snapshot, which never changes.
+         */
+        private FailureAnalysisResult snapshot(int[] previousSizes) {
+            FailureAnalysisResult previous = snapshot;
+            FailureAnalysisResult copy = new FailureAnalysisResult();
+            copy.setTotalTests(working.getTotalTests());
+            copy.setPassedTests(working.getPassedTests());
+            copy.setFailedTests(working.getFailedTests());
+            copy.setSkippedTests(working.getSkippedTests());
+            copy.getFailedApiEndpoints().putAll(working.getFailedApiEndpoints());
+            for (Map.Entry<FailureCategory, List<FailureAnalysisResult.TestFailureInfo>> entry :
+                 working.getFailuresByCategory().entrySet()) {
+                FailureCategory category = entry.getKey();
+                List<FailureAnalysisResult.TestFailureInfo> failures = entry.getValue();
+                if (previous != null && failures.size() == previousSizes[category.ordinal()]) {
+                    copy.getFailuresByCategory().put(category, previous.getFailuresByCategory().get(category));
+                } else if (!failures.isEmpty()) {
+                    copy.getFailuresByCategory().put(category, new ArrayList<>(failures));
+                }
+            }
+            return copy;
+        }
+    }
+
+    /**
+     * Follows builds from start to finalization
+     */
+    @Extension
+    public static class Listener extends RunListener<Run<?, ?>> {
+        @Override
+        public void onStarted(Run<?, ?> run, TaskListener listener) {
+            get().started(run);
+        }
+
+        @Override
+        public void onFinalized(Run<?, ?> run) {
+            // Normally already taken by AlfredRunListener at completion
+            get().finish(run);
+        }
+
+        @Override
+        public void onDeleted(Run<?, ?> run) {
+            get().finish(run);
+        }
+    }
+
+    /**
+     * Picks up test results published since the last check
+     */
+    @Extension
+    public static class Poller extends AsyncPeriodicWork {
+        public Poller() {
+            super("Alfred live analysis");
+        }
+
+        @Override
+        public long getRecurrencePeriod() {
+            return TimeUnit.SECONDS.toMillis(POLL_SECONDS);
+        }
+
+        @Override
+        protected Level getNormalLoggingLevel() {
+            // Runs every few seconds; do not log each run
+            return Level.FINE;
+        }
+
+        @Override
+        protected void execute(TaskListener listener) {
+            get().pollAll();
+        }
+    }
+
+    /**
+     * Shows the live analysis as a running build's Alfred analysis
+     */
+    @Extension
+    public static class ActionFactory extends TransientActionFactory<Run> {
+        @Override
+        public Class<Run> type() {
+            return Run.class;
+        }
+
+        @NonNull
+        @Override
+        public Collection<? extends Action> createFor(@NonNull Run target) {
+            if (!target.isBuilding()) {
+                return Collections.emptyList();
+            }
+            FailureAnalysisResult result = get().getResult(target);
+            // Not attached, so nothing is stored; the final analysis is added at completion
+            return result != null ? Collections.singleton(new AlfredBuildAction(target, result))
+                : Collections.emptyList();
+        }
+    }
+}
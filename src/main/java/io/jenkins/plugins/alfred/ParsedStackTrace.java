@@ -0,0 +1,81 @@
+package io.jenkins.plugins.alfred;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A stack trace as structured data: the thrown exception followed by its "Caused by" chain,
+ * and the culprit frame, see {@link StackTraceParser}
+ */
+public final class ParsedStackTrace {
+
+    static final ParsedStackTrace EMPTY = new ParsedStackTrace(Collections.emptyList(), null);
+
+    private final List<Cause> causes;
+    private final StackFrame culprit;
+
+    ParsedStackTrace(List<Cause> causes, StackFrame culprit) {
+        this.causes = causes;
+        this.culprit = culprit;
+    }
+
+    /**
+     * Outermost exception first, root cause last
+     */
+    public List<Cause> getCauses() {
+        return causes;
+    }
+
+    /**
+     * The innermost cause, or null if nothing was parsed
+     */
+    public Cause getRootCause() {
+        return causes.isEmpty() ? null : causes.get(causes.size() - 1);
+    }
+
+    /**
+     * First application-owned frame, searching from the root cause outwards, or null
+     */
+    public StackFrame getCulprit() {
+        return culprit;
+    }
+
+    /**
+     * One exception of the chain
+     */
+    public static final class Cause {
+        private final String exceptionType;
+        private final String message;
+        private final List<StackFrame> frames;
+        private final int omittedFrames;
+
+        Cause(String exceptionType, String message, List<StackFrame> frames, int omittedFrames) {
+            this.exceptionType = exceptionType;
+            this.message = message;
+            this.frames = frames;
+            this.omittedFrames = omittedFrames;
+        }
+
+        public String getExceptionType() {
+            return exceptionType;
+        }
+
+        /**
+         * First line of the message, or null
+         */
+        public String getMessage() {
+            return message;
+        }
+
+        public List<StackFrame> getFrames() {
+            return frames;
+        }
+
+        /**
+         * Frames shared with the enclosing exception, from the "... N more" line
+         */
+        public int getOmittedFrames() {
+            return omittedFrames;
+        }
+    }
+}
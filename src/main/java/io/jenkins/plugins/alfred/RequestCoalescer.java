@@ -0,0 +1,206 @@
+package io.jenkins.plugins.alfred;
+
+import hudson.Extension;
+import hudson.ExtensionList;
+import jenkins.util.SystemProperties;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Admission control for read-only /alfred-api requests.
+ *
+ * Identical concurrent requests share one computation (single flight), finished
+ * responses are reused for a short TTL, and the number of computations running per
+ * user and controller-wide is bounded. Requests over a limit are rejected with
+ * {@link Saturated} instead of queueing on request threads.
+ *
+ * Requests are shared by scope: whatever the response depends on that differs between
+ * callers. Responses filtered by the caller's permissions use the caller's name, as
+ * working out which jobs a user may see costs about as much as the response itself.
+ */
+@Extension
+public class RequestCoalescer {
+
+    private static final String PREFIX = RequestCoalescer.class.getName();
+    private static final long TTL_MILLIS = SystemProperties.getLong(PREFIX + ".ttlMillis", 5000L);
+    private static final int MAX_CONCURRENT = SystemProperties.getInteger(PREFIX + ".maxConcurrent", 4);
+    private static final int MAX_CONCURRENT_PER_USER = SystemProperties.getInteger(PREFIX + ".maxConcurrentPerUser", 2);
+    private static final long MAX_WAIT_MILLIS = SystemProperties.getLong(PREFIX + ".maxWaitMillis", 30000L);
+    private static final int MAX_CACHED = 1000;
+
+    /**
+     * Seconds a rejected client is asked to wait before retrying
+     */
+    static final int RETRY_AFTER_SECONDS = 2;
+
+    private final Map<String, CompletableFuture<Response>> inFlight = new ConcurrentHashMap<>();
+    private final Map<String, Cached> results = new ConcurrentHashMap<>();
+    // Only users with a computation running have an entry
+    private final Map<String, Integer> runningPerUser = new ConcurrentHashMap<>();
+    private final Semaphore running = new Semaphore(MAX_CONCURRENT);
+
+    public static RequestCoalescer get() {
+        return ExtensionList.lookupSingleton(RequestCoalescer.class);
+    }
+
+    /**
+     * Computation of one API response
+     */
+    @FunctionalInterface
+    public interface Computation {
+        Response compute() throws IOException;
+    }
+
+    /**
+     * Serve a request from the TTL cache, join an identical request in flight, or
+     * compute it if the user and controller limits allow
+     *
+     * @param user name of the authenticated caller, for the per-user limit
+     * @param scope what the response depends on that differs between callers, e.g. the
+     *              caller's name; callers with equal scopes get the same response
+     * @param request canonical request, e.g. path and query string
+     */
+    public Response execute(String user, String scope, String request, Computation computation)
+            throws IOException, Saturated {
+        String key = scope + '\n' + request;
+        long now = System.currentTimeMillis();
+
+        Cached cached = results.get(key);
+        if (cached != null && now - cached.createdAt < TTL_MILLIS) {
+            return cached.response;
+        }
+
+        CompletableFuture<Response> existing = inFlight.get(key);
+        if (existing != null) {
+            return await(existing);
+        }
+
+        if (runningPerUser.merge(user, 1, Integer::sum) > MAX_CONCURRENT_PER_USER) {
+            release(user);
+            throw new Saturated();
+        }
+        if (!running.tryAcquire()) {
+            release(user);
+            throw new Saturated();
+        }
+
+        CompletableFuture<Response> future = new CompletableFuture<>();
+        try {
+            existing = inFlight.putIfAbsent(key, future);
+            if (existing != null) {
+                // Lost the race to another identical request
+                return await(existing);
+            }
+
+            try {
+                Response response = computation.compute();
+                store(key, response);
+                future.complete(response);
+                return response;
+            } catch (IOException | RuntimeException | Error e) {
+                future.completeExceptionally(e);
+                throw e;
+            } finally {
+                inFlight.remove(key, future);
+            }
+        } finally {
+            running.release();
+            release(user);
+        }
+    }
+
+    private void release(String user) {
+        runningPerUser.computeIfPresent(user, (u, count) -> count > 1 ? count - 1 : null);
+    }
+
+    private void store(String key, Response response) {
+        long now = System.currentTimeMillis();
+        if (results.size() >= MAX_CACHED) {
+            results.values().removeIf(c -> now - c.createdAt >= TTL_MILLIS);
+            if (results.size() >= MAX_CACHED) {
+                results.clear();
+            }
+        }
+        results.put(key, new Cached(response, now));
+    }
+
+    private static Response await(CompletableFuture<Response> future) throws IOException, Saturated {
+        try {
+            return future.get(MAX_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            throw new Saturated();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for a shared request", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Status code and JSON body of a computed response
+     */
+    public static final class Response {
+        private final int status;
+        private final String body;
+
+        private Response(int status, String body) {
+            this.status = status;
+            this.body = body;
+        }
+
+        public static Response ok(Object json) {
+            return new Response(200, json.toString());
+        }
+
+        public static Response status(int status, Object json) {
+            return new Response(status, json.toString());
+        }
+
+        public int getStatus() {
+            return status;
+        }
+
+        public String getBody() {
+            return body;
+        }
+    }
+
+    /**
+     * Thrown when a request would exceed the concurrency limits
+     */
+    public static final class Saturated extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        Saturated() {
+            super("Too many concurrent Alfred API requests", null, false, false);
+        }
+    }
+
+    private static final class Cached {
+        private final Response response;
+        private final long createdAt;
+
+        Cached(Response response, long createdAt) {
+            this.response = response;
+            this.createdAt = createdAt;
+        }
+    }
+}
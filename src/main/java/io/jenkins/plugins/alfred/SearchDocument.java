@@ -0,0 +1,131 @@
+package io.jenkins.plugins.alfred;
+
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * One indexed failure: which build it happened in and what it looked like.
+ * Also owns the tokenizer so indexing and querying split text the same way.
+ */
+public class SearchDocument {
+
+    static final String TOKEN_PREFIX = "t:";
+    static final String CLASS_PREFIX = "c:";
+    static final String CATEGORY_PREFIX = "k:";
+    static final String JOB_PREFIX = "j:";
+
+    private static final int MAX_TEXT_CHARS = 2000;
+    private static final int MIN_TOKEN = 2;
+    private static final int MAX_TOKEN = 64;
+
+    private final String jobName;
+    private final int buildNumber;
+    private final long timestamp;
+    private final String className;
+    private final String testName;
+    private final String category;
+    private final String shortError;
+
+    public SearchDocument(String jobName, int buildNumber, long timestamp, String className,
+            String testName, String category, String shortError) {
+        this.jobName = jobName;
+        this.buildNumber = buildNumber;
+        this.timestamp = timestamp;
+        this.className = className;
+        this.testName = testName;
+        this.category = category;
+        this.shortError = shortError;
+    }
+
+    public String getJobName() {
+        return jobName;
+    }
+
+    public int getBuildNumber() {
+        return buildNumber;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public String getClassName() {
+        return className;
+    }
+
+    public String getTestName() {
+        return testName;
+    }
+
+    public String getCategory() {
+        return category;
+    }
+
+    public String getShortError() {
+        return shortError;
+    }
+
+    /**
+     * Index terms for a failure: message tokens, the first stack trace line, test class,
+     * category and job
+     */
+    static Set<String> terms(String jobName, String className, String category,
+            String errorDetails, String stackTrace) {
+        Set<String> terms = new LinkedHashSet<>();
+        if (errorDetails != null) {
+            tokenize(errorDetails, Math.min(errorDetails.length(), MAX_TEXT_CHARS), terms);
+        }
+        if (stackTrace != null) {
+            int lineEnd = stackTrace.indexOf('\n');
+            tokenize(stackTrace, Math.min(lineEnd < 0 ? stackTrace.length() : lineEnd, MAX_TEXT_CHARS), terms);
+        }
+        if (className != null) {
+            terms.add(CLASS_PREFIX + className.toLowerCase(Locale.ROOT));
+        }
+        terms.add(CATEGORY_PREFIX + category);
+        terms.add(JOB_PREFIX + jobName);
+        return terms;
+    }
+
+    /**
+     * Split text into lowercase tokens of letters, digits, '_', '-' and '.'.
+     * Dotted names also yield their last segment, so "java.net.ConnectException"
+     * matches a search for "ConnectException".
+     */
+    static void tokenize(String text, int end, Set<String> out) {
+        int start = -1;
+        for (int i = 0; i <= end; i++) {
+            char c = i < end ? text.charAt(i) : ' ';
+            boolean tokenChar = Character.isLetterOrDigit(c) || c == '_' || c == '-' || c == '.';
+            if (tokenChar) {
+                if (start < 0) {
+                    start = i;
+                }
+            } else if (start >= 0) {
+                addToken(text, start, i, out);
+                start = -1;
+            }
+        }
+    }
+
+    private static void addToken(String text, int start, int end, Set<String> out) {
+        // Trim punctuation that only ends a sentence or wraps a value
+        while (start < end && (text.charAt(start) == '.' || text.charAt(start) == '-')) {
+            start++;
+        }
+        while (end > start && (text.charAt(end - 1) == '.' || text.charAt(end - 1) == '-')) {
+            end--;
+        }
+        int length = end - start;
+        if (length < MIN_TOKEN || length > MAX_TOKEN) {
+            return;
+        }
+        String token = text.substring(start, end).toLowerCase(Locale.ROOT);
+        out.add(TOKEN_PREFIX + token);
+        int lastDot = token.lastIndexOf('.');
+        if (lastDot >= 0 && token.length() - lastDot - 1 >= MIN_TOKEN) {
+            out.add(TOKEN_PREFIX + token.substring(lastDot + 1));
+        }
+    }
+}
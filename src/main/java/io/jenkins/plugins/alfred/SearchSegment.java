@@ -0,0 +1,282 @@
+package io.jenkins.plugins.alfred;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.function.BiConsumer;
+import java.util.function.ObjIntConsumer;
+import java.util.logging.Logger;
+
+/**
+ * Immutable, memory-mapped segment of the failure search index.
+ *
+ * <pre>
+ * magic "ALFI" | version int | docCount int | termCount int | minTimestamp long | maxTimestamp long
+ * docOffsets int[docCount] | termOffsets int[termCount] (terms sorted)
+ * docs:  timestamp long, buildNumber int, job, className, testName, category, shortError
+ * terms: term, postingCount int, docIds int[postingCount] (ascending)
+ * </pre>
+ * Strings are an int byte length followed by UTF-8 bytes; -1 encodes null.
+ *
+ * The index holds one reference to each segment and every reader takes another while it
+ * reads. When the index drops a segment and the last reader is done, the file is deleted;
+ * the mapping itself goes when the buffer is garbage collected. Where a mapped file cannot
+ * be deleted, the index removes it on the next start, as it is no longer in the manifest.
+ */
+final class SearchSegment {
+    private static final Logger LOGGER = Logger.getLogger(SearchSegment.class.getName());
+
+    private static final int MAGIC = 0x414C4649; // "ALFI"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 4 + 4 + 4 + 4 + 8 + 8;
+
+    private final File file;
+    private final ByteBuffer buffer;
+    private final int docCount;
+    private final int termCount;
+    private final long minTimestamp;
+    private final long maxTimestamp;
+    private final int docOffsetsPos;
+    private final int termOffsetsPos;
+    // Starts with the index's reference
+    private int references = 1;
+
+    private SearchSegment(File file, ByteBuffer buffer) throws IOException {
+        this.file = file;
+        this.buffer = buffer;
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("Not an Alfred index segment: " + file);
+        }
+        this.docCount = buffer.getInt(8);
+        this.termCount = buffer.getInt(12);
+        this.minTimestamp = buffer.getLong(16);
+        this.maxTimestamp = buffer.getLong(24);
+        this.docOffsetsPos = HEADER_SIZE;
+        this.termOffsetsPos = HEADER_SIZE + docCount * 4;
+    }
+
+    static SearchSegment open(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new SearchSegment(file, mapped);
+        }
+    }
+
+    /**
+     * Write a segment for the given documents and postings, then map it
+     */
+    static SearchSegment write(File file, List<SearchDocument> docs, SortedMap<String, int[]> postings)
+            throws IOException {
+        long minTimestamp = Long.MAX_VALUE;
+        long maxTimestamp = Long.MIN_VALUE;
+
+        ByteArrayOutputStream docBytes = new ByteArrayOutputStream();
+        DataOutputStream docOut = new DataOutputStream(docBytes);
+        int[] docOffsets = new int[docs.size()];
+        for (int i = 0; i < docs.size(); i++) {
+            SearchDocument doc = docs.get(i);
+            docOffsets[i] = docOut.size();
+            docOut.writeLong(doc.getTimestamp());
+            docOut.writeInt(doc.getBuildNumber());
+            writeString(docOut, doc.getJobName());
+            writeString(docOut, doc.getClassName());
+            writeString(docOut, doc.getTestName());
+            writeString(docOut, doc.getCategory());
+            writeString(docOut, doc.getShortError());
+            minTimestamp = Math.min(minTimestamp, doc.getTimestamp());
+            maxTimestamp = Math.max(maxTimestamp, doc.getTimestamp());
+        }
+        docOut.flush();
+
+        ByteArrayOutputStream termBytes = new ByteArrayOutputStream();
+        DataOutputStream termOut = new DataOutputStream(termBytes);
+        int[] termOffsets = new int[postings.size()];
+        int t = 0;
+        for (Map.Entry<String, int[]> entry : postings.entrySet()) {
+            termOffsets[t++] = termOut.size();
+            writeString(termOut, entry.getKey());
+            int[] ids = entry.getValue();
+            termOut.writeInt(ids.length);
+            for (int id : ids) {
+                termOut.writeInt(id);
+            }
+        }
+        termOut.flush();
+
+        int docsPos = HEADER_SIZE + docOffsets.length * 4 + termOffsets.length * 4;
+        int termsPos = docsPos + docBytes.size();
+
+        File tmp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(tmp.toPath())))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(docs.size());
+            out.writeInt(postings.size());
+            out.writeLong(docs.isEmpty() ? 0 : minTimestamp);
+            out.writeLong(docs.isEmpty() ? 0 : maxTimestamp);
+            for (int offset : docOffsets) {
+                out.writeInt(docsPos + offset);
+            }
+            for (int offset : termOffsets) {
+                out.writeInt(termsPos + offset);
+            }
+            docBytes.writeTo(out);
+            termBytes.writeTo(out);
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return open(file);
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    /**
+     * Take a reference for reading; false if the segment is already released
+     */
+    synchronized boolean acquire() {
+        if (references == 0) {
+            return false;
+        }
+        references++;
+        return true;
+    }
+
+    /**
+     * Drop a reference; the last one deletes the segment's file
+     */
+    void release() {
+        synchronized (this) {
+            if (--references > 0) {
+                return;
+            }
+        }
+        if (!file.delete()) {
+            LOGGER.fine(() -> "Could not delete index segment " + file);
+        }
+    }
+
+    int getDocCount() {
+        return docCount;
+    }
+
+    long getMinTimestamp() {
+        return minTimestamp;
+    }
+
+    long getMaxTimestamp() {
+        return maxTimestamp;
+    }
+
+    /**
+     * Sorted doc ids for a term, or an empty array if the term is absent
+     */
+    int[] postings(String term) {
+        int low = 0;
+        int high = termCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int entry = buffer.getInt(termOffsetsPos + mid * 4);
+            int cmp = readString(entry).compareTo(term);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return postingsAt(entry);
+            }
+        }
+        return new int[0];
+    }
+
+    private int[] postingsAt(int entry) {
+        int pos = entry + 4 + buffer.getInt(entry);
+        int count = buffer.getInt(pos);
+        int[] ids = new int[count];
+        pos += 4;
+        for (int i = 0; i < count; i++) {
+            ids[i] = buffer.getInt(pos + i * 4);
+        }
+        return ids;
+    }
+
+    long timestamp(int docId) {
+        return buffer.getLong(buffer.getInt(docOffsetsPos + docId * 4));
+    }
+
+    /**
+     * Full name of the job a document belongs to, without reading the rest of it
+     */
+    String jobName(int docId) {
+        return readString(buffer.getInt(docOffsetsPos + docId * 4) + 8 + 4);
+    }
+
+    SearchDocument document(int docId) {
+        int pos = buffer.getInt(docOffsetsPos + docId * 4);
+        long timestamp = buffer.getLong(pos);
+        pos += 8;
+        int buildNumber = buffer.getInt(pos);
+        pos += 4;
+        String[] fields = new String[5];
+        for (int i = 0; i < fields.length; i++) {
+            int length = buffer.getInt(pos);
+            fields[i] = readString(pos);
+            pos += 4 + Math.max(0, length);
+        }
+        return new SearchDocument(fields[0], buildNumber, timestamp, fields[1], fields[2], fields[3], fields[4]);
+    }
+
+    /**
+     * All documents in id order, used when merging segments
+     */
+    void forEachDocument(ObjIntConsumer<SearchDocument> consumer) {
+        for (int i = 0; i < docCount; i++) {
+            consumer.accept(document(i), i);
+        }
+    }
+
+    /**
+     * Every term with its postings, in sorted order, used when merging segments
+     */
+    void forEachTerm(BiConsumer<String, int[]> consumer) {
+        for (int t = 0; t < termCount; t++) {
+            int entry = buffer.getInt(termOffsetsPos + t * 4);
+            consumer.accept(readString(entry), postingsAt(entry));
+        }
+    }
+
+    private String readString(int pos) {
+        int length = buffer.getInt(pos);
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        ByteBuffer view = buffer.duplicate();
+        view.position(pos + 4);
+        view.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+}
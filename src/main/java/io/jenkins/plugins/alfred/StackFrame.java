@@ -0,0 +1,110 @@
+package io.jenkins.plugins.alfred;
+
+import java.io.Serializable;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * One "at ..." line of a stack trace. Instances are interned, so the frames shared by
+ * thousands of failing tests (runners, frameworks, the broken helper) exist once.
+ */
+public final class StackFrame implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    // Bounded so unusual traces cannot grow it forever; cleared rather than evicted
+    private static final int MAX_INTERNED = 100_000;
+    private static final Map<StackFrame, StackFrame> INTERNED = new ConcurrentHashMap<>();
+
+    // Line number of a native method, as in StackTraceElement
+    static final int NATIVE_LINE = -2;
+
+    private final String className;
+    private final String methodName;
+    private final String fileName;
+    private final int line;
+
+    private StackFrame(String className, String methodName, String fileName, int line) {
+        this.className = className;
+        this.methodName = methodName;
+        this.fileName = fileName;
+        this.line = line;
+    }
+
+    static StackFrame of(String className, String methodName, String fileName, int line) {
+        StackFrame frame = new StackFrame(className, methodName, fileName, line);
+        StackFrame existing = INTERNED.get(frame);
+        if (existing != null) {
+            return existing;
+        }
+        if (INTERNED.size() >= MAX_INTERNED) {
+            INTERNED.clear();
+        }
+        existing = INTERNED.putIfAbsent(frame, frame);
+        return existing != null ? existing : frame;
+    }
+
+    public String getClassName() {
+        return className;
+    }
+
+    public String getMethodName() {
+        return methodName;
+    }
+
+    /**
+     * Source file, or null for native or unknown sources
+     */
+    public String getFileName() {
+        return fileName;
+    }
+
+    /**
+     * Line number, -1 if unknown or {@link #NATIVE_LINE} for a native method
+     */
+    public int getLine() {
+        return line;
+    }
+
+    private Object readResolve() {
+        return of(className, methodName, fileName, line);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof StackFrame)) {
+            return false;
+        }
+        StackFrame other = (StackFrame) o;
+        return line == other.line && className.equals(other.className) && methodName.equals(other.methodName)
+            && Objects.equals(fileName, other.fileName);
+    }
+
+    @Override
+    public int hashCode() {
+        return (className.hashCode() * 31 + methodName.hashCode()) * 31 + line;
+    }
+
+    /**
+     * Same form as in a Java stack trace, e.g. com.example.Foo.bar(Foo.java:42)
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(className.length() + methodName.length() + 24);
+        sb.append(className).append('.').append(methodName).append('(');
+        if (line == NATIVE_LINE) {
+            sb.append("Native Method");
+        } else if (fileName == null) {
+            sb.append("Unknown Source");
+        } else {
+            sb.append(fileName);
+            if (line >= 0) {
+                sb.append(':').append(line);
+            }
+        }
+        return sb.append(')').toString();
+    }
+}
@@ -0,0 +1,220 @@
+package io.jenkins.plugins.alfred;
+
+import jenkins.util.SystemProperties;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Single-pass parser for Java stack traces as JUnit reports store them.
+ *
+ * Walks the text line by line without regular expressions or splitting: the first line
+ * and every unindented "Caused by:" line start a {@link ParsedStackTrace.Cause}, "at" lines
+ * become interned {@link StackFrame}s, and "... N more" records the frames shared with the
+ * enclosing exception. Suppressed exceptions are skipped, as are continuation lines of
+ * multi-line messages.
+ *
+ * The culprit is the first frame owned by the application, searched from the root cause
+ * outwards. Set {@code io.jenkins.plugins.alfred.StackTraceParser.culpritPackages} to a
+ * comma-separated list of package prefixes to say which code is the application's; without
+ * it, any frame outside the JDK, test frameworks and build tools counts.
+ */
+final class StackTraceParser {
+
+    private static final String[] CULPRIT_PACKAGES = prefixes(SystemProperties.getString(
+        StackTraceParser.class.getName() + ".culpritPackages", ""));
+
+    private static final String[] FRAMEWORK_PACKAGES = {
+        "java.", "javax.", "jdk.", "sun.", "com.sun.", "kotlin.", "scala.", "groovy.", "org.codehaus.groovy.",
+        "org.junit.", "junit.", "org.testng.", "org.hamcrest.", "org.assertj.", "org.mockito.", "org.opentest4j.",
+        "org.apache.maven.surefire.", "org.gradle.", "worker.org.gradle.", "org.spockframework."
+    };
+
+    private static final String CAUSED_BY = "Caused by: ";
+    private static final String SUPPRESSED = "Suppressed: ";
+
+    private StackTraceParser() {
+    }
+
+    static ParsedStackTrace parse(String stackTrace) {
+        return parse(stackTrace, CULPRIT_PACKAGES);
+    }
+
+    static ParsedStackTrace parse(String text, String[] culpritPackages) {
+        if (text == null || text.isEmpty()) {
+            return ParsedStackTrace.EMPTY;
+        }
+
+        List<ParsedStackTrace.Cause> causes = new ArrayList<>(2);
+        String type = null;
+        String message = null;
+        List<StackFrame> frames = new ArrayList<>();
+        int omitted = 0;
+        // Inside a suppressed exception, whose frames belong to another chain
+        boolean skipping = false;
+
+        int length = text.length();
+        int pos = 0;
+        while (pos < length) {
+            int end = text.indexOf('\n', pos);
+            if (end < 0) {
+                end = length;
+            }
+            int lineEnd = end > pos && text.charAt(end - 1) == '\r' ? end - 1 : end;
+            int start = skipWhitespace(text, pos, lineEnd);
+            boolean indented = start > pos;
+
+            if (start == lineEnd) {
+                // Blank line
+            } else if (type == null) {
+                int colon = headerColon(text, start, lineEnd);
+                type = text.substring(start, colon);
+                message = messageAfter(text, colon, lineEnd);
+            } else if (!indented && text.startsWith(CAUSED_BY, start)) {
+                causes.add(new ParsedStackTrace.Cause(type, message, frames, omitted));
+                int from = start + CAUSED_BY.length();
+                int colon = headerColon(text, from, lineEnd);
+                type = text.substring(from, colon);
+                message = messageAfter(text, colon, lineEnd);
+                frames = new ArrayList<>();
+                omitted = 0;
+                skipping = false;
+            } else if (skipping) {
+                // Frames of a suppressed exception
+            } else if (indented && text.startsWith("at ", start)) {
+                StackFrame frame = parseFrame(text, start + 3, lineEnd);
+                if (frame != null) {
+                    frames.add(frame);
+                }
+            } else if (indented && text.startsWith("... ", start) && text.startsWith(" more", lineEnd - 5)) {
+                omitted = Math.max(0, parseCount(text, start + 4, lineEnd - 5));
+            } else if (indented && (text.startsWith(SUPPRESSED, start) || text.startsWith(CAUSED_BY, start))) {
+                skipping = true;
+            }
+            pos = end + 1;
+        }
+        if (type == null) {
+            return ParsedStackTrace.EMPTY;
+        }
+        causes.add(new ParsedStackTrace.Cause(type, message, frames, omitted));
+
+        return new ParsedStackTrace(causes, culprit(causes, culpritPackages));
+    }
+
+    /**
+     * Parse the part of an "at" line after "at ", e.g. java.base/java.lang.Thread.run(Thread.java:829)
+     */
+    static StackFrame parseFrame(String text, int from, int to) {
+        int paren = text.indexOf('(', from);
+        if (paren < 0 || paren >= to) {
+            return null;
+        }
+        int close = text.lastIndexOf(')', to - 1);
+        if (close < paren) {
+            return null;
+        }
+
+        // Drop a module or class loader prefix such as "java.base/" or "app//"; a '/' after
+        // a '$' belongs to a hidden class name such as Foo$$Lambda$14/0x0000000800c03000
+        int nameStart = from;
+        int slash = text.indexOf('/', from);
+        if (slash >= 0 && slash < paren && text.lastIndexOf('$', slash) < from) {
+            nameStart = slash + 1 < paren && text.charAt(slash + 1) == '/' ? slash + 2 : slash + 1;
+        }
+        int dot = text.lastIndexOf('.', paren - 1);
+        if (dot <= nameStart) {
+            return null;
+        }
+        String className = text.substring(nameStart, dot);
+        String methodName = text.substring(dot + 1, paren);
+
+        String fileName = null;
+        int line = -1;
+        if (text.startsWith("Native Method", paren + 1)) {
+            line = StackFrame.NATIVE_LINE;
+        } else if (!text.startsWith("Unknown Source", paren + 1)) {
+            int colon = text.lastIndexOf(':', close - 1);
+            if (colon > paren) {
+                fileName = text.substring(paren + 1, colon);
+                line = parseCount(text, colon + 1, close);
+            } else if (close > paren + 1) {
+                fileName = text.substring(paren + 1, close);
+            }
+        }
+        return StackFrame.of(className, methodName, fileName, line);
+    }
+
+    private static StackFrame culprit(List<ParsedStackTrace.Cause> causes, String[] culpritPackages) {
+        for (int c = causes.size() - 1; c >= 0; c--) {
+            for (StackFrame frame : causes.get(c).getFrames()) {
+                if (isApplication(frame.getClassName(), culpritPackages)) {
+                    return frame;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static boolean isApplication(String className, String[] culpritPackages) {
+        // Generated lambda and proxy classes point at no source line
+        if (className.contains("$$Lambda") || className.contains("$Proxy")) {
+            return false;
+        }
+        if (culpritPackages.length > 0) {
+            return startsWithAny(className, culpritPackages);
+        }
+        return !startsWithAny(className, FRAMEWORK_PACKAGES);
+    }
+
+    private static boolean startsWithAny(String className, String[] prefixes) {
+        for (String prefix : prefixes) {
+            if (className.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static String[] prefixes(String packages) {
+        List<String> prefixes = new ArrayList<>();
+        for (String prefix : packages.split(",")) {
+            prefix = prefix.trim();
+            if (!prefix.isEmpty()) {
+                prefixes.add(prefix);
+            }
+        }
+        return prefixes.toArray(new String[0]);
+    }
+
+    // End of the exception type: the first ':' or the end of the line
+    private static int headerColon(String text, int from, int to) {
+        int colon = text.indexOf(':', from);
+        return colon >= 0 && colon < to ? colon : to;
+    }
+
+    private static String messageAfter(String text, int colon, int to) {
+        int start = skipWhitespace(text, colon + 1, to);
+        return start < to ? text.substring(start, to) : null;
+    }
+
+    private static int skipWhitespace(String text, int from, int to) {
+        while (from < to && Character.isWhitespace(text.charAt(from))) {
+            from++;
+        }
+        return from;
+    }
+
+    private static int parseCount(String text, int from, int to) {
+        int value = 0;
+        boolean digits = false;
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9' || value > (Integer.MAX_VALUE - 9) / 10) {
+                return digits ? value : -1;
+            }
+            value = value * 10 + (c - '0');
+            digits = true;
+        }
+        return digits ? value : -1;
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Alfred failure analysis page.
+ * The view analysis is embedded in the page when it renders (#alfred-analysis-data);
+ * refreshing revalidates it against /alfred-api/view with its ETag and only downloads
+ * and re-renders the analysis when some job's analysis changed since.
+ */
+(function() {
+  var page = document.getElementById('alfred-analysis-page');
+  if (!page) return;
+
+  var viewUrl = page.getAttribute('data-view-url');
+  var etag = page.getAttribute('data-etag');
+  var loadingContainer = document.getElementById('loading-container');
+  var resultsContainer = document.getElementById('analysis-results');
+  var refreshBtn = document.getElementById('refresh-btn');
+
+  function escapeHtml(text) {
+    if (!text) return '';
+    var div = document.createElement('div');
+    div.textContent = text;
+    return div.innerHTML;
+  }
+
+  function showResults(data) {
+    renderAnalysis(data);
+    loadingContainer.style.display = 'none';
+    resultsContainer.classList.add('visible');
+  }
+
+  async function loadAnalysis() {
+    try {
+      if (refreshBtn) refreshBtn.disabled = true;
+
+      var headers = {};
+      if (etag) headers['If-None-Match'] = etag;
+      // no-store: the 304 must reach this script instead of being answered from the browser cache
+      var response = await fetch(viewUrl, { credentials: 'same-origin', cache: 'no-store', headers: headers });
+      if (response.status === 304) return;
+      if (!response.ok) {
+        throw new Error('HTTP ' + response.status + ': ' + response.statusText);
+      }
+
+      var data = await response.json();
+      etag = response.headers.get('ETag');
+      showResults(data);
+    } catch (error) {
+      console.error('Error performing analysis:', error);
+      resultsContainer.classList.remove('visible');
+      loadingContainer.style.display = 'block';
+      loadingContainer.innerHTML =
+        '<div style="color: #d9534f; font-size: 16px; font-weight: 600; margin-bottom: 8px;">⚠️ Error Loading Analysis</div>' +
+        '<div style="color: #666; font-size: 13px; margin-bottom: 16px;">' + escapeHtml(error.message) + '</div>' +
+        '<button type="button" class="alfred-btn alfred-btn-primary" data-alfred-action="refresh">Try Again</button>';
+    } finally {
+      if (refreshBtn) refreshBtn.disabled = false;
+    }
+  }
+
+  function renderAnalysis(data) {
+    if (!data || data.totalFailures === 0) {
+      resultsContainer.innerHTML =
+        '<div style="text-align: center; padding: 60px 20px; background: white; border: 1px solid #5cb85c; border-radius: 8px; color: #5cb85c;">' +
+        '<div style="font-size: 48px; margin-bottom: 16px;">✅</div>' +
+        '<div style="font-size: 20px; font-weight: 600; margin-bottom: 8px;">No Failures Detected</div>' +
+        '<div style="font-size: 14px; color: #666;">All jobs in this view are passing!</div>' +
+        '</div>';
+      return;
+    }
+
+    var html = '';
+
+    // Summary Section
+    var categoriesWithFailures = data.categoriesWithFailures || 0;
+    var topCategory = data.topCategory || 'Unknown';
+
+    html += '<div class="alfred-summary-section"><div class="alfred-summary-grid">' +
+      '<div><div class="alfred-summary-item-value stat-failure">' + data.totalFailures + '</div>' +
+      '<div class="alfred-summary-item-label">Total Failed Tests</div></div>' +
+      '<div><div class="alfred-summary-item-value stat-unstable">' + categoriesWithFailures + '</div>' +
+      '<div class="alfred-summary-item-label">Failure Types</div></div>' +
+      '<div><div class="alfred-summary-item-value stat-failure" style="font-size: 18px;">' + escapeHtml(topCategory) + '</div>' +
+      '<div class="alfred-summary-item-label">Top Issue</div></div>' +
+      '</div></div>';
+
+    // Categories Grid
+    var categories = Object.entries(data.categories || {});
+    if (categories.length > 0) {
+      html += '<div class="alfred-categories-section">' +
+        '<div class="alfred-section-title">Failure Categories</div>' +
+        '<div class="alfred-categories-grid">';
+
+      categories.forEach(function(entry) {
+        var hasFailures = entry[1] > 0;
+        html += '<div class="alfred-category-card ' + (hasFailures ? 'has-failures' : '') + '">' +
+          '<div class="alfred-category-name">' + escapeHtml(entry[0]) + '</div>' +
+          '<div class="alfred-category-count ' + (hasFailures ? '' : 'zero') + '">' + entry[1] + '</div>' +
+          '</div>';
+      });
+
+      html += '</div></div>';
+    }
+
+    // Top Failed APIs
+    if (data.topFailedApis && data.topFailedApis.length > 0) {
+      html += '<div class="alfred-apis-section">' +
+        '<div class="alfred-section-title">Top Failed API Endpoints</div>' +
+        '<ul class="alfred-api-list">';
+
+      data.topFailedApis.forEach(function(api) {
+        html += '<li class="alfred-api-item">' +
+          '<span class="alfred-api-endpoint" title="' + escapeHtml(api.endpoint) + '">' + escapeHtml(api.endpoint) + '</span>' +
+          '<span class="alfred-api-count">' + api.count + '</span>' +
+          '</li>';
+      });
+
+      html += '</ul></div>';
+    }
+
+    // Failure Distribution Chart
+    var topCategories = categories
+      .filter(function(entry) { return entry[1] > 0; })
+      .sort(function(a, b) { return b[1] - a[1]; })
+      .slice(0, 8);
+
+    if (topCategories.length > 0) {
+      var maxCount = Math.max.apply(null, topCategories.map(function(entry) { return entry[1]; }));
+
+      html += '<div class="alfred-chart-section">' +
+        '<div class="alfred-section-title">Failure Distribution Chart</div>' +
+        '<div class="alfred-chart">';
+
+      topCategories.forEach(function(entry) {
+        var heightPercent = (entry[1] / maxCount) * 100;
+        html += '<div class="alfred-chart-bar" style="height: ' + heightPercent + '%;">' +
+          '<div class="alfred-chart-value">' + entry[1] + '</div>' +
+          '<div class="alfred-chart-label">' + escapeHtml(entry[0]) + '</div>' +
+          '</div>';
+      });
+
+      html += '</div></div>';
+    }
+
+    resultsContainer.innerHTML = html;
+  }
+
+  page.addEventListener('click', function(event) {
+    var actionElement = event.target.closest('[data-alfred-action]');
+    if (!actionElement) return;
+    var action = actionElement.getAttribute('data-alfred-action');
+    if (action === 'refresh') {
+      loadAnalysis();
+    } else if (action === 'back') {
+      window.history.back();
+    }
+  });
+
+  function init() {
+    var dataElement = document.getElementById('alfred-analysis-data');
+    if (dataElement) {
+      showResults(JSON.parse(dataElement.textContent));
+    } else {
+      // Not embedded, e.g. the controller was busy: fetch it like a refresh would
+      etag = null;
+      loadAnalysis();
+    }
+  }
+
+  if (document.readyState === 'loading') {
+    document.addEventListener('DOMContentLoaded', init);
+  } else {
+    init();
+  }
+})();
@@ -0,0 +1,306 @@
+/*
+ * Alfred dashboard loader.
+ * The dashboard body is rendered and cached on the controller (/alfred-api/dashboard);
+ * this script only fetches it, places it above the job list and wires up the buttons.
+ */
+(function() {
+  var container = document.getElementById('alfred-dashboard-container');
+  if (!container) return;
+
+  var fragmentUrl = container.getAttribute('data-fragment-url');
+  var viewQuery = container.getAttribute('data-view-query');
+  var body = document.getElementById('alfred-dashboard-body');
+  var autoRefreshInterval = null;
+  var jobsData = [];
+  var lastHtml = null;
+
+  // Helper function to escape HTML
+  function escapeHtml(text) {
+    if (!text) return '';
+    var div = document.createElement('div');
+    div.textContent = text;
+    return div.innerHTML;
+  }
+
+  // Helper function to escape pipe characters in Markdown table cells
+  function escapeMarkdownPipes(text) {
+    if (!text) return '';
+    return text.replace(/\|/g, '\\|');
+  }
+
+  function absoluteUrl(relative) {
+    return new URL(rootURL + '/' + relative, window.location.href).href;
+  }
+
+  // Fetch the server-rendered fragment; the browser revalidates it with the ETag
+  async function loadFragment() {
+    try {
+      var response = await fetch(fragmentUrl, { credentials: 'same-origin' });
+      if (!response.ok) {
+        throw new Error('HTTP ' + response.status + ': ' + response.statusText);
+      }
+      var html = await response.text();
+      if (html === lastHtml) return;
+
+      // Keep the user's expand/collapse state across refreshes
+      var content = document.getElementById('alfred-analysis-content');
+      var expanded = content && content.style.maxHeight && content.style.maxHeight !== '0px';
+
+      body.innerHTML = html;
+      lastHtml = html;
+
+      var fragment = body.querySelector('.alfred-fragment');
+      var timestampElement = document.getElementById('alfred-timestamp');
+      if (fragment && timestampElement) {
+        var renderedAt = parseInt(fragment.getAttribute('data-rendered-at'), 10);
+        timestampElement.textContent = 'Updated: ' + new Date(renderedAt).toLocaleString();
+      }
+
+      var dataElement = document.getElementById('alfred-jobs-data');
+      jobsData = dataElement ? JSON.parse(dataElement.textContent) : [];
+
+      if (expanded) {
+        setAnalysisExpanded(true);
+      }
+      applyCollapsed();
+    } catch (error) {
+      console.error('Error loading Alfred dashboard:', error);
+    }
+  }
+
+  function setAnalysisExpanded(expanded) {
+    var content = document.getElementById('alfred-analysis-content');
+    var icon = document.getElementById('alfred-analysis-icon');
+    if (!content || !icon) return;
+    content.style.maxHeight = expanded ? '2000px' : '0';
+    icon.style.transform = expanded ? 'rotate(90deg)' : 'rotate(0deg)';
+  }
+
+  function toggleFailureAnalysis() {
+    var content = document.getElementById('alfred-analysis-content');
+    if (!content) return;
+    setAnalysisExpanded(content.style.maxHeight === '0px' || content.style.maxHeight === '');
+  }
+
+  // Toggle dashboard collapse/expand
+  function applyCollapsed() {
+    var collapsed = container.getAttribute('data-collapsed') === 'true';
+    var statsGrid = document.getElementById('alfred-stats-grid');
+    var failureAnalysis = document.getElementById('alfred-failure-analysis');
+    var collapseBtn = document.getElementById('alfred-collapse-btn');
+    if (statsGrid) statsGrid.style.display = collapsed ? 'none' : 'grid';
+    if (failureAnalysis) failureAnalysis.style.display = collapsed ? 'none' : 'block';
+    if (collapseBtn) collapseBtn.textContent = collapsed ? '▲ Expand' : '▼ Collapse';
+  }
+
+  function toggleDashboardCollapse() {
+    var collapsed = container.getAttribute('data-collapsed') === 'true';
+    container.setAttribute('data-collapsed', collapsed ? 'false' : 'true');
+    applyCollapsed();
+  }
+
+  // Perform inline failure analysis
+  async function performInlineAnalysis() {
+    var analyzeBtn = document.getElementById('alfred-analyze-btn');
+    var content = document.getElementById('alfred-analysis-content');
+    var originalBtnText = analyzeBtn.textContent;
+
+    try {
+      analyzeBtn.disabled = true;
+      analyzeBtn.textContent = '⏳ Analyzing...';
+
+      var response = await fetch(rootURL + '/alfred-api/view?' + viewQuery);
+      if (!response.ok) {
+        throw new Error('HTTP ' + response.status + ': ' + response.statusText);
+      }
+
+      var data = await response.json();
+      renderInlineAnalysis(data, content);
+      setAnalysisExpanded(true);
+
+      analyzeBtn.textContent = '✅ Analysis Complete';
+      setTimeout(function() {
+        analyzeBtn.disabled = false;
+        analyzeBtn.textContent = originalBtnText;
+      }, 2000);
+    } catch (error) {
+      console.error('Error performing analysis:', error);
+      content.querySelector('div').innerHTML = '<div style="padding: 20px; background: #fff5f5; border: 1px solid #ffcccc; border-radius: 3px; text-align: center;">' +
+        '<div style="color: #d9534f; font-size: 16px; font-weight: 600; margin-bottom: 8px;">⚠️ Error Loading Analysis</div>' +
+        '<div style="color: #666; font-size: 13px;">' + escapeHtml(error.message) + '</div>' +
+        '</div>';
+      setAnalysisExpanded(true);
+      analyzeBtn.disabled = false;
+      analyzeBtn.textContent = originalBtnText;
+    }
+  }
+
+  // Render inline analysis results
+  function renderInlineAnalysis(data, contentElement) {
+    var innerDiv = contentElement.querySelector('div');
+    if (!innerDiv) return;
+
+    if (!data || data.totalFailures === 0) {
+      innerDiv.innerHTML = '<div style="padding: 20px; background: white; border: 1px solid #5cb85c; border-radius: 3px; text-align: center; color: #5cb85c;">' +
+        '<div style="font-size: 48px; margin-bottom: 16px;">✅</div>' +
+        '<div style="font-size: 20px; font-weight: 600; margin-bottom: 8px;">No Failures Detected</div>' +
+        '<div style="font-size: 14px; color: #666;">All jobs in this view are passing!</div>' +
+        '</div>';
+      return;
+    }
+
+    var html = '<div style="padding: 12px; background: linear-gradient(135deg, #fff5f5 0%, #ffe5e5 100%); border: 1px solid #ffcccc; border-radius: 3px; margin-bottom: 12px;">' +
+      '<div style="font-size: 10px; color: #666; margin-bottom: 3px; text-transform: uppercase; letter-spacing: 0.5px;">Total Test Failures</div>' +
+      '<div style="font-size: 24px; font-weight: 700; color: #d9534f; font-family: Consolas, monospace;">' + data.totalFailures + '</div>' +
+      '</div>';
+
+    if (data.categories && Object.keys(data.categories).length > 0) {
+      html += '<div style="margin-top: 12px;">' +
+        '<div style="font-size: 12px; font-weight: 600; color: #333; margin-bottom: 8px; padding-bottom: 8px; border-bottom: 1px solid #e9e9e9;">Failure Categories</div>' +
+        '<div style="display: grid; grid-template-columns: repeat(auto-fit, minmax(200px, 1fr)); gap: 10px;">';
+      for (var category in data.categories) {
+        html += '<div style="background: white; border: 1px solid #d9d9d9; border-radius: 3px; padding: 12px; border-left: 3px solid #d9534f;">' +
+          '<div style="font-size: 11px; font-weight: 600; color: #555; margin-bottom: 6px; text-transform: uppercase; letter-spacing: 0.5px;">' + escapeHtml(category) + '</div>' +
+          '<div style="font-size: 28px; font-weight: 700; color: #d9534f; font-family: Consolas, monospace;">' + data.categories[category] + '</div>' +
+          '</div>';
+      }
+      html += '</div></div>';
+    }
+
+    if (data.topFailedApis && data.topFailedApis.length > 0) {
+      html += '<div style="background: white; border: 1px solid #d9d9d9; border-radius: 3px; padding: 16px; margin-top: 12px;">' +
+        '<div style="font-size: 12px; font-weight: 600; color: #333; margin-bottom: 12px;">Top Failed API Endpoints</div>' +
+        '<div style="display: flex; flex-direction: column; gap: 6px;">';
+      data.topFailedApis.forEach(function(api) {
+        html += '<div style="display: flex; justify-content: space-between; align-items: center; padding: 8px 10px; background: #fafafa; border-radius: 3px;">' +
+          '<span style="font-family: Consolas, monospace; font-size: 12px; color: #333; flex: 1; overflow: hidden; text-overflow: ellipsis; white-space: nowrap;" title="' + escapeHtml(api.endpoint) + '">' + escapeHtml(api.endpoint) + '</span>' +
+          '<span style="background: #d9534f; color: white; padding: 3px 10px; border-radius: 12px; font-size: 11px; font-weight: 600; margin-left: 12px;">' + api.count + '</span>' +
+          '</div>';
+      });
+      html += '</div></div>';
+    }
+
+    innerDiv.innerHTML = html;
+  }
+
+  // Copy results to clipboard as Markdown table, from the rows embedded in the fragment
+  async function copyResultsToClipboard() {
+    var btn = document.getElementById('alfred-copy-btn');
+    var originalText = btn.textContent;
+
+    function resetLater(text) {
+      btn.textContent = text;
+      setTimeout(function() {
+        btn.disabled = false;
+        btn.textContent = originalText;
+      }, 2000);
+    }
+
+    try {
+      btn.disabled = true;
+      if (!jobsData || jobsData.length === 0) {
+        resetLater('❌ No Data');
+        return;
+      }
+
+      var jobs = jobsData.slice().sort(function(a, b) {
+        return (a.name || '').toLowerCase().localeCompare((b.name || '').toLowerCase());
+      });
+
+      var markdown = '| Job Name | Owner | Status | Date | #Total | #Failed | #Skipped | Comments |\n';
+      markdown += '|----------|-------|--------|------|--------|---------|----------|----------|\n';
+
+      jobs.forEach(function(job) {
+        var jobNameLink = '[' + escapeMarkdownPipes(job.name || 'Unknown') + '](' + absoluteUrl(job.url) + ')';
+        var statusEmoji;
+        switch (job.status) {
+          case 'SUCCESS': statusEmoji = '🟢 Success'; break;
+          case 'FAILURE': statusEmoji = '🔴 Failed'; break;
+          case 'UNSTABLE': statusEmoji = '🟠 Unstable'; break;
+          case 'ABORTED': statusEmoji = '⚫ Aborted'; break;
+          default: statusEmoji = '⚪ Unknown';
+        }
+        var buildDate = job.buildTimestamp ? new Date(job.buildTimestamp).toISOString().split('T')[0] : '-';
+        var totalTests = job.totalTests !== undefined ? job.totalTests : '-';
+        var failedTests = job.failedTests !== undefined ? job.failedTests : '-';
+        var skippedTests = job.skippedTests !== undefined ? job.skippedTests : '-';
+        var comments = job.buildNumber ? '[Build #' + job.buildNumber + '](' + absoluteUrl(job.buildUrl) + ')' : '-';
+
+        markdown += '| ' + jobNameLink + ' |  | ' + statusEmoji + ' | ' + buildDate + ' | ' + totalTests + ' | ' + failedTests + ' | ' + skippedTests + ' | ' + comments + ' |\n';
+      });
+
+      await navigator.clipboard.writeText(markdown);
+      resetLater('✅ Copied!');
+    } catch (error) {
+      console.error('Error copying to clipboard:', error);
+      resetLater('❌ Failed');
+    }
+  }
+
+  // Reposition dashboard above the job list
+  function repositionDashboard() {
+    var targets = [
+      document.querySelector('#projectstatus'),
+      document.querySelector('.pane.stripped'),
+      document.querySelector('#main-panel > div'),
+      document.querySelector('#main-panel')
+    ];
+    for (var i = 0; i < targets.length; i++) {
+      var target = targets[i];
+      if (target && target !== container && target.parentNode) {
+        target.parentNode.insertBefore(container, target);
+        container.style.display = 'block';
+        return;
+      }
+    }
+  }
+
+  // One delegated listener for every button, including those inside the fragment
+  container.addEventListener('click', function(event) {
+    var actionElement = event.target.closest('[data-alfred-action]');
+    if (!actionElement) return;
+    var action = actionElement.getAttribute('data-alfred-action');
+    if (action === 'analyze') {
+      event.stopPropagation();
+      performInlineAnalysis();
+    } else if (action === 'toggle-analysis') {
+      toggleFailureAnalysis();
+    } else if (action === 'collapse') {
+      toggleDashboardCollapse();
+    } else if (action === 'copy') {
+      copyResultsToClipboard();
+    } else if (action === 'refresh') {
+      loadFragment();
+    }
+  });
+
+  function startAutoRefresh() {
+    if (autoRefreshInterval) clearInterval(autoRefreshInterval);
+    autoRefreshInterval = setInterval(loadFragment, 120000);
+  }
+
+  // Stop auto-refresh when page is hidden (save resources)
+  document.addEventListener('visibilitychange', function() {
+    if (document.hidden) {
+      if (autoRefreshInterval) {
+        clearInterval(autoRefreshInterval);
+        autoRefreshInterval = null;
+      }
+    } else {
+      loadFragment();
+      startAutoRefresh();
+    }
+  });
+
+  function init() {
+    repositionDashboard();
+    loadFragment();
+    startAutoRefresh();
+  }
+
+  if (document.readyState === 'loading') {
+    document.addEventListener('DOMContentLoaded', init);
+  } else {
+    init();
+  }
+})();
@@ -0,0 +1,337 @@
+package io.jenkins.plugins.alfred;
+
+import hudson.Launcher;
+import hudson.model.AbstractBuild;
+import hudson.model.BuildListener;
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import hudson.model.ListView;
+import hudson.model.Result;
+import hudson.tasks.junit.JUnitResultArchiver;
+import net.sf.json.JSONObject;
+import org.htmlunit.Page;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.TestBuilder;
+import org.jvnet.hudson.test.WithTimeout;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Scale and latency budgets for the API endpoints, the dashboard and the analysis of very
+ * large failure sets, on synthetic jobs with JUnit results at varying failure rates.
+ *
+ * The suite takes minutes, so it only runs when asked for with -Dalfred.scale=true.
+ * Sizes default to what a CI run can afford; add e.g. -Dalfred.scale.jobs=10000 and
+ * -Dalfred.scale.failures=100000 for a local measure before a release. Budgets are loose
+ * enough for a shared CI agent and are meant to catch regressions in complexity, such as
+ * a request that analyzes every build again, not to benchmark.
+ */
+public class AlfredScaleTest {
+
+    private static final int JOBS = Integer.getInteger("alfred.scale.jobs", 2000);
+    private static final int TESTS_PER_JOB = 40;
+    // Fraction of failing tests, cycled over the jobs
+    private static final double[] FAILURE_RATES = {0, 0, 0.025, 0.1, 0.25, 0.5};
+    private static final int LARGE_FAILURES = Integer.getInteger("alfred.scale.failures", 20000);
+    private static final int REPEATS = 20;
+    private static final int CONCURRENT_CLIENTS = 8;
+
+    private static final long VIEW_API_COLD_MILLIS = 30000;
+    private static final long VIEW_API_WARM_MILLIS = 2000;
+    private static final long NOT_MODIFIED_MILLIS = 500;
+    private static final long DASHBOARD_PAGE_MILLIS = 10000;
+    private static final long DASHBOARD_FRAGMENT_MILLIS = 2000;
+    private static final long CONCURRENT_LOAD_MILLIS = 120000;
+    private static final long ALLOCATED_BYTES_PER_JOB = 32 * 1024;
+    private static final long EXACT_ANALYSIS_MILLIS = 60000;
+    private static final long JOB_API_MILLIS = 2000;
+    private static final long STORED_BYTES_PER_FAILURE = 512;
+
+    // Messages the failure rules put in different categories
+    private static final String[] MESSAGES = {
+        "expected 200 but was 500 from /api/orders",
+        "java.net.SocketTimeoutException: Read timed out",
+        "java.sql.SQLException: deadlock detected",
+        "java.net.ConnectException: Connection refused",
+        "java.lang.AssertionError: expected 1 but was 2",
+        "Environment variable BASE_URL not set",
+    };
+
+    @Rule
+    public JenkinsRule j = new JenkinsRule();
+
+    @BeforeClass
+    public static void enabled() {
+        // Checked before the rule starts Jenkins, so a skipped run costs nothing
+        assumeTrue(Boolean.getBoolean("alfred.scale"));
+    }
+
+    @Test
+    @WithTimeout(1800)
+    public void viewApiAndDashboardStayWithinBudgetsAcrossThousandsOfJobs() throws Exception {
+        j.jenkins.setNumExecutors(8);
+        int expectedFailures = 0;
+        List<FreeStyleProject> projects = new ArrayList<>(JOBS);
+        for (int i = 0; i < JOBS; i++) {
+            int failures = (int) Math.round(TESTS_PER_JOB * FAILURE_RATES[i % FAILURE_RATES.length]);
+            projects.add(syntheticProject("scale-" + i, TESTS_PER_JOB, failures));
+            expectedFailures += failures;
+        }
+        buildAll(projects);
+
+        ListView view = new ListView("scale", j.jenkins);
+        view.setIncludeRegex("scale-.*");
+        view.getColumns().add(new AlfredViewColumn());
+        view.getProperties().add(new AlfredDashboardProperty(true, true));
+        j.jenkins.addView(view);
+
+        JenkinsRule.WebClient wc = j.createWebClient();
+        wc.getOptions().setJavaScriptEnabled(false);
+        wc.getOptions().setThrowExceptionOnFailingStatusCode(false);
+
+        // View API: the first request computes, later ones are served from the caches
+        long started = System.nanoTime();
+        Page page = get(wc, "alfred-api/view?name=scale");
+        long cold = millisSince(started);
+        assertEquals(200, page.getWebResponse().getStatusCode());
+        JSONObject analysis = JSONObject.fromObject(page.getWebResponse().getContentAsString());
+        assertEquals(JOBS, analysis.getInt("jobCount"));
+        assertEquals(expectedFailures, analysis.getInt("totalFailures"));
+        assertTrue("cold view analysis took " + cold + " ms", cold < VIEW_API_COLD_MILLIS);
+
+        long[] warm = new long[REPEATS];
+        for (int r = 0; r < REPEATS; r++) {
+            started = System.nanoTime();
+            assertEquals(200, get(wc, "alfred-api/view?name=scale").getWebResponse().getStatusCode());
+            warm[r] = millisSince(started);
+        }
+        assertTrue("warm view analysis: " + Arrays.toString(warm), median(warm) < VIEW_API_WARM_MILLIS);
+
+        // Revalidation with the ETag must not touch the analyses at all
+        wc.addRequestHeader("If-None-Match", page.getWebResponse().getResponseHeaderValue("ETag"));
+        long[] revalidated = new long[REPEATS];
+        for (int r = 0; r < REPEATS; r++) {
+            started = System.nanoTime();
+            assertEquals(304, get(wc, "alfred-api/view?name=scale").getWebResponse().getStatusCode());
+            revalidated[r] = millisSince(started);
+        }
+        wc.removeRequestHeader("If-None-Match");
+        assertTrue("view revalidation: " + Arrays.toString(revalidated), median(revalidated) < NOT_MODIFIED_MILLIS);
+
+        // Dashboard: the view page with the Alfred column and header, and the cached fragment
+        long[] pages = new long[REPEATS];
+        for (int r = 0; r < REPEATS; r++) {
+            started = System.nanoTime();
+            assertEquals(200, get(wc, "view/scale/").getWebResponse().getStatusCode());
+            pages[r] = millisSince(started);
+        }
+        assertTrue("dashboard page: " + Arrays.toString(pages), median(pages) < DASHBOARD_PAGE_MILLIS);
+
+        long[] fragments = new long[REPEATS];
+        for (int r = 0; r < REPEATS; r++) {
+            started = System.nanoTime();
+            assertEquals(200, get(wc, "alfred-api/dashboard?name=scale").getWebResponse().getStatusCode());
+            fragments[r] = millisSince(started);
+        }
+        assertTrue("dashboard fragment: " + Arrays.toString(fragments), median(fragments) < DASHBOARD_FRAGMENT_MILLIS);
+
+        // Concurrent clients: requests are coalesced or shed with 429, never fail otherwise
+        ExecutorService clients = Executors.newFixedThreadPool(CONCURRENT_CLIENTS);
+        try {
+            List<Future<Integer>> statuses = new ArrayList<>();
+            started = System.nanoTime();
+            for (int c = 0; c < CONCURRENT_CLIENTS; c++) {
+                String path = c % 2 == 0 ? "alfred-api/view?name=scale" : "alfred-api/dashboard?name=scale";
+                statuses.add(clients.submit(() -> {
+                    JenkinsRule.WebClient client = j.createWebClient();
+                    client.getOptions().setJavaScriptEnabled(false);
+                    client.getOptions().setThrowExceptionOnFailingStatusCode(false);
+                    int ok = 0;
+                    for (int r = 0; r < REPEATS; r++) {
+                        int status = get(client, path).getWebResponse().getStatusCode();
+                        assertTrue("status " + status + " for " + path, status == 200 || status == 429);
+                        ok += status == 200 ? 1 : 0;
+                    }
+                    return ok;
+                }));
+            }
+            int ok = 0;
+            for (Future<Integer> status : statuses) {
+                ok += status.get(CONCURRENT_LOAD_MILLIS, TimeUnit.MILLISECONDS);
+            }
+            long concurrent = millisSince(started);
+            assertTrue("no request served under concurrent load", ok > 0);
+            assertTrue("concurrent load took " + concurrent + " ms", concurrent < CONCURRENT_LOAD_MILLIS);
+        } finally {
+            clients.shutdownNow();
+        }
+
+        // What the dashboard header and the view API allocate per job once the caches are warm
+        AlfredDashboardProperty property = view.getProperties().get(AlfredDashboardProperty.class);
+        property.getStats(view);
+        long statsBytes = allocatedBytes(() -> property.getStats(view));
+        assertTrue("dashboard stats allocated " + statsBytes + " bytes", statsBytes < ALLOCATED_BYTES_PER_JOB * JOBS);
+
+        ItemAggregator aggregator = new ItemAggregator(JobAnalysisCache.get());
+        aggregator.aggregate(ItemAggregator.collectJobs(view));
+        long aggregateBytes = allocatedBytes(() -> aggregator.aggregate(ItemAggregator.collectJobs(view)));
+        assertTrue("view aggregation allocated " + aggregateBytes + " bytes", aggregateBytes < ALLOCATED_BYTES_PER_JOB * JOBS);
+    }
+
+    @Test
+    @WithTimeout(900)
+    public void largeFailureSetIsAnalyzedAndServedWithinBudget() throws Exception {
+        FreeStyleProject project = syntheticProject("large", LARGE_FAILURES + LARGE_FAILURES / 4, LARGE_FAILURES);
+        FreeStyleBuild build = j.assertBuildStatus(Result.UNSTABLE, project.scheduleBuild2(0));
+
+        // Builds over the sampling threshold get an estimate first; wait for the exact analysis
+        AlfredBuildAction action = build.getAction(AlfredBuildAction.class);
+        assertNotNull(action);
+        long started = System.nanoTime();
+        while (action.getAnalysisResult().isEstimated()) {
+            assertTrue("exact analysis still running", millisSince(started) < EXACT_ANALYSIS_MILLIS);
+            Thread.sleep(100);
+        }
+
+        FailureAnalysisResult result = action.getAnalysisResult();
+        assertEquals(LARGE_FAILURES, result.getFailedTests());
+        int categorized = 0;
+        for (FailureCategory category : FailureCategory.values()) {
+            categorized += result.getFailureCountForCategory(category);
+        }
+        assertEquals(LARGE_FAILURES, categorized);
+
+        File stored = new File(build.getRootDir(), AlfredBuildAction.FILE_NAME);
+        assertTrue(stored.isFile());
+        assertTrue("stored analysis is " + stored.length() + " bytes",
+            stored.length() < STORED_BYTES_PER_FAILURE * LARGE_FAILURES);
+
+        JenkinsRule.WebClient wc = j.createWebClient();
+        wc.getOptions().setJavaScriptEnabled(false);
+        long[] latencies = new long[REPEATS];
+        for (int r = 0; r < REPEATS; r++) {
+            started = System.nanoTime();
+            Page page = get(wc, "alfred-api/job?name=large");
+            latencies[r] = millisSince(started);
+            if (r == 0) {
+                JSONObject json = JSONObject.fromObject(page.getWebResponse().getContentAsString());
+                assertEquals(LARGE_FAILURES, json.getInt("failedTests"));
+            }
+        }
+        assertTrue("job API: " + Arrays.toString(latencies), median(latencies) < JOB_API_MILLIS);
+
+        started = System.nanoTime();
+        assertEquals(200, get(wc, "job/large/" + build.getNumber() + "/alfred-analysis/").getWebResponse().getStatusCode());
+        long render = millisSince(started);
+        assertTrue("build analysis page took " + render + " ms", render < DASHBOARD_PAGE_MILLIS);
+    }
+
+    private FreeStyleProject syntheticProject(String name, int tests, int failures) throws IOException {
+        FreeStyleProject project = j.createFreeStyleProject(name);
+        project.getBuildersList().add(new SyntheticResults(name, tests, failures));
+        project.getPublishersList().add(new JUnitResultArchiver("TEST-*.xml"));
+        return project;
+    }
+
+    private void buildAll(List<FreeStyleProject> projects) throws Exception {
+        List<Future<FreeStyleBuild>> builds = new ArrayList<>(projects.size());
+        for (FreeStyleProject project : projects) {
+            builds.add(project.scheduleBuild2(0));
+        }
+        for (Future<FreeStyleBuild> future : builds) {
+            FreeStyleBuild build = future.get();
+            j.assertBuildStatus(build.getAction(hudson.tasks.test.AbstractTestResultAction.class).getFailCount() > 0
+                ? Result.UNSTABLE : Result.SUCCESS, build);
+            assertNotNull(build.getFullDisplayName(), build.getAction(AlfredBuildAction.class));
+        }
+    }
+
+    private Page get(JenkinsRule.WebClient wc, String path) throws IOException {
+        return wc.getPage(new URL(j.getURL(), path));
+    }
+
+    private static long millisSince(long startedNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedNanos);
+    }
+
+    private static long median(long[] values) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+
+    private static long allocatedBytes(Runnable action) {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        assumeTrue(threads instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean hotspot = (com.sun.management.ThreadMXBean) threads;
+        assumeTrue(hotspot.isThreadAllocatedMemorySupported() && hotspot.isThreadAllocatedMemoryEnabled());
+        long before = hotspot.getCurrentThreadAllocatedBytes();
+        action.run();
+        return hotspot.getCurrentThreadAllocatedBytes() - before;
+    }
+
+    /**
+     * Writes a JUnit report with the given number of tests, the first {@code failures} failing
+     */
+    private static final class SyntheticResults extends TestBuilder {
+        private final String suite;
+        private final int tests;
+        private final int failures;
+
+        SyntheticResults(String suite, int tests, int failures) {
+            this.suite = suite;
+            this.tests = tests;
+            this.failures = failures;
+        }
+
+        @Override
+        public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener)
+                throws InterruptedException, IOException {
+            StringBuilder xml = new StringBuilder(256 + tests * 80 + failures * 400);
+            xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n")
+                .append("<testsuite name=\"com.example.").append(suite).append("\" tests=\"").append(tests)
+                .append("\" failures=\"").append(failures).append("\" errors=\"0\" skipped=\"0\" time=\"1.0\">\n");
+            for (int t = 0; t < tests; t++) {
+                // Ten test classes per suite, so failures spread over several classes
+                String className = "com.example." + suite.replace('-', '_') + ".Test" + (t % 10);
+                xml.append("  <testcase classname=\"").append(className).append("\" name=\"test").append(t)
+                    .append("\" time=\"0.01\"");
+                if (t < failures) {
+                    String message = MESSAGES[t % MESSAGES.length];
+                    xml.append(">\n    <failure message=\"").append(message).append("\" type=\"java.lang.AssertionError\">")
+                        .append(message).append('\n')
+                        .append("\tat ").append(className).append(".test").append(t).append('(')
+                        .append("Test").append(t % 10).append(".java:").append(20 + t % 50).append(")\n")
+                        .append("\tat java.base/java.lang.reflect.Method.invoke(Method.java:580)\n")
+                        .append("\tat org.junit.runners.model.FrameworkMethod$1.runReflectiveCall(FrameworkMethod.java:59)\n")
+                        .append("\tat org.junit.runners.ParentRunner.runLeaf(ParentRunner.java:366)\n")
+                        .append("    </failure>\n  </testcase>\n");
+                } else {
+                    xml.append("/>\n");
+                }
+            }
+            xml.append("</testsuite>\n");
+            build.getWorkspace().child("TEST-" + suite + ".xml").write(xml.toString(), "UTF-8");
+            return true;
+        }
+    }
+}
@@ -0,0 +1,371 @@
+package io.jenkins.plugins.alfred;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class FailureAnalysisCodecTest {
+
+    private static final int ALL_FLAGS = 127;
+
+    private static final String STACK_TRACE = "java.lang.AssertionError: expected:<1> but was:<2>\n"
+        + "\tat org.junit.Assert.fail(Assert.java:89)\n"
+        + "\tat com.example.OrderServiceTest.placesOrder(OrderServiceTest.java:42)\n"
+        + "\tat java.base/java.lang.Thread.run(Thread.java:829)\n";
+
+    @Test
+    public void roundTripsEveryFlagCombination() throws IOException {
+        for (int flags = 0; flags <= ALL_FLAGS; flags++) {
+            FailureAnalysisResult expected = sample(flags);
+            byte[] encoded = FailureAnalysisCodec.encode(expected);
+            assertEquals("flags written for " + flags, flags, encoded[FailureAnalysisCodec.HEADER_SIZE - 1] & 0xFF);
+
+            FailureAnalysisResult decoded = FailureAnalysisCodec.decode(encoded);
+            assertSameResult("flags " + flags, expected, decoded);
+            assertArrayEquals("re-encoding flags " + flags, encoded, FailureAnalysisCodec.encode(decoded));
+        }
+    }
+
+    @Test
+    public void roundTripsStacksWithoutDeflating() throws IOException {
+        FailureAnalysisResult expected = sample(ALL_FLAGS);
+        byte[] encoded = FailureAnalysisCodec.encode(expected, false);
+        assertEquals(ALL_FLAGS & ~FailureAnalysisCodec.FLAG_DEFLATED_STACKS,
+            encoded[FailureAnalysisCodec.HEADER_SIZE - 1] & 0xFF);
+        assertSameResult("undeflated", expected, FailureAnalysisCodec.decode(encoded));
+    }
+
+    @Test
+    public void decodesFilesWrittenBeforeEachSection() throws IOException {
+        // Trailing sections in the order they were added to the format
+        int[] sections = {
+            FailureAnalysisCodec.FLAG_PREDICTIONS,
+            FailureAnalysisCodec.FLAG_COMPACTED,
+            FailureAnalysisCodec.FLAG_DURATIONS,
+            FailureAnalysisCodec.FLAG_ESTIMATED,
+            FailureAnalysisCodec.FLAG_CULPRITS,
+            FailureAnalysisCodec.FLAG_CORRECTIONS,
+        };
+        for (int known = 0; known <= sections.length; known++) {
+            int flags = 0;
+            for (int s = 0; s < known; s++) {
+                flags |= sections[s];
+            }
+            FailureAnalysisResult decoded = FailureAnalysisCodec.decode(legacyFixture(flags));
+            String era = "written with flags " + flags;
+
+            assertEquals(era, 3, decoded.getTotalTests());
+            assertEquals(era, 1, decoded.getPassedTests());
+            assertEquals(era, 2, decoded.getFailedTests());
+            assertEquals(era, 0, decoded.getSkippedTests());
+            assertTrue(era, decoded.isDifferential());
+            assertEquals(era, List.of("com.example.OrderServiceTest.placesOrder"), decoded.getNewFailures());
+            assertEquals(era, Map.of("/api/orders", 1), decoded.getFailedApiEndpoints());
+
+            List<FailureAnalysisResult.TestFailureInfo> assertions =
+                decoded.getFailuresByCategory().get(FailureCategory.ASSERTION_FAILURES);
+            assertEquals(era, 1, assertions.size());
+            FailureAnalysisResult.TestFailureInfo withStack = assertions.get(0);
+            assertEquals(era, "placesOrder", withStack.getTestName());
+            assertEquals(era, STACK_TRACE, withStack.getStackTrace());
+            assertEquals(era, 2, withStack.getAge());
+            // Found in the stack trace, whether or not the culprit section exists
+            assertEquals(era, "com.example.OrderServiceTest.placesOrder(OrderServiceTest.java:42)",
+                withStack.getCulprit().toString());
+
+            FailureAnalysisResult.TestFailureInfo withoutStack =
+                decoded.getFailuresByCategory().get(FailureCategory.API_FAILURES).get(0);
+            assertNull(era, withoutStack.getStackTrace());
+
+            boolean predictions = (flags & FailureAnalysisCodec.FLAG_PREDICTIONS) != 0;
+            assertEquals(era, predictions ? List.of("com.example.ApiTest.getsOrder") : List.of(),
+                decoded.getPredictedTests());
+            boolean compacted = (flags & FailureAnalysisCodec.FLAG_COMPACTED) != 0;
+            assertEquals(era, compacted, decoded.isCompacted());
+            if (compacted) {
+                assertEquals(era, "fingerprint-b", withoutStack.getFingerprint());
+            }
+            boolean durations = (flags & FailureAnalysisCodec.FLAG_DURATIONS) != 0;
+            assertEquals(era, durations ? 1 : 0, decoded.getDurationRegressions().size());
+            boolean estimated = (flags & FailureAnalysisCodec.FLAG_ESTIMATED) != 0;
+            assertEquals(era, estimated, decoded.isEstimated());
+            if (estimated) {
+                assertEquals(era, 7, decoded.getEstimate(FailureCategory.API_FAILURES).getUpper());
+            }
+            boolean culprits = (flags & FailureAnalysisCodec.FLAG_CULPRITS) != 0;
+            assertEquals(era, culprits ? "com.example.ApiClient.get(ApiClient.java:17)" : null,
+                withoutStack.getCulprit() != null ? withoutStack.getCulprit().toString() : null);
+            boolean corrections = (flags & FailureAnalysisCodec.FLAG_CORRECTIONS) != 0;
+            assertEquals(era, corrections ? List.of("com.example.OrderServiceTest.placesOrder") : List.of(),
+                decoded.getCorrectedTests());
+        }
+    }
+
+    @Test
+    public void rejectsTruncatedInput() throws IOException {
+        for (int flags : new int[] {0, ALL_FLAGS, ALL_FLAGS & ~FailureAnalysisCodec.FLAG_DEFLATED_STACKS}) {
+            byte[] encoded = FailureAnalysisCodec.encode(sample(flags));
+            for (int length = 0; length < encoded.length; length++) {
+                byte[] truncated = Arrays.copyOf(encoded, length);
+                assertThrows("flags " + flags + " truncated to " + length, IOException.class,
+                    () -> FailureAnalysisCodec.decode(truncated));
+            }
+        }
+    }
+
+    @Test
+    public void corruptInputFailsOnlyWithIOException() throws IOException {
+        byte[] encoded = FailureAnalysisCodec.encode(sample(ALL_FLAGS));
+        for (int position = 0; position < encoded.length; position++) {
+            for (int value : new int[] {0x00, 0x7F, 0x80, 0xFF}) {
+                byte[] corrupt = encoded.clone();
+                corrupt[position] = (byte) value;
+                try {
+                    FailureAnalysisCodec.decode(corrupt);
+                } catch (IOException expected) {
+                    // Either outcome is fine, as long as nothing else escapes
+                } catch (RuntimeException | OutOfMemoryError e) {
+                    throw new AssertionError("byte " + position + " set to " + value, e);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void rejectsOversizedCountsAndLengths() {
+        // String table claiming far more strings than there are bytes
+        assertThrows(IOException.class, () -> FailureAnalysisCodec.decode(header(0, 0xFF, 0xFF, 0xFF, 0xFF, 0x07)));
+        // Negative varint as string count
+        assertThrows(IOException.class, () -> FailureAnalysisCodec.decode(header(0, 0xFF, 0xFF, 0xFF, 0xFF, 0x0F)));
+        // One string claiming 256 MB
+        assertThrows(IOException.class, () -> FailureAnalysisCodec.decode(header(0, 0x01, 0x80, 0x80, 0x80, 0x80, 0x01)));
+        // Deflated stack block claiming to inflate 2 bytes to 256 MB
+        assertThrows(IOException.class, () -> FailureAnalysisCodec.decode(header(FailureAnalysisCodec.FLAG_DEFLATED_STACKS,
+            0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0x80, 0x80, 0x80, 0x80, 0x01, 0x02, 0x78, 0x9C)));
+    }
+
+    @Test
+    public void rejectsStringIndexesOutsideTheTable() {
+        // One string, then a category named by string 5
+        byte[] bytes = header(0, 1, 1, 'X', 0, 0, 0, 0, 1, 5, 0);
+        IOException e = assertThrows(IOException.class, () -> FailureAnalysisCodec.decode(bytes));
+        assertTrue(e.getMessage(), e.getMessage().contains("index"));
+    }
+
+    @Test
+    public void rejectsOtherFormatsAndNewerVersions() {
+        assertThrows(IOException.class, () -> FailureAnalysisCodec.decode("not an analysis".getBytes()));
+        byte[] newer = header(0, 0);
+        newer[4] = (byte) (FailureAnalysisCodec.VERSION + 1);
+        IOException e = assertThrows(IOException.class, () -> FailureAnalysisCodec.decode(newer));
+        assertTrue(e.getMessage(), e.getMessage().contains("version"));
+    }
+
+    /**
+     * A result that needs exactly the sections in {@code flags}
+     */
+    private static FailureAnalysisResult sample(int flags) {
+        FailureAnalysisResult result = new FailureAnalysisResult();
+        result.setTotalTests(10);
+        result.setPassedTests(7);
+        result.setFailedTests(2);
+        result.setSkippedTests(1);
+
+        // Deflated stacks are only written when some failure has a stack trace
+        boolean stacks = (flags & FailureAnalysisCodec.FLAG_DEFLATED_STACKS) != 0;
+        FailureAnalysisResult.TestFailureInfo a = new FailureAnalysisResult.TestFailureInfo(
+            "com.example.OrderServiceTest", "placesOrder", "expected:<1> but was:<2>", stacks ? STACK_TRACE : null, 3);
+        FailureAnalysisResult.TestFailureInfo b = new FailureAnalysisResult.TestFailureInfo(
+            "com.example.ApiTest", "getsOrder", "HTTP 503 from /api/orders", null, 1);
+        result.getFailuresByCategory().get(FailureCategory.ASSERTION_FAILURES).add(a);
+        result.getFailuresByCategory().get(FailureCategory.API_FAILURES).add(b);
+        result.getFailedApiEndpoints().put("/api/orders", 1);
+
+        result.setDifferential(true);
+        result.setReusedCategorizations(1);
+        result.addNewFailure(b.getTestId());
+        result.addStillFailing(a.getTestId());
+        result.addFixed("com.example.CartTest.addsItem");
+
+        if ((flags & FailureAnalysisCodec.FLAG_PREDICTIONS) != 0) {
+            result.addPredicted(b.getTestId());
+        }
+        if ((flags & FailureAnalysisCodec.FLAG_COMPACTED) != 0) {
+            result.setCompacted(true);
+            b.setFingerprint("fingerprint-b");
+        }
+        if ((flags & FailureAnalysisCodec.FLAG_DURATIONS) != 0) {
+            result.addDurationRegression(new DurationRegression(a.getTestId(), 100f, 180.5f, 250f, 400f));
+        }
+        if ((flags & FailureAnalysisCodec.FLAG_ESTIMATED) != 0) {
+            result.setSampledFailures(2);
+            result.setEstimate(FailureCategory.API_FAILURES, new FailureAnalysisResult.Estimate(1, 0, 3));
+        }
+        if ((flags & FailureAnalysisCodec.FLAG_CULPRITS) != 0) {
+            // A culprit without a stack trace to find it in
+            String frame = "com.example.ApiClient.get(ApiClient.java:17)";
+            b.setCulprit(StackTraceParser.parseFrame(frame, 0, frame.length()));
+        }
+        if ((flags & FailureAnalysisCodec.FLAG_CORRECTIONS) != 0) {
+            result.addCorrected(a.getTestId());
+        }
+        return result;
+    }
+
+    private static void assertSameResult(String message, FailureAnalysisResult expected, FailureAnalysisResult actual) {
+        assertEquals(message, expected.getTotalTests(), actual.getTotalTests());
+        assertEquals(message, expected.getPassedTests(), actual.getPassedTests());
+        assertEquals(message, expected.getFailedTests(), actual.getFailedTests());
+        assertEquals(message, expected.getSkippedTests(), actual.getSkippedTests());
+        assertEquals(message, expected.getFailedApiEndpoints(), actual.getFailedApiEndpoints());
+        assertEquals(message, expected.isDifferential(), actual.isDifferential());
+        assertEquals(message, expected.getReusedCategorizations(), actual.getReusedCategorizations());
+        assertEquals(message, expected.getNewFailures(), actual.getNewFailures());
+        assertEquals(message, expected.getStillFailing(), actual.getStillFailing());
+        assertEquals(message, expected.getFixedTests(), actual.getFixedTests());
+        assertEquals(message, expected.getPredictedTests(), actual.getPredictedTests());
+        assertEquals(message, expected.getCorrectedTests(), actual.getCorrectedTests());
+        assertEquals(message, expected.isCompacted(), actual.isCompacted());
+        assertEquals(message, expected.getSampledFailures(), actual.getSampledFailures());
+
+        for (FailureCategory category : FailureCategory.values()) {
+            List<FailureAnalysisResult.TestFailureInfo> expectedFailures = expected.getFailuresByCategory().get(category);
+            List<FailureAnalysisResult.TestFailureInfo> actualFailures = actual.getFailuresByCategory().get(category);
+            assertEquals(message + " " + category, expectedFailures.size(), actualFailures.size());
+            for (int i = 0; i < expectedFailures.size(); i++) {
+                FailureAnalysisResult.TestFailureInfo e = expectedFailures.get(i);
+                FailureAnalysisResult.TestFailureInfo a = actualFailures.get(i);
+                assertEquals(message, e.getClassName(), a.getClassName());
+                assertEquals(message, e.getTestName(), a.getTestName());
+                assertEquals(message, e.getErrorDetails(), a.getErrorDetails());
+                assertEquals(message, e.getStackTrace(), a.getStackTrace());
+                assertEquals(message, e.getAge(), a.getAge());
+                assertEquals(message, e.getFingerprint(), a.getFingerprint());
+                assertEquals(message, String.valueOf(e.getCulprit()), String.valueOf(a.getCulprit()));
+            }
+
+            FailureAnalysisResult.Estimate expectedEstimate = expected.getEstimate(category);
+            FailureAnalysisResult.Estimate actualEstimate = actual.getEstimate(category);
+            if (expectedEstimate == null) {
+                assertNull(message, actualEstimate);
+            } else {
+                assertEquals(message, expectedEstimate.getCount(), actualEstimate.getCount());
+                assertEquals(message, expectedEstimate.getLower(), actualEstimate.getLower());
+                assertEquals(message, expectedEstimate.getUpper(), actualEstimate.getUpper());
+            }
+        }
+
+        assertEquals(message, expected.getDurationRegressions().size(), actual.getDurationRegressions().size());
+        for (int i = 0; i < expected.getDurationRegressions().size(); i++) {
+            DurationRegression e = expected.getDurationRegressions().get(i);
+            DurationRegression a = actual.getDurationRegressions().get(i);
+            assertEquals(message, e.getTestId(), a.getTestId());
+            assertEquals(message, e.getBaselineP50(), a.getBaselineP50(), 0);
+            assertEquals(message, e.getRecentP50(), a.getRecentP50(), 0);
+            assertEquals(message, e.getBaselineP95(), a.getBaselineP95(), 0);
+            assertEquals(message, e.getRecentP95(), a.getRecentP95(), 0);
+        }
+    }
+
+    /**
+     * Version 1 file as written by a release that knew only the sections in {@code flags}:
+     * written field by field here, so it does not change when the encoder does
+     */
+    private static byte[] legacyFixture(int flags) throws IOException {
+        String[] strings = {
+            "ASSERTION_FAILURES",                          // 1
+            "com.example.OrderServiceTest",                // 2
+            "placesOrder",                                 // 3
+            "expected:<1> but was:<2>",                    // 4
+            "API_FAILURES",                                // 5
+            "com.example.ApiTest",                         // 6
+            "getsOrder",                                   // 7
+            "/api/orders",                                 // 8
+            "com.example.OrderServiceTest.placesOrder",    // 9
+            "com.example.ApiTest.getsOrder",               // 10
+            "fingerprint-a",                               // 11
+            "fingerprint-b",                               // 12
+            "com.example.ApiClient.get(ApiClient.java:17)" // 13
+        };
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.write(new byte[] {'A', 'L', 'F', 'R', 1, (byte) flags});
+        FailureAnalysisCodec.writeVarInt(out, strings.length);
+        for (String value : strings) {
+            FailureAnalysisCodec.writeString(out, value);
+        }
+
+        // Counts
+        writeVarInts(out, 3, 1, 2, 0);
+        // Two categories of one failure each: class, test, error, age, has stack trace
+        writeVarInts(out, 2);
+        writeVarInts(out, 1, 1, 2, 3, 4, 2);
+        out.writeBoolean(true);
+        writeVarInts(out, 5, 1, 6, 7, 0, 1);
+        out.writeBoolean(false);
+        // API endpoints
+        writeVarInts(out, 1, 8, 1);
+        // Differential, reused categorizations, new, still failing and fixed ids
+        out.writeBoolean(true);
+        writeVarInts(out, 0, 1, 9, 0, 0);
+
+        // Undeflated stack block
+        ByteArrayOutputStream stacks = new ByteArrayOutputStream();
+        FailureAnalysisCodec.writeString(new DataOutputStream(stacks), STACK_TRACE);
+        writeVarInts(out, stacks.size(), stacks.size());
+        stacks.writeTo(out);
+
+        if ((flags & FailureAnalysisCodec.FLAG_PREDICTIONS) != 0) {
+            writeVarInts(out, 1, 10);
+        }
+        if ((flags & FailureAnalysisCodec.FLAG_COMPACTED) != 0) {
+            writeVarInts(out, 11, 12);
+        }
+        if ((flags & FailureAnalysisCodec.FLAG_DURATIONS) != 0) {
+            writeVarInts(out, 1, 9);
+            out.writeFloat(100f);
+            out.writeFloat(200f);
+            out.writeFloat(300f);
+            out.writeFloat(600f);
+        }
+        if ((flags & FailureAnalysisCodec.FLAG_ESTIMATED) != 0) {
+            // Sampled failures, then category, count, lower and upper bound
+            writeVarInts(out, 2, 1, 5, 3, 2, 7);
+        }
+        if ((flags & FailureAnalysisCodec.FLAG_CULPRITS) != 0) {
+            writeVarInts(out, 0, 13);
+        }
+        if ((flags & FailureAnalysisCodec.FLAG_CORRECTIONS) != 0) {
+            writeVarInts(out, 1, 9);
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static void writeVarInts(DataOutputStream out, int... values) throws IOException {
+        for (int value : values) {
+            FailureAnalysisCodec.writeVarInt(out, value);
+        }
+    }
+
+    private static byte[] header(int flags, int... rest) {
+        byte[] bytes = new byte[FailureAnalysisCodec.HEADER_SIZE + rest.length];
+        System.arraycopy(new byte[] {'A', 'L', 'F', 'R', (byte) FailureAnalysisCodec.VERSION, (byte) flags}, 0,
+            bytes, 0, FailureAnalysisCodec.HEADER_SIZE);
+        for (int i = 0; i < rest.length; i++) {
+            bytes[FailureAnalysisCodec.HEADER_SIZE + i] = (byte) rest[i];
+        }
+        return bytes;
+    }
+}